@@ -8,6 +8,7 @@ import edu.neu.ccs.pyramid.dataset.ClfDataSet;
 import edu.neu.ccs.pyramid.dataset.DataSetType;
 import edu.neu.ccs.pyramid.dataset.TRECFormat;
 import edu.neu.ccs.pyramid.eval.Accuracy;
+import edu.neu.ccs.pyramid.optimization.EarlyStopper;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
 import edu.neu.ccs.pyramid.util.PrintUtil;
@@ -70,12 +71,31 @@ public class GBClassifier {
         regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
         LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, trainSet, regTreeFactory);
         optimizer.setShrinkage(config.getDouble("train.shrinkage"));
-        optimizer.initialize();
+        String output = config.getString("output.folder");
+        File checkpoint = new File(output, "checkpoint");
+        if (config.containsKey("train.warmStart") && config.getBoolean("train.warmStart") && checkpoint.exists()){
+            optimizer.initialize(checkpoint);
+            System.out.println("resumed from "+checkpoint.getAbsolutePath()+" after "
+                    +optimizer.getNumIterations()+" iterations");
+        } else {
+            optimizer.initialize();
+        }
+        if (config.containsKey("train.checkpointInterval") && config.getInt("train.checkpointInterval")>0){
+            optimizer.setCheckpoint(checkpoint, config.getInt("train.checkpointInterval"));
+        }
+        boolean earlyStop = config.containsKey("train.earlyStop") && config.getBoolean("train.earlyStop");
+        if (earlyStop){
+            ClfDataSet validSet = TRECFormat.loadClfDataSet(config.getString("input.validData"),dataSetType, true);
+            EarlyStopper earlyStopper = new EarlyStopper(EarlyStopper.Goal.MINIMIZE,
+                    config.getInt("train.earlyStop.patience"));
+            earlyStopper.setMinimumIterations(config.getInt("train.earlyStop.minIterations"));
+            optimizer.setValidation(validSet, earlyStopper);
+        }
 
         int progressInterval = config.getInt("train.showProgress.interval");
 
         int numIterations=config.getInt("train.numIterations");
-        for (int i=1;i<=numIterations;i++){
+        for (int i=optimizer.getNumIterations()+1;i<=numIterations;i++){
             System.out.println("iteration "+i);
             optimizer.iterate();
             if (config.getBoolean("train.showTrainProgress") && (i%progressInterval==0 || i==numIterations)){
@@ -84,9 +104,22 @@ public class GBClassifier {
             if (config.getBoolean("train.showTestProgress") && (i%progressInterval==0 || i==numIterations)){
                 System.out.println("test accuracy = "+ Accuracy.accuracy(lkBoost, testSet));
             }
+            if (earlyStop){
+                System.out.println("validation loss = "+optimizer.getValidationLoss());
+                if (optimizer.shouldStop()){
+                    break;
+                }
+            }
+        }
+        if (earlyStop){
+            EarlyStopper earlyStopper = optimizer.getEarlyStopper();
+            System.out.println("validation loss history: "+earlyStopper.history());
+            if (earlyStopper.getBestIteration()>=0){
+                optimizer.truncateToBestIteration();
+                System.out.println("the model is truncated to the best iteration "+earlyStopper.getBestIteration());
+            }
         }
         System.out.println("training done!");
-        String output = config.getString("output.folder");
         new File(output).mkdirs();
         File serializedModel =  new File(output,"model");
         Serialization.serialize(lkBoost, serializedModel);
@@ -66,7 +66,7 @@ public class L2BoostOptimizer extends GBOptimizer {
      */
     private void updateProbability(int i){
         // this is just a number at the moment
-        double positiveScore = scoreMatrix.getScoresForData(i)[0];
+        double positiveScore = scoreMatrix.getScore(i,0);
         double[] scores = new double[2];
         scores[1] = positiveScore;
         double[] probs = boosting.predictClassProbs(scores);
@@ -79,7 +79,7 @@ public class L2BoostOptimizer extends GBOptimizer {
     protected double[] gradient(int ensembleIndex) {
         // ensemble will always be 0
         return IntStream.range(0, dataSet.getNumDataPoints()).parallel()
-                .mapToDouble(i->targetDistribution[i][1]-probabilityMatrix.getProbabilitiesForData(i)[1])
+                .mapToDouble(i->targetDistribution[i][1]-probabilityMatrix.getProbability(i,1))
                 .toArray();
     }
 
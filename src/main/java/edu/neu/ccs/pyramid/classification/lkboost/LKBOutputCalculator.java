@@ -21,6 +21,22 @@ public class LKBOutputCalculator implements LeafOutputCalculator{
             numerator += label*probabilities[i];
             denominator += Math.abs(label) * (1 - Math.abs(label))*probabilities[i];
         }
+        return output(numerator, denominator);
+    }
+
+    @Override
+    public double getLeafOutput(int[] dataPoints, double[] probabilities, double[] labels) {
+        double numerator = 0;
+        double denominator = 0;
+        for (int k=0;k<dataPoints.length;k++) {
+            double label = labels[dataPoints[k]];
+            numerator += label*probabilities[k];
+            denominator += Math.abs(label) * (1 - Math.abs(label))*probabilities[k];
+        }
+        return output(numerator, denominator);
+    }
+
+    private double output(double numerator, double denominator){
         double out;
         if (denominator == 0) {
             out = 0;
@@ -1,6 +1,7 @@
 package edu.neu.ccs.pyramid.classification.lkboost;
 
 import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.Ensemble;
@@ -10,6 +11,9 @@ import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.Vector;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 
 /**
@@ -35,6 +39,16 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
         return ArgMax.argMax(scores);
     }
 
+    /**
+     * batch prediction
+     * @param dataSet
+     * @return
+     */
+    @Override
+    public int[] predict(DataSet dataSet){
+        return Arrays.stream(scores(dataSet)).parallel().mapToInt(ArgMax::argMax).toArray();
+    }
+
     public int getNumClasses() {
         return this.numClasses;
     }
@@ -55,6 +69,20 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
 
     public double[] predictClassProbs(Vector vector){
         double[] scoreVector = this.predictClassScores(vector);
+        return classProbs(scoreVector);
+    }
+
+    /**
+     * batch prediction
+     * @param dataSet
+     * @return
+     */
+    @Override
+    public List<double[]> predictClassProbs(DataSet dataSet){
+        return Arrays.stream(scores(dataSet)).parallel().map(this::classProbs).collect(Collectors.toList());
+    }
+
+    private double[] classProbs(double[] scoreVector){
         double[] probVector = new double[this.numClasses];
         double logDenominator = MathUtil.logSumExp(scoreVector);
         for (int k=0;k<this.numClasses;k++){
@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.classification.lkboost;
 
 import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
 import edu.neu.ccs.pyramid.dataset.*;
+import edu.neu.ccs.pyramid.optimization.EarlyStopper;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GBOptimizer;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
 import edu.neu.ccs.pyramid.regression.Regressor;
@@ -11,6 +12,9 @@ import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.stream.IntStream;
 
@@ -19,10 +23,15 @@ import java.util.stream.IntStream;
  */
 public class LKBoostOptimizer extends GBOptimizer {
     private static final Logger logger = LogManager.getLogger();
+    /**
+     * number of data points processed together by class-major passes
+     */
+    private static final int BLOCK_SIZE = 4096;
     private ProbabilityMatrix probabilityMatrix;
     private double[][] targetDistribution;
     private LKBoost boosting;
     private int numClasses;
+    private int[] validationLabels;
 
 
     public LKBoostOptimizer(LKBoost boosting, DataSet dataSet, RegressorFactory factory, double[] weights, double[][] targetDistribution) {
@@ -64,6 +73,39 @@ public class LKBoostOptimizer extends GBOptimizer {
         updateProbabilityMatrix();
     }
 
+    /**
+     * track the mean negative log likelihood on the validation set
+     * @param validationSet
+     * @param earlyStopper optional, should minimize
+     */
+    public void setValidation(ClfDataSet validationSet, EarlyStopper earlyStopper) {
+        this.validationLabels = validationSet.getLabels();
+        super.setValidation(validationSet, earlyStopper);
+    }
+
+    @Override
+    protected boolean supportsValidation() {
+        return true;
+    }
+
+    @Override
+    protected double validationLoss() {
+        double[] logDenominators = logDenominators(validationScoreMatrix);
+        return IntStream.range(0, validationSet.getNumDataPoints()).parallel()
+                .mapToDouble(i -> logDenominators[i] - validationScoreMatrix.getScore(i, validationLabels[i]))
+                .average().getAsDouble();
+    }
+
+    @Override
+    protected void writeOthers(DataOutput out) throws IOException {
+        probabilityMatrix.serialize(out);
+    }
+
+    @Override
+    protected void readOthers(DataInput in) throws IOException {
+        this.probabilityMatrix = ProbabilityMatrix.deserialize(in);
+    }
+
     @Override
     protected void addPriors() {
         PriorProbClassifier priorProbClassifier = new PriorProbClassifier(numClasses);
@@ -87,52 +129,110 @@ public class LKBoostOptimizer extends GBOptimizer {
 
     @Override
     protected double[] gradient(int ensembleIndex) {
-        return IntStream.range(0, dataSet.getNumDataPoints()).parallel().mapToDouble(i->gradient(ensembleIndex, i)).toArray();
+        double[] gradients = new double[dataSet.getNumDataPoints()];
+        gradient(ensembleIndex, gradients);
+        return gradients;
     }
 
-    //======================== PRIVATE ===============================================
+    /**
+     * one sequential pass over the probabilities of the class
+     */
+    @Override
+    protected void gradient(int ensembleIndex, double[] buffer) {
+        float[] probs = probabilityMatrix.getProbabilitiesForClass(ensembleIndex);
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .forEach(i -> buffer[i] = targetDistribution[i][ensembleIndex] - probs[i]);
+    }
 
+    @Override
+    protected boolean supportsSecondOrder() {
+        return true;
+    }
 
-    private double gradient(int ensembleIndex, int dataPoint){
-        double prob = probabilityMatrix.getProbabilitiesForData(dataPoint)[ensembleIndex];
-        return targetDistribution[dataPoint][ensembleIndex] - prob;
+    @Override
+    protected double[] hessian(int ensembleIndex) {
+        double[] hessians = new double[dataSet.getNumDataPoints()];
+        hessian(ensembleIndex, hessians);
+        return hessians;
     }
 
+    /**
+     * diagonal of the hessian of the multinomial log loss, p(1-p),
+     * scaled by K/(K-1) as in the leaf outputs of {@link LKBOutputCalculator}
+     */
+    @Override
+    protected void hessian(int ensembleIndex, double[] buffer) {
+        double scale = numClasses/(numClasses-1.0);
+        float[] probs = probabilityMatrix.getProbabilitiesForClass(ensembleIndex);
+        IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                .forEach(i -> buffer[i] = scale*probs[i]*(1-probs[i]));
+    }
+
+    //======================== PRIVATE ===============================================
 
     /**
-     * use scoreMatrix to update probabilities
-     * numerically unstable if calculated directly
-     * probability = exp(log(numerator)-log(denominator))
+     * log of the softmax denominator of each data point, computed stably with the max score
+     * blocks of data points are processed in parallel, class after class, so that every pass is a sequential scan
      */
-    private void updateClassProb(int i){
-        int numClasses = this.boosting.getNumClasses();
-        float[] scores = scoreMatrix.getScoresForData(i);
-
-        double logDenominator = MathUtil.logSumExp(scores);
-//        if (logger.isDebugEnabled()){
-//            logger.debug("logDenominator for data point "+i+" with scores  = "+ Arrays.toString(scores)
-//                    +" ="+logDenominator+", label = "+lktbConfig.getDataSet().getLabels()[i]);
-//        }
-        for (int k=0;k<numClasses;k++){
-            double logNumerator = scores[k];
-            double pro = Math.exp(logNumerator-logDenominator);
-            this.probabilityMatrix.setProbability(i,k,pro);
-            if (Double.isNaN(pro)){
-                throw new RuntimeException("pro=NaN, logNumerator = "
-                        +logNumerator+", logDenominator="+logDenominator+
-                        ", scores = "+Arrays.toString(scores));
+    private static double[] logDenominators(ScoreMatrix scoreMatrix){
+        int numDataPoints = scoreMatrix.getNumDataPoints();
+        int numClasses = scoreMatrix.getNumClasses();
+        double[] logDenominators = new double[numDataPoints];
+        IntStream.range(0, numBlocks(numDataPoints)).parallel().forEach(block -> {
+            int begin = block*BLOCK_SIZE;
+            int end = Math.min(begin+BLOCK_SIZE, numDataPoints);
+            double[] max = new double[end-begin];
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            for (int k=0;k<numClasses;k++){
+                float[] scores = scoreMatrix.getScoresForClass(k);
+                for (int i=begin;i<end;i++){
+                    max[i-begin] = Math.max(max[i-begin], scores[i]);
+                }
             }
-        }
+            double[] sum = new double[end-begin];
+            for (int k=0;k<numClasses;k++){
+                float[] scores = scoreMatrix.getScoresForClass(k);
+                for (int i=begin;i<end;i++){
+                    sum[i-begin] += Math.exp(scores[i]-max[i-begin]);
+                }
+            }
+            for (int i=begin;i<end;i++){
+                logDenominators[i] = max[i-begin] + Math.log(sum[i-begin]);
+            }
+        });
+        return logDenominators;
+    }
+
+    private static int numBlocks(int numDataPoints){
+        return (numDataPoints+BLOCK_SIZE-1)/BLOCK_SIZE;
     }
 
     /**
      * use scoreMatrix to update probabilities
-     * parallel by data
+     * numerically unstable if calculated directly
+     * probability = exp(log(numerator)-log(denominator))
+     * parallel by blocks of data
      */
     private void updateProbabilityMatrix(){
         int numDataPoints = dataSet.getNumDataPoints();
-        IntStream.range(0,numDataPoints).parallel()
-                .forEach(this::updateClassProb);
+        double[] logDenominators = logDenominators(scoreMatrix);
+        IntStream.range(0, numBlocks(numDataPoints)).parallel().forEach(block -> {
+            int begin = block*BLOCK_SIZE;
+            int end = Math.min(begin+BLOCK_SIZE, numDataPoints);
+            for (int k=0;k<numClasses;k++){
+                float[] scores = scoreMatrix.getScoresForClass(k);
+                float[] probs = probabilityMatrix.getProbabilitiesForClass(k);
+                for (int i=begin;i<end;i++){
+                    double pro = Math.exp(scores[i]-logDenominators[i]);
+                    if (Double.isNaN(pro)){
+                        throw new RuntimeException("pro=NaN, logNumerator = "
+                                +scores[i]+", logDenominator="+logDenominators[i]+
+                                ", scores = "+Arrays.toString(scoreMatrix.getScoresForData(i)));
+                    }
+                    probs[i] = (float)pro;
+                }
+            }
+        });
     }
 
     private static RegressorFactory defaultFactory(int numClasses){
@@ -0,0 +1,131 @@
+package edu.neu.ccs.pyramid.classification.random_forest;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.LabelTranslator;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.Ensemble;
+import edu.neu.ccs.pyramid.util.ArgMax;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * random forest of probability estimation trees
+ * for each bag, one regression tree per class is fit to the class indicators;
+ * the score of a class is the average leaf frequency of the class over the bags
+ * Created by chengli on 5/27/17.
+ */
+public class RFClassifier implements Classifier.ProbabilityEstimator {
+    private static final long serialVersionUID = 2L;
+    private int numClasses;
+    /**
+     * one ensemble per class
+     */
+    private List<Ensemble> ensembles;
+    private FeatureList featureList;
+    private LabelTranslator labelTranslator;
+
+    public RFClassifier(int numClasses, FeatureList featureList, LabelTranslator labelTranslator) {
+        this.numClasses = numClasses;
+        this.ensembles = new ArrayList<>();
+        for (int k=0;k<numClasses;k++){
+            ensembles.add(new Ensemble());
+        }
+        this.featureList = featureList;
+        this.labelTranslator = labelTranslator;
+    }
+
+    public Ensemble getEnsemble(int classIndex){
+        return ensembles.get(classIndex);
+    }
+
+    /**
+     * flatten the trees of all classes for fast scoring, e.g. before serving a trained forest
+     */
+    public void compile(){
+        for (Ensemble ensemble: ensembles){
+            ensemble.compile();
+        }
+    }
+
+    private double[] scores(Vector vector){
+        double[] scores = new double[numClasses];
+        for (int k=0;k<numClasses;k++){
+            scores[k] = ensembles.get(k).score(vector);
+        }
+        return scores;
+    }
+
+    private double[][] scores(DataSet dataSet){
+        return Ensemble.scores(ensembles, dataSet);
+    }
+
+    @Override
+    public int predict(Vector vector) {
+        return ArgMax.argMax(scores(vector));
+    }
+
+    /**
+     * batch prediction
+     * @param dataSet
+     * @return
+     */
+    @Override
+    public int[] predict(DataSet dataSet){
+        return Arrays.stream(scores(dataSet)).parallel().mapToInt(ArgMax::argMax).toArray();
+    }
+
+    @Override
+    public double[] predictClassProbs(Vector vector) {
+        return classProbs(scores(vector));
+    }
+
+    /**
+     * batch prediction
+     * @param dataSet
+     * @return
+     */
+    @Override
+    public List<double[]> predictClassProbs(DataSet dataSet){
+        return Arrays.stream(scores(dataSet)).parallel().map(this::classProbs).collect(Collectors.toList());
+    }
+
+    /**
+     * trees of different classes are grown separately, so scores are clipped at 0 and normalized
+     */
+    private double[] classProbs(double[] scores){
+        double[] probs = new double[numClasses];
+        double sum = 0;
+        for (int k=0;k<numClasses;k++){
+            probs[k] = Math.max(scores[k], 0);
+            sum += probs[k];
+        }
+        for (int k=0;k<numClasses;k++){
+            probs[k] = (sum>0) ? probs[k]/sum : 1.0/numClasses;
+        }
+        return probs;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public FeatureList getFeatureList() {
+        return featureList;
+    }
+
+    public int getNumTrees(){
+        return ensembles.get(0).getRegressors().size();
+    }
+}
@@ -0,0 +1,29 @@
+package edu.neu.ccs.pyramid.classification.random_forest;
+
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.regression.random_forest.RFConfig;
+import edu.neu.ccs.pyramid.regression.random_forest.RFTrainer;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+
+/**
+ * Created by chengli on 5/27/17.
+ */
+public class RFClassifierTrainer {
+
+    public static RFClassifier fit(RFConfig config, ClfDataSet dataSet){
+        int numClasses = dataSet.getNumClasses();
+        int[] labels = dataSet.getLabels();
+        double[][] indicators = new double[numClasses][labels.length];
+        for (int i=0;i<labels.length;i++){
+            indicators[labels[i]][i] = 1;
+        }
+        RegressionTree[][] trees = RFTrainer.fitTrees(config, dataSet, indicators);
+        RFClassifier classifier = new RFClassifier(numClasses, dataSet.getFeatureList(), dataSet.getLabelTranslator());
+        for (int k=0;k<numClasses;k++){
+            for (RegressionTree tree: trees[k]){
+                classifier.getEnsemble(k).add(tree);
+            }
+        }
+        return classifier;
+    }
+}
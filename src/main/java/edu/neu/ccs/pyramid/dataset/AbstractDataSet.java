@@ -5,6 +5,9 @@ import edu.neu.ccs.pyramid.feature.Feature;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import org.apache.mahout.math.Vector;
 
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
 /**
  * Created by chengli on 8/7/14.
  */
@@ -14,6 +17,7 @@ abstract class AbstractDataSet implements DataSet{
     protected boolean missingValue;
     protected IdTranslator idTranslator;
     protected FeatureList featureList;
+    protected ColumnIndex columnIndex = ColumnIndex.EAGER;
 
 
     AbstractDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
@@ -58,6 +62,62 @@ abstract class AbstractDataSet implements DataSet{
         this.missingValue=true;
     }
 
+    /**
+     * row vectors that bulk loaders may update directly, one row per thread; null if rows are not vectors
+     */
+    Vector[] rowVectors(){
+        return null;
+    }
+
+    /**
+     * column vectors that bulk loaders may update directly, one column per thread; null if columns are not built
+     */
+    Vector[] columnVectors(){
+        return null;
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * fill columns from rows; entries are grouped by column in one pass over the rows,
+     * then columns are created in parallel
+     * @param rows
+     * @param columns to fill
+     * @param newColumn creates an empty column given its number of entries
+     */
+    static <V extends Vector> void transpose(Vector[] rows, V[] columns, IntFunction<V> newColumn){
+        int numFeatures = columns.length;
+        int[] offsets = new int[numFeatures+1];
+        for (Vector row: rows){
+            for (Vector.Element element: row.nonZeroes()){
+                offsets[element.index()+1] += 1;
+            }
+        }
+        for (int j=0;j<numFeatures;j++){
+            offsets[j+1] += offsets[j];
+        }
+        int[] dataPoints = new int[offsets[numFeatures]];
+        double[] values = new double[offsets[numFeatures]];
+        int[] cursors = new int[numFeatures];
+        System.arraycopy(offsets, 0, cursors, 0, numFeatures);
+        for (int i=0;i<rows.length;i++){
+            for (Vector.Element element: rows[i].nonZeroes()){
+                int position = cursors[element.index()]++;
+                dataPoints[position] = i;
+                values[position] = element.get();
+            }
+        }
+        IntStream.range(0, numFeatures).parallel().forEach(j -> {
+            V column = newColumn.apply(offsets[j+1]-offsets[j]);
+            for (int k=offsets[j];k<offsets[j+1];k++){
+                column.setQuick(dataPoints[k], values[k]);
+            }
+            columns[j] = column;
+        });
+    }
+
     @Override
     public IdTranslator getIdTranslator() {
         return idTranslator;
@@ -78,10 +138,12 @@ abstract class AbstractDataSet implements DataSet{
         for (int i=0;i<numDataPoints;i++){
             sb.append(i).append(":\t").append(getRow(i).asFormatString()).append("\n");
         }
-        sb.append("=====================================").append("\n");
-        sb.append("column matrix:").append("\n");
-        for (int j=0;j<numFeatures;j++){
-            sb.append(j).append(":\t").append(getColumn(j).asFormatString()).append("\n");
+        if (columnIndex!=ColumnIndex.NONE){
+            sb.append("=====================================").append("\n");
+            sb.append("column matrix:").append("\n");
+            for (int j=0;j<numFeatures;j++){
+                sb.append(j).append(":\t").append(getColumn(j).asFormatString()).append("\n");
+            }
         }
         sb.append("\n");
 
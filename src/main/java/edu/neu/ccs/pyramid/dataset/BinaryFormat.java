@@ -0,0 +1,585 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * binary file holding a data set as the arrays of a CompressedSparseDataSet
+ * loading maps the file and copies every section into a primitive array in bulk, without parsing
+ * layout, little-endian, every section starts at a multiple of 8 bytes:
+ * header (HEADER_SIZE bytes)
+ * rowOffsets int[numDataPoints+1], rowFeatures int[numEntries], row values float[numEntries] or double[numEntries]
+ * if columns are stored: columnOffsets int[numFeatures+1], columnDataPoints int[numEntries], column values
+ * labels: clf int[numDataPoints]; reg double[numDataPoints];
+ * multi-label labelOffsets int[numDataPoints+1], matched classes int[numLabelEntries]
+ * metadata: serialized FeatureList, IdTranslator and, for classification, LabelTranslator
+ * the file is mapped in windows of at most 1GB, so files larger than 2GB are supported;
+ * each array is still limited to Integer.MAX_VALUE entries
+ * Created by chengli on 5/27/17.
+ */
+public class BinaryFormat {
+    private static final int MAGIC = 0x50595244;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int KIND_PLAIN = 0;
+    private static final int KIND_CLF = 1;
+    private static final int KIND_REG = 2;
+    private static final int KIND_MULTI_LABEL_CLF = 3;
+    private static final int FLAG_MISSING_VALUE = 1;
+    private static final int FLAG_DOUBLE_PRECISION = 2;
+    private static final int FLAG_COLUMNS = 4;
+    private static final long WINDOW_SIZE = 1L<<30;
+
+    public static void save(DataSet dataSet, String binaryFile) throws IOException {
+        save(dataSet, new File(binaryFile));
+    }
+
+    /**
+     * the label type is detected from the data set; rows and columns are both stored
+     * unless the source is a compressed sparse data set without column index
+     * @param dataSet
+     * @param binaryFile
+     */
+    public static void save(DataSet dataSet, File binaryFile) throws IOException {
+        CompressedSparseDataSet compressed;
+        if (dataSet instanceof CompressedSparseDataSet){
+            compressed = (CompressedSparseDataSet) dataSet;
+            if (compressed.getColumnIndex()!=ColumnIndex.NONE){
+                compressed.indexColumns();
+            }
+        } else {
+            compressed = new CompressedSparseDataSet(dataSet, ColumnIndex.EAGER);
+        }
+        int kind = KIND_PLAIN;
+        int numClasses = 0;
+        long numLabelEntries = 0;
+        if (dataSet instanceof ClfDataSet){
+            kind = KIND_CLF;
+            numClasses = ((ClfDataSet) dataSet).getNumClasses();
+        }
+        if (dataSet instanceof RegDataSet){
+            kind = KIND_REG;
+        }
+        if (dataSet instanceof MultiLabelClfDataSet){
+            kind = KIND_MULTI_LABEL_CLF;
+            numClasses = ((MultiLabelClfDataSet) dataSet).getNumClasses();
+            for (MultiLabel multiLabel: ((MultiLabelClfDataSet) dataSet).getMultiLabels()){
+                numLabelEntries += multiLabel.getNumMatchedLabels();
+            }
+        }
+        boolean doublePrecision = compressed.rowDoubleValues!=null;
+        boolean hasColumns = compressed.columnOffsets!=null;
+
+        byte[] metadata;
+        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)
+        ){
+            objectOutputStream.writeObject(dataSet.getFeatureList());
+            objectOutputStream.writeObject(dataSet.getIdTranslator());
+            if (kind==KIND_CLF){
+                objectOutputStream.writeObject(((ClfDataSet) dataSet).getLabelTranslator());
+            }
+            if (kind==KIND_MULTI_LABEL_CLF){
+                objectOutputStream.writeObject(((MultiLabelClfDataSet) dataSet).getLabelTranslator());
+            }
+            objectOutputStream.flush();
+            metadata = byteArrayOutputStream.toByteArray();
+        }
+
+        int flags = 0;
+        if (dataSet.hasMissingValue()){
+            flags |= FLAG_MISSING_VALUE;
+        }
+        if (doublePrecision){
+            flags |= FLAG_DOUBLE_PRECISION;
+        }
+        if (hasColumns){
+            flags |= FLAG_COLUMNS;
+        }
+
+        try (SectionWriter writer = new SectionWriter(binaryFile)){
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writer.writeInt(kind);
+            writer.writeInt(dataSet.getNumDataPoints());
+            writer.writeInt(dataSet.getNumFeatures());
+            writer.writeInt(numClasses);
+            writer.writeInt(flags);
+            writer.writeInt(0);
+            writer.writeLong(compressed.getNumEntries());
+            writer.writeLong(numLabelEntries);
+            writer.writeLong(metadata.length);
+            writer.align(HEADER_SIZE);
+
+            writer.writeInts(compressed.rowOffsets);
+            writer.writeInts(compressed.rowFeatures);
+            writeValues(writer, compressed.rowFloatValues, compressed.rowDoubleValues);
+            if (hasColumns){
+                writer.writeInts(compressed.columnOffsets);
+                writer.writeInts(compressed.columnDataPoints);
+                writeValues(writer, compressed.columnFloatValues, compressed.columnDoubleValues);
+            }
+
+            if (kind==KIND_CLF){
+                writer.writeInts(((ClfDataSet) dataSet).getLabels());
+            }
+            if (kind==KIND_REG){
+                writer.writeDoubles(((RegDataSet) dataSet).getLabels());
+            }
+            if (kind==KIND_MULTI_LABEL_CLF){
+                MultiLabel[] multiLabels = ((MultiLabelClfDataSet) dataSet).getMultiLabels();
+                int[] labelOffsets = new int[multiLabels.length+1];
+                int[] matchedClasses = new int[(int)numLabelEntries];
+                int cursor = 0;
+                for (int i=0;i<multiLabels.length;i++){
+                    for (int label: multiLabels[i].getMatchedLabelsOrdered()){
+                        matchedClasses[cursor] = label;
+                        cursor += 1;
+                    }
+                    labelOffsets[i+1] = cursor;
+                }
+                writer.writeInts(labelOffsets);
+                writer.writeInts(matchedClasses);
+            }
+            writer.writeBytes(metadata);
+        }
+    }
+
+    public static DataSet load(String binaryFile) throws IOException, ClassNotFoundException {
+        return load(new File(binaryFile), ColumnIndex.EAGER);
+    }
+
+    /**
+     * load a data set of any label type; the result is a CompressedSparseDataSet or one of its labeled subclasses
+     * @param binaryFile
+     * @param columnIndex EAGER reads the stored columns; LAZY and NONE skip them
+     */
+    public static DataSet load(File binaryFile, ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ)){
+            SectionReader reader = new SectionReader(channel);
+            if (reader.readInt()!=MAGIC){
+                throw new IllegalArgumentException(binaryFile+" is not a binary data set");
+            }
+            int version = reader.readInt();
+            if (version!=VERSION){
+                throw new IllegalArgumentException("unsupported binary data set version "+version);
+            }
+            int kind = reader.readInt();
+            int numDataPoints = reader.readInt();
+            int numFeatures = reader.readInt();
+            int numClasses = reader.readInt();
+            int flags = reader.readInt();
+            reader.readInt();
+            int numEntries = toArrayLength(reader.readLong());
+            int numLabelEntries = toArrayLength(reader.readLong());
+            int metadataLength = toArrayLength(reader.readLong());
+            reader.seek(HEADER_SIZE);
+            boolean missingValue = (flags & FLAG_MISSING_VALUE)!=0;
+            boolean doublePrecision = (flags & FLAG_DOUBLE_PRECISION)!=0;
+            boolean hasColumns = (flags & FLAG_COLUMNS)!=0;
+
+            int[] rowOffsets = reader.readInts(numDataPoints+1);
+            int[] rowFeatures = reader.readInts(numEntries);
+            float[] rowFloatValues = null;
+            double[] rowDoubleValues = null;
+            if (doublePrecision){
+                rowDoubleValues = reader.readDoubles(numEntries);
+            } else {
+                rowFloatValues = reader.readFloats(numEntries);
+            }
+            CompressedSparseDataSet features = new CompressedSparseDataSet(numDataPoints, numFeatures, missingValue,
+                    columnIndex, rowOffsets, rowFeatures, rowFloatValues, rowDoubleValues);
+
+            if (hasColumns){
+                if (columnIndex==ColumnIndex.EAGER){
+                    int[] columnOffsets = reader.readInts(numFeatures+1);
+                    int[] columnDataPoints = reader.readInts(numEntries);
+                    if (doublePrecision){
+                        features.setColumns(columnOffsets, columnDataPoints, null, reader.readDoubles(numEntries));
+                    } else {
+                        features.setColumns(columnOffsets, columnDataPoints, reader.readFloats(numEntries), null);
+                    }
+                } else {
+                    reader.skip(4L*(numFeatures+1));
+                    reader.skip(4L*numEntries);
+                    reader.skip((doublePrecision ? 8L : 4L)*numEntries);
+                }
+            } else if (columnIndex==ColumnIndex.EAGER){
+                features.indexColumns();
+            }
+
+            DataSet dataSet = features;
+            if (kind==KIND_CLF){
+                dataSet = new CompressedSparseClfDataSet(features, numClasses, reader.readInts(numDataPoints));
+            }
+            if (kind==KIND_REG){
+                dataSet = new CompressedSparseRegDataSet(features, reader.readDoubles(numDataPoints));
+            }
+            if (kind==KIND_MULTI_LABEL_CLF){
+                int[] labelOffsets = reader.readInts(numDataPoints+1);
+                int[] matchedClasses = reader.readInts(numLabelEntries);
+                MultiLabel[] multiLabels = new MultiLabel[numDataPoints];
+                for (int i=0;i<numDataPoints;i++){
+                    multiLabels[i] = new MultiLabel();
+                    for (int k=labelOffsets[i];k<labelOffsets[i+1];k++){
+                        multiLabels[i].addLabel(matchedClasses[k]);
+                    }
+                }
+                dataSet = new CompressedSparseMLClfDataSet(features, numClasses, multiLabels);
+            }
+
+            byte[] metadata = reader.readBytes(metadataLength);
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(metadata))){
+                dataSet.setFeatureList((FeatureList) objectInputStream.readObject());
+                dataSet.setIdTranslator((IdTranslator) objectInputStream.readObject());
+                if (kind==KIND_CLF){
+                    ((ClfDataSet) dataSet).setLabelTranslator((LabelTranslator) objectInputStream.readObject());
+                }
+                if (kind==KIND_MULTI_LABEL_CLF){
+                    ((MultiLabelClfDataSet) dataSet).setLabelTranslator((LabelTranslator) objectInputStream.readObject());
+                }
+            }
+            return dataSet;
+        }
+    }
+
+    public static ClfDataSet loadClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadClfDataSet(new File(binaryFile), ColumnIndex.EAGER);
+    }
+
+    public static ClfDataSet loadClfDataSet(File binaryFile, ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
+        DataSet dataSet = load(binaryFile, columnIndex);
+        if (!(dataSet instanceof ClfDataSet)){
+            throw new IllegalArgumentException(binaryFile+" does not hold a classification data set");
+        }
+        return (ClfDataSet) dataSet;
+    }
+
+    public static RegDataSet loadRegDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadRegDataSet(new File(binaryFile), ColumnIndex.EAGER);
+    }
+
+    public static RegDataSet loadRegDataSet(File binaryFile, ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
+        DataSet dataSet = load(binaryFile, columnIndex);
+        if (!(dataSet instanceof RegDataSet)){
+            throw new IllegalArgumentException(binaryFile+" does not hold a regression data set");
+        }
+        return (RegDataSet) dataSet;
+    }
+
+    public static MultiLabelClfDataSet loadMultiLabelClfDataSet(String binaryFile) throws IOException, ClassNotFoundException {
+        return loadMultiLabelClfDataSet(new File(binaryFile), ColumnIndex.EAGER);
+    }
+
+    public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File binaryFile, ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
+        DataSet dataSet = load(binaryFile, columnIndex);
+        if (!(dataSet instanceof MultiLabelClfDataSet)){
+            throw new IllegalArgumentException(binaryFile+" does not hold a multi-label classification data set");
+        }
+        return (MultiLabelClfDataSet) dataSet;
+    }
+
+    /**
+     * convert a TREC data set, including its feature list and translators
+     * @param trecFile
+     * @param dataSetType determines the label type; the density is ignored
+     * @param binaryFile
+     */
+    public static void convertTREC(File trecFile, DataSetType dataSetType, File binaryFile) throws IOException, ClassNotFoundException {
+        DataSet dataSet;
+        switch (dataSetType){
+            case CLF_DENSE:
+            case CLF_SPARSE:
+                dataSet = TRECFormat.loadClfDataSet(trecFile, DataSetType.CLF_SPARSE, true, ColumnIndex.NONE);
+                break;
+            case REG_DENSE:
+            case REG_SPARSE:
+                dataSet = TRECFormat.loadRegDataSet(trecFile, DataSetType.REG_SPARSE, true, ColumnIndex.NONE);
+                break;
+            case ML_CLF_DENSE:
+            case ML_CLF_SPARSE:
+            case ML_CLF_SEQ_SPARSE:
+                dataSet = TRECFormat.loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_SPARSE, true, ColumnIndex.NONE);
+                break;
+            default:
+                throw new IllegalArgumentException("illegal data set type");
+        }
+        save(dataSet, binaryFile);
+    }
+
+    /**
+     * convert a LibSVM file
+     * @param libSvmFile
+     * @param dataSetType determines the label type; the density is ignored
+     * @param numFeatures
+     * @param numClasses ignored for regression
+     * @param binaryFile
+     */
+    public static void convertLibSvm(String libSvmFile, DataSetType dataSetType, int numFeatures, int numClasses,
+                                     File binaryFile) throws IOException, ClassNotFoundException {
+        DataSet dataSet;
+        switch (dataSetType){
+            case CLF_DENSE:
+            case CLF_SPARSE:
+                dataSet = LibSvmFormat.loadClfDataSet(libSvmFile, numFeatures, numClasses, false);
+                break;
+            case REG_DENSE:
+            case REG_SPARSE:
+                dataSet = LibSvmFormat.loadRegDataSet(libSvmFile, numFeatures, false);
+                break;
+            case ML_CLF_DENSE:
+            case ML_CLF_SPARSE:
+            case ML_CLF_SEQ_SPARSE:
+                dataSet = LibSvmFormat.loadMultiLabelClfDataSet(libSvmFile, false, numFeatures, numClasses);
+                break;
+            default:
+                throw new IllegalArgumentException("illegal data set type");
+        }
+        save(dataSet, binaryFile);
+    }
+
+    private static void writeValues(SectionWriter writer, float[] floatValues, double[] doubleValues) throws IOException {
+        if (floatValues!=null){
+            writer.writeFloats(floatValues);
+        } else {
+            writer.writeDoubles(doubleValues);
+        }
+    }
+
+    private static int toArrayLength(long length){
+        if (length<0 || length>Integer.MAX_VALUE){
+            throw new IllegalArgumentException("illegal section length "+length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * writes sections through a direct buffer; every array starts at a multiple of 8 bytes
+     */
+    private static class SectionWriter implements Closeable {
+        private static final int BUFFER_SIZE = 1<<20;
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private SectionWriter(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private void ensure(int numBytes) throws IOException {
+            if (buffer.remaining()<numBytes){
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        private void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        private void align(long alignment) throws IOException {
+            while (position%alignment!=0){
+                ensure(1);
+                buffer.put((byte) 0);
+                position += 1;
+            }
+        }
+
+        private void writeInts(int[] values) throws IOException {
+            int offset = 0;
+            while (offset<values.length){
+                ensure(4);
+                int count = Math.min(values.length-offset, buffer.remaining()/4);
+                buffer.asIntBuffer().put(values, offset, count);
+                advance(4*count);
+                offset += count;
+            }
+            align(8);
+        }
+
+        private void writeFloats(float[] values) throws IOException {
+            int offset = 0;
+            while (offset<values.length){
+                ensure(4);
+                int count = Math.min(values.length-offset, buffer.remaining()/4);
+                buffer.asFloatBuffer().put(values, offset, count);
+                advance(4*count);
+                offset += count;
+            }
+            align(8);
+        }
+
+        private void writeDoubles(double[] values) throws IOException {
+            int offset = 0;
+            while (offset<values.length){
+                ensure(8);
+                int count = Math.min(values.length-offset, buffer.remaining()/8);
+                buffer.asDoubleBuffer().put(values, offset, count);
+                advance(8*count);
+                offset += count;
+            }
+            align(8);
+        }
+
+        /**
+         * move past bytes written through a view buffer
+         */
+        private void advance(int numBytes){
+            buffer.position(buffer.position()+numBytes);
+            position += numBytes;
+        }
+
+        private void writeBytes(byte[] values) throws IOException {
+            int offset = 0;
+            while (offset<values.length){
+                ensure(1);
+                int length = Math.min(buffer.remaining(), values.length-offset);
+                buffer.put(values, offset, length);
+                offset += length;
+                position += length;
+            }
+            align(8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * reads sections from windows of the mapped file with bulk copies
+     */
+    private static class SectionReader {
+        private FileChannel channel;
+        private long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        private SectionReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * @return the window positioned at the current position, with at least numBytes remaining
+         */
+        private ByteBuffer window(int numBytes) throws IOException {
+            if (window==null || position<windowStart || position+numBytes>windowStart+window.limit()){
+                if (position+numBytes>size){
+                    throw new EOFException("binary data set is truncated");
+                }
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size-windowStart));
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            window.position((int)(position-windowStart));
+            return window;
+        }
+
+        private void seek(long position){
+            this.position = position;
+        }
+
+        private void skip(long numBytes){
+            position += numBytes;
+            align();
+        }
+
+        private void align(){
+            position = (position+7)/8*8;
+        }
+
+        private int readInt() throws IOException {
+            int value = window(4).getInt();
+            position += 4;
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            long value = window(8).getLong();
+            position += 8;
+            return value;
+        }
+
+        private int[] readInts(int length) throws IOException {
+            int[] values = new int[length];
+            int offset = 0;
+            while (offset<length){
+                ByteBuffer buffer = window(4);
+                int count = Math.min(length-offset, buffer.remaining()/4);
+                buffer.asIntBuffer().get(values, offset, count);
+                offset += count;
+                position += 4L*count;
+            }
+            align();
+            return values;
+        }
+
+        private float[] readFloats(int length) throws IOException {
+            float[] values = new float[length];
+            int offset = 0;
+            while (offset<length){
+                ByteBuffer buffer = window(4);
+                int count = Math.min(length-offset, buffer.remaining()/4);
+                buffer.asFloatBuffer().get(values, offset, count);
+                offset += count;
+                position += 4L*count;
+            }
+            align();
+            return values;
+        }
+
+        private double[] readDoubles(int length) throws IOException {
+            double[] values = new double[length];
+            int offset = 0;
+            while (offset<length){
+                ByteBuffer buffer = window(8);
+                int count = Math.min(length-offset, buffer.remaining()/8);
+                buffer.asDoubleBuffer().get(values, offset, count);
+                offset += count;
+                position += 8L*count;
+            }
+            align();
+            return values;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] values = new byte[length];
+            int offset = 0;
+            while (offset<length){
+                ByteBuffer buffer = window(1);
+                int count = Math.min(length-offset, buffer.remaining());
+                buffer.get(values, offset, count);
+                offset += count;
+                position += count;
+            }
+            align();
+            return values;
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class ClfDataSetBuilder {
     private int numFeatures = -1;
     private boolean dense = true;
     private boolean missingValue = false;
+    private ColumnIndex columnIndex = ColumnIndex.EAGER;
     private int numClasses = -1;
 
     public static ClfDataSetBuilder getBuilder(){
@@ -40,15 +41,20 @@ public class ClfDataSetBuilder {
         return this;
     }
 
+    public ClfDataSetBuilder columnIndex(ColumnIndex columnIndex) {
+        this.columnIndex = columnIndex;
+        return this;
+    }
+
     public ClfDataSet build(){
         if (!valid()){
             throw new IllegalArgumentException("Illegal arguments");
         }
         ClfDataSet dataSet;
         if (dense){
-            dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         } else {
-            dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         return dataSet;
     }
@@ -0,0 +1,13 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * how a data set maintains its columns
+ * EAGER: columns are updated together with rows by every setFeatureValue
+ * LAZY: only rows are filled; columns are built in parallel from rows on the first getColumn call,
+ * and kept up to date afterwards
+ * NONE: only rows are kept, getColumn is not supported; for inference-only loads
+ * Created by chengli on 5/27/17.
+ */
+public enum ColumnIndex {
+    EAGER, LAZY, NONE
+}
@@ -0,0 +1,83 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+/**
+ * Created by chengli on 5/27/17.
+ */
+public class CompressedSparseClfDataSet extends CompressedSparseDataSet implements ClfDataSet {
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private int[] labels;
+    private LabelTranslator labelTranslator;
+
+    /**
+     * copy the features, labels and translators of the source
+     * @param dataSet
+     */
+    public CompressedSparseClfDataSet(ClfDataSet dataSet) {
+        this(dataSet, ColumnIndex.EAGER);
+    }
+
+    public CompressedSparseClfDataSet(ClfDataSet dataSet, ColumnIndex columnIndex) {
+        super(dataSet, columnIndex);
+        this.numClasses = dataSet.getNumClasses();
+        this.labels = Arrays.copyOf(dataSet.getLabels(), numDataPoints);
+        this.labelTranslator = dataSet.getLabelTranslator();
+    }
+
+    /**
+     * share the feature arrays, take the labels without copying
+     */
+    CompressedSparseClfDataSet(CompressedSparseDataSet features, int numClasses, int[] labels) {
+        super(features);
+        this.numClasses = numClasses;
+        this.labels = labels;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    @Override
+    public int[] getLabels() {
+        return this.labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, int label) {
+        if (label<0||label>=this.numClasses){
+            throw new IllegalArgumentException("label<0||label>=this.numClasses");
+        }
+        this.labels[dataPointIndex]=label;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("number of classes = ").append(this.numClasses).append("\n");
+        sb.append(super.toString());
+        sb.append("labels = ").append(Arrays.toString(labels));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+}
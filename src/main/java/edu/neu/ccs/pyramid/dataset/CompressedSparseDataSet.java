@@ -0,0 +1,386 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * sparse data set stored as primitive arrays, once by rows (CSR) and once by columns (CSC)
+ * rows and columns are returned as read-only views sorted by index, so scans are sequential memory reads
+ * values are stored as floats when all of them can be represented exactly, otherwise as doubles
+ * the sparsity structure is fixed at construction: existing entries can be updated, new non-zeros cannot be added
+ * unless columns are indexed eagerly, the CSC arrays are built from the CSR arrays on the first getColumn call
+ * density() is SPARSE_RANDOM, so builders copying this data set produce mutable SparseDataSets
+ * BinaryFormat saves and loads the arrays directly
+ * Created by chengli on 5/27/17.
+ */
+public class CompressedSparseDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+    /**
+     * entries of row i are rowOffsets[i] ... rowOffsets[i+1]-1
+     */
+    protected int[] rowOffsets;
+    protected int[] rowFeatures;
+    /**
+     * entries of column j are columnOffsets[j] ... columnOffsets[j+1]-1
+     * null until columns are built; assigned after the other column arrays
+     */
+    protected volatile int[] columnOffsets;
+    protected int[] columnDataPoints;
+    /**
+     * exactly one of the float and double arrays is used
+     */
+    protected float[] rowFloatValues;
+    protected float[] columnFloatValues;
+    protected double[] rowDoubleValues;
+    protected double[] columnDoubleValues;
+
+    /**
+     * copy the feature matrix, feature list and id translator of the source
+     * @param dataSet
+     */
+    public CompressedSparseDataSet(DataSet dataSet) {
+        this(dataSet, ColumnIndex.EAGER);
+    }
+
+    /**
+     * copy the feature matrix, feature list and id translator of the source
+     * @param dataSet
+     * @param columnIndex
+     */
+    public CompressedSparseDataSet(DataSet dataSet, ColumnIndex columnIndex) {
+        super(dataSet.getNumDataPoints(), dataSet.getNumFeatures(), dataSet.hasMissingValue());
+        this.columnIndex = columnIndex;
+        long numEntries = 0;
+        for (int i=0;i<numDataPoints;i++){
+            numEntries += dataSet.getRow(i).getNumNondefaultElements();
+        }
+        if (numEntries>Integer.MAX_VALUE){
+            throw new IllegalArgumentException("too many non-zeros: "+numEntries);
+        }
+        int[] dataPoints = new int[(int)numEntries];
+        int[] features = new int[(int)numEntries];
+        double[] values = new double[(int)numEntries];
+        int cursor = 0;
+        for (int i=0;i<numDataPoints;i++){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                dataPoints[cursor] = i;
+                features[cursor] = element.index();
+                values[cursor] = element.get();
+                cursor += 1;
+            }
+        }
+        compress(dataPoints, features, values, cursor);
+        this.featureList = dataSet.getFeatureList();
+        this.idTranslator = dataSet.getIdTranslator();
+    }
+
+    /**
+     * build from coordinate triplets (dataPoints[e], features[e], values[e]) for e < numEntries, in any order
+     * when a cell appears several times, the last triplet wins; zeros are not stored
+     * the triplet arrays are not kept
+     */
+    CompressedSparseDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex,
+                            int[] dataPoints, int[] features, double[] values, int numEntries) {
+        super(numDataPoints, numFeatures, missingValue);
+        this.columnIndex = columnIndex;
+        if (!missingValue){
+            for (int e=0;e<numEntries;e++){
+                if (Double.isNaN(values[e])){
+                    throw new IllegalArgumentException("missing value is not allowed in this data set");
+                }
+            }
+        }
+        compress(dataPoints, features, values, numEntries);
+    }
+
+    /**
+     * wrap CSR arrays that are already compressed: sorted by feature within each row, no duplicates;
+     * exactly one of rowFloatValues and rowDoubleValues is not null
+     * the arrays are not copied; CSC arrays can be given with setColumns, otherwise they are built as for LAZY
+     */
+    CompressedSparseDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex,
+                            int[] rowOffsets, int[] rowFeatures, float[] rowFloatValues, double[] rowDoubleValues) {
+        super(numDataPoints, numFeatures, missingValue);
+        this.columnIndex = columnIndex;
+        this.rowOffsets = rowOffsets;
+        this.rowFeatures = rowFeatures;
+        this.rowFloatValues = rowFloatValues;
+        this.rowDoubleValues = rowDoubleValues;
+    }
+
+    /**
+     * share the arrays, feature list and id translator of the source without copying; for labeled subclasses
+     * @param features
+     */
+    CompressedSparseDataSet(CompressedSparseDataSet features) {
+        super(features.numDataPoints, features.numFeatures, features.missingValue);
+        this.columnIndex = features.columnIndex;
+        this.rowOffsets = features.rowOffsets;
+        this.rowFeatures = features.rowFeatures;
+        this.rowFloatValues = features.rowFloatValues;
+        this.rowDoubleValues = features.rowDoubleValues;
+        this.columnDataPoints = features.columnDataPoints;
+        this.columnFloatValues = features.columnFloatValues;
+        this.columnDoubleValues = features.columnDoubleValues;
+        this.columnOffsets = features.columnOffsets;
+        this.featureList = features.featureList;
+        this.idTranslator = features.idTranslator;
+    }
+
+    /**
+     * set CSC arrays matching the CSR arrays; values use the same precision as the rows
+     */
+    synchronized void setColumns(int[] columnOffsets, int[] columnDataPoints, float[] columnFloatValues,
+                                 double[] columnDoubleValues){
+        this.columnDataPoints = columnDataPoints;
+        this.columnFloatValues = columnFloatValues;
+        this.columnDoubleValues = columnDoubleValues;
+        this.columnOffsets = columnOffsets;
+    }
+
+    /**
+     * counting sorts only; triplets are grouped by row, then by column (sorted by row),
+     * then by row again (sorted by feature) where duplicates become adjacent
+     */
+    private void compress(int[] dataPoints, int[] features, double[] values, int numEntries){
+        int[] byRowOffsets = offsets(dataPoints, numEntries, numDataPoints);
+        int[] byRowFeatures = new int[numEntries];
+        double[] byRowValues = new double[numEntries];
+        int[] cursors = new int[numDataPoints];
+        System.arraycopy(byRowOffsets, 0, cursors, 0, numDataPoints);
+        for (int e=0;e<numEntries;e++){
+            int position = cursors[dataPoints[e]]++;
+            byRowFeatures[position] = features[e];
+            byRowValues[position] = values[e];
+        }
+
+        int[] byColumnOffsets = offsets(features, numEntries, numFeatures);
+        int[] byColumnDataPoints = new int[numEntries];
+        double[] byColumnValues = new double[numEntries];
+        transpose(byRowOffsets, byRowFeatures, byRowValues, byColumnOffsets, byColumnDataPoints, byColumnValues);
+        byRowFeatures = null;
+        byRowValues = null;
+
+        int[] sortedFeatures = new int[numEntries];
+        double[] sortedValues = new double[numEntries];
+        transpose(byColumnOffsets, byColumnDataPoints, byColumnValues, byRowOffsets, sortedFeatures, sortedValues);
+        byColumnDataPoints = null;
+        byColumnValues = null;
+
+        this.rowOffsets = new int[numDataPoints+1];
+        int size = 0;
+        for (int i=0;i<numDataPoints;i++){
+            int end = byRowOffsets[i+1];
+            for (int k=byRowOffsets[i];k<end;k++){
+                // only the last of adjacent duplicates counts
+                if (k+1<end && sortedFeatures[k+1]==sortedFeatures[k]){
+                    continue;
+                }
+                if (sortedValues[k]!=0){
+                    sortedFeatures[size] = sortedFeatures[k];
+                    sortedValues[size] = sortedValues[k];
+                    size += 1;
+                }
+            }
+            rowOffsets[i+1] = size;
+        }
+        this.rowFeatures = new int[size];
+        System.arraycopy(sortedFeatures, 0, rowFeatures, 0, size);
+        double[] rowValues = new double[size];
+        System.arraycopy(sortedValues, 0, rowValues, 0, size);
+        sortedFeatures = null;
+        sortedValues = null;
+
+        boolean floatExact = true;
+        for (double value: rowValues){
+            if (!isFloatExact(value)){
+                floatExact = false;
+                break;
+            }
+        }
+        if (floatExact){
+            this.rowFloatValues = toFloats(rowValues);
+        } else {
+            this.rowDoubleValues = rowValues;
+        }
+        if (columnIndex==ColumnIndex.EAGER){
+            indexColumns();
+        }
+    }
+
+    /**
+     * build the CSC arrays from the CSR arrays
+     */
+    synchronized void indexColumns(){
+        if (columnOffsets!=null){
+            return;
+        }
+        if (columnIndex==ColumnIndex.NONE){
+            throw new UnsupportedOperationException("columns are not indexed in this data set");
+        }
+        int size = rowFeatures.length;
+        int[] offsets = new int[numFeatures+1];
+        for (int k=0;k<size;k++){
+            offsets[rowFeatures[k]+1] += 1;
+        }
+        for (int j=0;j<numFeatures;j++){
+            offsets[j+1] += offsets[j];
+        }
+        double[] rowValues = rowDoubleValues;
+        if (rowValues==null){
+            rowValues = toDoubles(rowFloatValues);
+        }
+        this.columnDataPoints = new int[size];
+        double[] columnValues = new double[size];
+        transpose(rowOffsets, rowFeatures, rowValues, offsets, columnDataPoints, columnValues);
+        if (rowFloatValues!=null){
+            this.columnFloatValues = toFloats(columnValues);
+        } else {
+            this.columnDoubleValues = columnValues;
+        }
+        this.columnOffsets = offsets;
+    }
+
+    private static int[] offsets(int[] keys, int numEntries, int numKeys){
+        int[] offsets = new int[numKeys+1];
+        for (int e=0;e<numEntries;e++){
+            offsets[keys[e]+1] += 1;
+        }
+        for (int k=0;k<numKeys;k++){
+            offsets[k+1] += offsets[k];
+        }
+        return offsets;
+    }
+
+    /**
+     * scatter the entries of a compressed layout into the other layout whose offsets are known;
+     * entries of each target slice come out sorted by source slice
+     */
+    private static void transpose(int[] sourceOffsets, int[] sourceIndices, double[] sourceValues,
+                                  int[] targetOffsets, int[] targetIndices, double[] targetValues){
+        int numTargets = targetOffsets.length-1;
+        int[] cursors = new int[numTargets];
+        System.arraycopy(targetOffsets, 0, cursors, 0, numTargets);
+        for (int s=0;s<sourceOffsets.length-1;s++){
+            for (int k=sourceOffsets[s];k<sourceOffsets[s+1];k++){
+                int position = cursors[sourceIndices[k]]++;
+                targetIndices[position] = s;
+                targetValues[position] = sourceValues[k];
+            }
+        }
+    }
+
+    private static boolean isFloatExact(double value){
+        return Double.isNaN(value) || (double)(float)value==value;
+    }
+
+    private static float[] toFloats(double[] values){
+        float[] floats = new float[values.length];
+        for (int k=0;k<values.length;k++){
+            floats[k] = (float)values[k];
+        }
+        return floats;
+    }
+
+    private static double[] toDoubles(float[] values){
+        double[] doubles = new double[values.length];
+        for (int k=0;k<values.length;k++){
+            doubles[k] = values[k];
+        }
+        return doubles;
+    }
+
+    @Override
+    public Density density() {
+        return Density.SPARSE_RANDOM;
+    }
+
+    /**
+     * read-only view
+     */
+    @Override
+    public Vector getColumn(int featureIndex) {
+        if (columnOffsets==null){
+            indexColumns();
+        }
+        return new CompressedSparseVector(numDataPoints, columnDataPoints, columnFloatValues, columnDoubleValues,
+                columnOffsets[featureIndex], columnOffsets[featureIndex+1]);
+    }
+
+    /**
+     * read-only view
+     */
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return new CompressedSparseVector(numFeatures, rowFeatures, rowFloatValues, rowDoubleValues,
+                rowOffsets[dataPointIndex], rowOffsets[dataPointIndex+1]);
+    }
+
+    /**
+     * only stored entries can be changed; setting an absent entry to zero does nothing
+     * storage switches from floats to doubles when the value is not a float;
+     * views obtained before the switch do not see later updates
+     * @param dataPointIndex
+     * @param featureIndex
+     * @param featureValue
+     */
+    @Override
+    public synchronized void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        if ((!this.hasMissingValue()) && Double.isNaN(featureValue)){
+            throw new IllegalArgumentException("missing value is not allowed in this data set");
+        }
+        int rowPosition = Arrays.binarySearch(rowFeatures, rowOffsets[dataPointIndex], rowOffsets[dataPointIndex+1],
+                featureIndex);
+        if (rowPosition<0){
+            if (featureValue==0){
+                return;
+            }
+            throw new UnsupportedOperationException("cannot add a new non-zero to a compressed sparse data set");
+        }
+        boolean hasColumns = columnOffsets!=null;
+        if (rowFloatValues!=null && !isFloatExact(featureValue)){
+            this.rowDoubleValues = toDoubles(rowFloatValues);
+            this.rowFloatValues = null;
+            if (hasColumns){
+                this.columnDoubleValues = toDoubles(columnFloatValues);
+                this.columnFloatValues = null;
+            }
+        }
+        if (rowFloatValues!=null){
+            rowFloatValues[rowPosition] = (float)featureValue;
+        } else {
+            rowDoubleValues[rowPosition] = featureValue;
+        }
+        if (hasColumns){
+            int columnPosition = Arrays.binarySearch(columnDataPoints, columnOffsets[featureIndex],
+                    columnOffsets[featureIndex+1], dataPointIndex);
+            if (columnFloatValues!=null){
+                columnFloatValues[columnPosition] = (float)featureValue;
+            } else {
+                columnDoubleValues[columnPosition] = featureValue;
+            }
+        }
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    public int getNumEntries(){
+        return rowFeatures.length;
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("number of stored entries = ").append(getNumEntries()).append("\n");
+        sb.append("value precision = ").append(rowFloatValues!=null ? "float" : "double").append("\n");
+        return sb.toString();
+    }
+}
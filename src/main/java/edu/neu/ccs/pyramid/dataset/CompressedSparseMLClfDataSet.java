@@ -0,0 +1,90 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * Created by chengli on 5/27/17.
+ */
+public class CompressedSparseMLClfDataSet extends CompressedSparseDataSet implements MultiLabelClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private MultiLabel[] multiLabels;
+    private LabelTranslator labelTranslator;
+
+    /**
+     * copy the features, labels and translators of the source
+     * @param dataSet
+     */
+    public CompressedSparseMLClfDataSet(MultiLabelClfDataSet dataSet) {
+        this(dataSet, ColumnIndex.EAGER);
+    }
+
+    public CompressedSparseMLClfDataSet(MultiLabelClfDataSet dataSet, ColumnIndex columnIndex) {
+        super(dataSet, columnIndex);
+        this.numClasses = dataSet.getNumClasses();
+        this.multiLabels = new MultiLabel[numDataPoints];
+        MultiLabel[] sourceLabels = dataSet.getMultiLabels();
+        for (int i=0;i<numDataPoints;i++){
+            this.multiLabels[i] = sourceLabels[i].copy();
+        }
+        this.labelTranslator = dataSet.getLabelTranslator();
+    }
+
+    /**
+     * share the feature arrays, take the labels without copying
+     */
+    CompressedSparseMLClfDataSet(CompressedSparseDataSet features, int numClasses, MultiLabel[] multiLabels) {
+        super(features);
+        this.numClasses = numClasses;
+        this.multiLabels = multiLabels;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    @Override
+    public MultiLabel[] getMultiLabels() {
+        return this.multiLabels;
+    }
+
+    @Override
+    public void addLabel(int dataPointIndex, int classIndex) {
+        this.multiLabels[dataPointIndex].addLabel(classIndex);
+    }
+
+    @Override
+    public void setLabels(int dataPointIndex, MultiLabel multiLabel) {
+        multiLabels[dataPointIndex] = multiLabel;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("numClasses=").append(numClasses).append("\n");
+        sb.append(super.toString());
+        sb.append("labels").append("\n");
+        for (int i=0;i<numDataPoints;i++){
+            sb.append(i).append(":").append(multiLabels[i]).append(",");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse multi-label classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+}
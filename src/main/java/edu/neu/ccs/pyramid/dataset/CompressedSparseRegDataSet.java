@@ -0,0 +1,58 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+/**
+ * Created by chengli on 5/27/17.
+ */
+public class CompressedSparseRegDataSet extends CompressedSparseDataSet implements RegDataSet{
+    private static final long serialVersionUID = 1L;
+    private double[] labels;
+
+    /**
+     * copy the features, labels and id translator of the source
+     * @param dataSet
+     */
+    public CompressedSparseRegDataSet(RegDataSet dataSet) {
+        this(dataSet, ColumnIndex.EAGER);
+    }
+
+    public CompressedSparseRegDataSet(RegDataSet dataSet, ColumnIndex columnIndex) {
+        super(dataSet, columnIndex);
+        this.labels = Arrays.copyOf(dataSet.getLabels(), numDataPoints);
+    }
+
+    /**
+     * share the feature arrays, take the labels without copying
+     */
+    CompressedSparseRegDataSet(CompressedSparseDataSet features, double[] labels) {
+        super(features);
+        this.labels = labels;
+    }
+
+    @Override
+    public double[] getLabels() {
+        return this.labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, double label) {
+        this.labels[dataPointIndex]=label;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.toString());
+        sb.append("labels = ").append(Arrays.toString(labels));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("compressed sparse regression");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.AbstractVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.OrderedIntDoubleMapping;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * read-only view of one row or column of a CompressedSparseDataSet
+ * entries begin ... end-1 of the shared index and value arrays, sorted by index
+ * exactly one of floatValues and doubleValues is not null
+ * Created by chengli on 5/27/17.
+ */
+class CompressedSparseVector extends AbstractVector {
+    private int[] indices;
+    private float[] floatValues;
+    private double[] doubleValues;
+    private int begin;
+    private int end;
+
+    CompressedSparseVector(int size, int[] indices, float[] floatValues, double[] doubleValues,
+                           int begin, int end) {
+        super(size);
+        this.indices = indices;
+        this.floatValues = floatValues;
+        this.doubleValues = doubleValues;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    private double valueAt(int position){
+        if (floatValues!=null){
+            return floatValues[position];
+        }
+        return doubleValues[position];
+    }
+
+    private int find(int index){
+        int low = begin;
+        int high = end-1;
+        while (low<=high){
+            int mid = (low+high)>>>1;
+            int midIndex = indices[mid];
+            if (midIndex<index){
+                low = mid+1;
+            } else if (midIndex>index){
+                high = mid-1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double getQuick(int index) {
+        int position = find(index);
+        if (position<0){
+            return 0;
+        }
+        return valueAt(position);
+    }
+
+    @Override
+    public void setQuick(int index, double value) {
+        throw new UnsupportedOperationException("compressed sparse vectors are read-only");
+    }
+
+    @Override
+    public void mergeUpdates(OrderedIntDoubleMapping updates) {
+        throw new UnsupportedOperationException("compressed sparse vectors are read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public boolean isSequentialAccess() {
+        return true;
+    }
+
+    @Override
+    public int getNumNondefaultElements() {
+        return end-begin;
+    }
+
+    @Override
+    public int getNumNonZeroElements() {
+        int count = 0;
+        for (int k=begin;k<end;k++){
+            if (valueAt(k)!=0){
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public double getLookupCost() {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(end-begin));
+    }
+
+    @Override
+    public double getIteratorAdvanceCost() {
+        return 1;
+    }
+
+    @Override
+    public boolean isAddConstantTime() {
+        return false;
+    }
+
+    /**
+     * an empty mutable vector
+     */
+    @Override
+    public Vector like() {
+        return new RandomAccessSparseVector(size());
+    }
+
+    @Override
+    public Vector like(int cardinality) {
+        return new RandomAccessSparseVector(cardinality);
+    }
+
+    /**
+     * a mutable copy
+     */
+    @Override
+    public Vector clone() {
+        return new SequentialAccessSparseVector(this);
+    }
+
+    @Override
+    protected Matrix matrixLike(int rows, int columns) {
+        return new SparseRowMatrix(rows, columns);
+    }
+
+    @Override
+    protected Iterator<Element> iterateNonZero() {
+        return new Iterator<Element>() {
+            private final ViewElement element = new ViewElement();
+            private int next = skipZeros(begin);
+
+            private int skipZeros(int position){
+                while (position<end && valueAt(position)==0){
+                    position += 1;
+                }
+                return position;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next<end;
+            }
+
+            @Override
+            public Element next() {
+                if (next>=end){
+                    throw new NoSuchElementException();
+                }
+                element.index = indices[next];
+                element.value = valueAt(next);
+                next = skipZeros(next+1);
+                return element;
+            }
+        };
+    }
+
+    @Override
+    protected Iterator<Element> iterator() {
+        return new Iterator<Element>() {
+            private final ViewElement element = new ViewElement();
+            private int index = 0;
+            private int position = begin;
+
+            @Override
+            public boolean hasNext() {
+                return index<size();
+            }
+
+            @Override
+            public Element next() {
+                if (index>=size()){
+                    throw new NoSuchElementException();
+                }
+                element.index = index;
+                if (position<end && indices[position]==index){
+                    element.value = valueAt(position);
+                    position += 1;
+                } else {
+                    element.value = 0;
+                }
+                index += 1;
+                return element;
+            }
+        };
+    }
+
+    private static class ViewElement implements Element {
+        private int index;
+        private double value;
+
+        @Override
+        public double get() {
+            return value;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public void set(double value) {
+            throw new UnsupportedOperationException("compressed sparse vectors are read-only");
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class DataSetBuilder {
     private int numFeatures = -1;
     private boolean dense = true;
     private boolean missingValue = false;
+    private ColumnIndex columnIndex = ColumnIndex.EAGER;
     private Density density = Density.DENSE;
 
     public static DataSetBuilder getBuilder(){
@@ -39,6 +40,11 @@ public class DataSetBuilder {
         return this;
     }
 
+    public DataSetBuilder columnIndex(ColumnIndex columnIndex) {
+        this.columnIndex = columnIndex;
+        return this;
+    }
+
     public DataSet build(){
         if (!valid()){
             throw new IllegalArgumentException("Illegal arguments");
@@ -46,13 +52,13 @@ public class DataSetBuilder {
         DataSet dataSet = null;
         switch (density){
             case DENSE:
-                dataSet = new DenseDataSet(numDataPoints,numFeatures,missingValue);
+                dataSet = new DenseDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
                 break;
             case SPARSE_RANDOM:
-                dataSet = new SparseDataSet(numDataPoints,numFeatures,missingValue);
+                dataSet = new SparseDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
                 break;
             case SPARSE_SEQUENTIAL:
-                dataSet = new SequentialSparseDataSet(numDataPoints,numFeatures,missingValue);
+                dataSet = new SequentialSparseDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
                 break;
         }
         return dataSet;
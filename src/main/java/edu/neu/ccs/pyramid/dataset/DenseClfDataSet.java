@@ -13,7 +13,12 @@ public class DenseClfDataSet extends DenseDataSet implements ClfDataSet{
 
     public DenseClfDataSet(int numDataPoints, int numFeatures,
                            boolean missingValue, int numClasses) {
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, numClasses, ColumnIndex.EAGER);
+    }
+
+    public DenseClfDataSet(int numDataPoints, int numFeatures,
+                           boolean missingValue, int numClasses, ColumnIndex columnIndex) {
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.labels = new int[numDataPoints];
         this.numClasses = numClasses;
         this.labelTranslator = LabelTranslator.newDefaultLabelTranslator(numClasses);
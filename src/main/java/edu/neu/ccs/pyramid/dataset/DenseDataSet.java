@@ -5,6 +5,7 @@ import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.io.IOException;
+import java.util.stream.IntStream;
 
 /**
  * Created by chengli on 8/7/14.
@@ -12,18 +13,28 @@ import java.io.IOException;
 class DenseDataSet extends AbstractDataSet implements DataSet{
 
     protected transient DenseVector[] featureRows;
-    protected transient DenseVector[] featureColumns;
+    /**
+     * null until built when columns are not eagerly indexed
+     */
+    protected transient volatile DenseVector[] featureColumns;
 
 
     DenseDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        this(numDataPoints, numFeatures, missingValue, ColumnIndex.EAGER);
+    }
+
+    DenseDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex) {
         super(numDataPoints,numFeatures, missingValue);
+        this.columnIndex = columnIndex;
         this.featureRows = new DenseVector[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
             this.featureRows[i] = new DenseVector(numFeatures);
         }
-        this.featureColumns = new DenseVector[numFeatures];
-        for (int j=0;j<numFeatures;j++){
-            this.featureColumns[j] = new DenseVector(numDataPoints);
+        if (columnIndex==ColumnIndex.EAGER){
+            this.featureColumns = new DenseVector[numFeatures];
+            for (int j=0;j<numFeatures;j++){
+                this.featureColumns[j] = new DenseVector(numDataPoints);
+            }
         }
     }
 
@@ -34,7 +45,29 @@ class DenseDataSet extends AbstractDataSet implements DataSet{
 
     @Override
     public Vector getColumn(int featureIndex) {
-        return this.featureColumns[featureIndex];
+        DenseVector[] columns = this.featureColumns;
+        if (columns==null){
+            columns = indexColumns();
+        }
+        return columns[featureIndex];
+    }
+
+    private synchronized DenseVector[] indexColumns(){
+        if (this.featureColumns==null){
+            if (columnIndex==ColumnIndex.NONE){
+                throw new UnsupportedOperationException("columns are not indexed in this data set");
+            }
+            DenseVector[] columns = new DenseVector[numFeatures];
+            IntStream.range(0, numFeatures).parallel().forEach(j -> {
+                double[] values = new double[numDataPoints];
+                for (int i=0;i<numDataPoints;i++){
+                    values[i] = featureRows[i].getQuick(j);
+                }
+                columns[j] = new DenseVector(values, true);
+            });
+            this.featureColumns = columns;
+        }
+        return this.featureColumns;
     }
 
     @Override
@@ -42,13 +75,25 @@ class DenseDataSet extends AbstractDataSet implements DataSet{
         return this.featureRows[dataPointIndex];
     }
 
+    @Override
+    Vector[] rowVectors() {
+        return featureRows;
+    }
+
+    @Override
+    Vector[] columnVectors() {
+        return featureColumns;
+    }
+
     @Override
     public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
         if ((!this.hasMissingValue()) && Double.isNaN(featureValue)){
             throw new IllegalArgumentException("missing value is not allowed in this data set");
         }
         this.featureRows[dataPointIndex].set(featureIndex, featureValue);
-        this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        if (this.featureColumns!=null){
+            this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        }
     }
 
 
@@ -65,9 +110,13 @@ class DenseDataSet extends AbstractDataSet implements DataSet{
         for (int i=0;i<featureRows.length;i++){
             serFeatureRows[i] = new SerializableVector(featureRows[i]);
         }
-        SerializableVector[] serFeatureColumns = new SerializableVector[featureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+        // columns that are not built yet are not written
+        SerializableVector[] serFeatureColumns = null;
+        if (featureColumns!=null){
+            serFeatureColumns = new SerializableVector[featureColumns.length];
+            for (int i=0;i<featureColumns.length;i++){
+                serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+            }
         }
         out.writeObject(serFeatureRows);
         out.writeObject(serFeatureColumns);
@@ -84,9 +133,12 @@ class DenseDataSet extends AbstractDataSet implements DataSet{
         }
 
         SerializableVector[] serFeatureColumns = (SerializableVector[])in.readObject();
-        featureColumns = new DenseVector[serFeatureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            featureColumns[i] = (DenseVector) serFeatureColumns[i].getVector();
+        if (serFeatureColumns!=null){
+            DenseVector[] columns = new DenseVector[serFeatureColumns.length];
+            for (int i=0;i<columns.length;i++){
+                columns[i] = (DenseVector) serFeatureColumns[i].getVector();
+            }
+            featureColumns = columns;
         }
     }
 
@@ -16,7 +16,12 @@ public class DenseMLClfDataSet extends DenseDataSet implements MultiLabelClfData
 
     public DenseMLClfDataSet(int numDataPoints, int numFeatures,
                              boolean missingValue, int numClasses){
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, numClasses, ColumnIndex.EAGER);
+    }
+
+    public DenseMLClfDataSet(int numDataPoints, int numFeatures,
+                             boolean missingValue, int numClasses, ColumnIndex columnIndex){
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.numClasses=numClasses;
         this.multiLabels=new MultiLabel[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
@@ -83,9 +88,13 @@ public class DenseMLClfDataSet extends DenseDataSet implements MultiLabelClfData
         for (int i=0;i<featureRows.length;i++){
             serFeatureRows[i] = new SerializableVector(featureRows[i]);
         }
-        SerializableVector[] serFeatureColumns = new SerializableVector[featureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+        // columns that are not built yet are not written
+        SerializableVector[] serFeatureColumns = null;
+        if (featureColumns!=null){
+            serFeatureColumns = new SerializableVector[featureColumns.length];
+            for (int i=0;i<featureColumns.length;i++){
+                serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+            }
         }
         out.writeObject(serFeatureRows);
         out.writeObject(serFeatureColumns);
@@ -102,9 +111,12 @@ public class DenseMLClfDataSet extends DenseDataSet implements MultiLabelClfData
         }
 
         SerializableVector[] serFeatureColumns = (SerializableVector[])in.readObject();
-        featureColumns = new DenseVector[serFeatureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            featureColumns[i] = (DenseVector) serFeatureColumns[i].getVector();
+        if (serFeatureColumns!=null){
+            DenseVector[] columns = new DenseVector[serFeatureColumns.length];
+            for (int i=0;i<columns.length;i++){
+                columns[i] = (DenseVector) serFeatureColumns[i].getVector();
+            }
+            featureColumns = columns;
         }
     }
 }
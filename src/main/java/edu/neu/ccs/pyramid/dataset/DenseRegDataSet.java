@@ -10,7 +10,11 @@ public class DenseRegDataSet extends DenseDataSet implements RegDataSet {
 
 
     DenseRegDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, ColumnIndex.EAGER);
+    }
+
+    DenseRegDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex) {
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.labels = new double[numDataPoints];
     }
 
@@ -0,0 +1,195 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * collects feature values from many threads without locking, then writes them into a data set
+ * each thread appends (data point, feature, value) triplets to its own chunk;
+ * chunks are held by the buffer, not by the threads, so pooled threads do not keep them after the buffer is gone;
+ * fill groups the triplets by row and by column and sets every row and every column from a single thread,
+ * so the data set is filled in parallel without taking its monitor;
+ * rows receive their values in feature order and columns in data point order, which keeps appends cheap for
+ * sequential access vectors
+ * when a cell is set several times by the same thread, the last value wins;
+ * the order between threads setting the same cell is unspecified, as with concurrent setFeatureValue calls
+ * Created by chengli on 5/27/17.
+ */
+public class FeatureValueBuffer {
+    private static final int INITIAL_CHUNK_CAPACITY = 1024;
+    private int numDataPoints;
+    private int numFeatures;
+    private ConcurrentHashMap<Thread, Chunk> chunks = new ConcurrentHashMap<>();
+
+    public FeatureValueBuffer(int numDataPoints, int numFeatures) {
+        this.numDataPoints = numDataPoints;
+        this.numFeatures = numFeatures;
+    }
+
+    /**
+     * thread-safe and lock-free
+     * @param dataPointIndex
+     * @param featureIndex
+     * @param featureValue
+     */
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue){
+        if (dataPointIndex<0 || dataPointIndex>=numDataPoints){
+            throw new IndexOutOfBoundsException("data point index "+dataPointIndex);
+        }
+        if (featureIndex<0 || featureIndex>=numFeatures){
+            throw new IndexOutOfBoundsException("feature index "+featureIndex);
+        }
+        Thread thread = Thread.currentThread();
+        Chunk chunk = chunks.get(thread);
+        if (chunk==null){
+            chunk = chunks.computeIfAbsent(thread, t -> new Chunk());
+        }
+        chunk.add(dataPointIndex, featureIndex, featureValue);
+    }
+
+    /**
+     * @return number of buffered triplets
+     */
+    public long size(){
+        long size = 0;
+        for (Chunk chunk: chunks.values()){
+            size += chunk.size;
+        }
+        return size;
+    }
+
+    /**
+     * write all buffered values into the data set, and empty the buffer; must not run concurrently with
+     * setFeatureValue
+     * data sets that do not store rows as vectors are filled by setFeatureValue, one value at a time
+     * @param dataSet
+     */
+    public void fill(DataSet dataSet){
+        if (dataSet.getNumDataPoints()!=numDataPoints || dataSet.getNumFeatures()!=numFeatures){
+            throw new IllegalArgumentException("data set size does not match the buffer");
+        }
+        List<Chunk> chunkList = new ArrayList<>(chunks.values());
+        chunks.clear();
+        if (!dataSet.hasMissingValue()){
+            for (Chunk chunk: chunkList){
+                for (int e=0;e<chunk.size;e++){
+                    if (Double.isNaN(chunk.values[e])){
+                        throw new IllegalArgumentException("missing value is not allowed in this data set");
+                    }
+                }
+            }
+        }
+        Vector[] rows = null;
+        Vector[] columns = null;
+        if (dataSet instanceof AbstractDataSet){
+            rows = ((AbstractDataSet) dataSet).rowVectors();
+            columns = ((AbstractDataSet) dataSet).columnVectors();
+        }
+        if (rows==null){
+            for (Chunk chunk: chunkList){
+                for (int e=0;e<chunk.size;e++){
+                    dataSet.setFeatureValue(chunk.dataPoints[e], chunk.features[e], chunk.values[e]);
+                }
+            }
+            return;
+        }
+
+        long total = 0;
+        for (Chunk chunk: chunkList){
+            total += chunk.size;
+        }
+        if (total>Integer.MAX_VALUE){
+            throw new IllegalStateException("too many buffered values: "+total);
+        }
+        int numEntries = (int) total;
+        int[] dataPoints = new int[numEntries];
+        int[] features = new int[numEntries];
+        double[] values = new double[numEntries];
+        int cursor = 0;
+        for (Chunk chunk: chunkList){
+            System.arraycopy(chunk.dataPoints, 0, dataPoints, cursor, chunk.size);
+            System.arraycopy(chunk.features, 0, features, cursor, chunk.size);
+            System.arraycopy(chunk.values, 0, values, cursor, chunk.size);
+            cursor += chunk.size;
+        }
+        chunkList.clear();
+
+        // stable counting sorts keep the triplets of a cell in the order they were set
+        int[] byFeature = new int[numEntries];
+        group(features, numFeatures, null, byFeature);
+        int[] order = new int[numEntries];
+        int[] rowOffsets = group(dataPoints, numDataPoints, byFeature, order);
+        Vector[] targetRows = rows;
+        IntStream.range(0, numDataPoints).parallel().forEach(i -> {
+            Vector row = targetRows[i];
+            for (int k=rowOffsets[i];k<rowOffsets[i+1];k++){
+                int e = order[k];
+                row.set(features[e], values[e]);
+            }
+        });
+
+        if (columns!=null){
+            int[] byRow = byFeature;
+            int[] columnOffsets = group(features, numFeatures, order, byRow);
+            Vector[] targetColumns = columns;
+            IntStream.range(0, numFeatures).parallel().forEach(j -> {
+                Vector column = targetColumns[j];
+                for (int k=columnOffsets[j];k<columnOffsets[j+1];k++){
+                    int e = byRow[k];
+                    column.set(dataPoints[e], values[e]);
+                }
+            });
+        }
+    }
+
+    /**
+     * stable counting sort of triplet positions by key
+     * @param input triplet positions to sort, null for 0 ... keys.length-1
+     * @param output filled with the positions grouped by key
+     * @return offsets of the groups
+     */
+    private static int[] group(int[] keys, int numKeys, int[] input, int[] output){
+        int[] offsets = new int[numKeys+1];
+        for (int key: keys){
+            offsets[key+1] += 1;
+        }
+        for (int k=0;k<numKeys;k++){
+            offsets[k+1] += offsets[k];
+        }
+        int[] cursors = new int[numKeys];
+        System.arraycopy(offsets, 0, cursors, 0, numKeys);
+        for (int k=0;k<keys.length;k++){
+            int e = input==null ? k : input[k];
+            output[cursors[keys[e]]++] = e;
+        }
+        return offsets;
+    }
+
+    /**
+     * triplets appended by one thread
+     */
+    private static class Chunk {
+        private int[] dataPoints = new int[INITIAL_CHUNK_CAPACITY];
+        private int[] features = new int[INITIAL_CHUNK_CAPACITY];
+        private double[] values = new double[INITIAL_CHUNK_CAPACITY];
+        private int size;
+
+        private void add(int dataPoint, int feature, double value){
+            if (size==dataPoints.length){
+                int capacity = size + (size >> 1);
+                dataPoints = Arrays.copyOf(dataPoints, capacity);
+                features = Arrays.copyOf(features, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            dataPoints[size] = dataPoint;
+            features[size] = feature;
+            values[size] = value;
+            size += 1;
+        }
+    }
+}
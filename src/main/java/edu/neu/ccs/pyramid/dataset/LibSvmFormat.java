@@ -5,6 +5,7 @@ import org.apache.mahout.math.Vector;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -108,14 +109,15 @@ public class LibSvmFormat {
 
     public static ClfDataSet loadClfDataSet(String libSvmFile,
                                             int numFeatures, int numClasses, boolean dense) throws IOException, ClassNotFoundException {
-        LabelTranslator labelTranslator = loadLabelTranslator(libSvmFile);
+        TextMatrixParser parser = new TextMatrixParser(new File(libSvmFile));
+        LabelTranslator labelTranslator = loadLabelTranslator(parser);
         System.out.println(labelTranslator);
 
         if (labelTranslator.getNumClasses()!=numClasses){
             throw new RuntimeException("labelTranslator.getNumClasses()!=numClasse");
         }
 
-        int numDataPoints = getNumDataPoints(libSvmFile);
+        int numDataPoints = parser.getNumLines();
 
         ClfDataSet dataSet = ClfDataSetBuilder.getBuilder()
                 .numDataPoints(numDataPoints)
@@ -123,31 +125,12 @@ public class LibSvmFormat {
                 .numClasses(numClasses)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                int extIntLabel = (int)Double.parseDouble(lineSplit[0]);
-                String extLabel = ""+extIntLabel;
-                int label = labelTranslator.toIntLabel(extLabel);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        FeatureValueBuffer buffer = new FeatureValueBuffer(numDataPoints, numFeatures);
+        parser.parse(1, buffer, (dataIndex, labels, numLabels) -> {
+            int extIntLabel = (int)TextMatrixParser.singleLabel(labels, numLabels);
+            dataSet.setLabel(dataIndex, labelTranslator.toIntLabel(""+extIntLabel));
+        });
+        buffer.fill(dataSet);
         dataSet.setLabelTranslator(labelTranslator);
         return dataSet;
 
@@ -155,67 +138,36 @@ public class LibSvmFormat {
 
     public static RegDataSet loadRegDataSet(String libSvmFile,
                                             int numFeatures, boolean dense) throws IOException, ClassNotFoundException {
-        int numDataPoints = getNumDataPoints(libSvmFile);
+        TextMatrixParser parser = new TextMatrixParser(new File(libSvmFile));
+        int numDataPoints = parser.getNumLines();
 
         RegDataSet dataSet = RegDataSetBuilder.getBuilder()
                 .numDataPoints(numDataPoints)
                 .numFeatures(numFeatures)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        FeatureValueBuffer buffer = new FeatureValueBuffer(numDataPoints, numFeatures);
+        parser.parse(1, buffer, (dataIndex, labels, numLabels) ->
+                dataSet.setLabel(dataIndex, TextMatrixParser.singleLabel(labels, numLabels)));
+        buffer.fill(dataSet);
         return dataSet;
     }
 
     public static LabelTranslator loadLabelTranslator(String libSvmFile) throws IOException{
-        Set<Integer> oldLabels = new HashSet<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                int label = (int)Double.parseDouble(lineSplit[0]);
-                oldLabels.add(label);
-            }
-        }
+        return loadLabelTranslator(new TextMatrixParser(new File(libSvmFile)));
+    }
+
+    private static LabelTranslator loadLabelTranslator(TextMatrixParser parser) throws IOException{
+        Set<Integer> oldLabels = ConcurrentHashMap.newKeySet();
+        parser.parse(1, null, (dataIndex, labels, numLabels) ->
+                oldLabels.add((int)TextMatrixParser.singleLabel(labels, numLabels)));
         List<String> labelStrings = oldLabels.stream().sorted().map(label -> ""+label).collect(Collectors.toList());
         LabelTranslator labelTranslator = new LabelTranslator(labelStrings);
         return labelTranslator;
     }
 
     public static int getNumDataPoints(String libSvmFile) throws IOException{
-        int num = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            while ((line=br.readLine())!=null){
-                num += 1;
-            }
-            br.close();
-        }
-        return num;
+        return new TextMatrixParser(new File(libSvmFile)).getNumLines();
     }
 
     public static RegDataSet loadRegDataSet(String libSvmFile, DataSetType dataSetType,
@@ -225,7 +177,8 @@ public class LibSvmFormat {
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(String libSvmFile,
                                                                 boolean dense, int numFeatures, int numClasses) throws IOException, ClassNotFoundException {
-        int numDatapoints = getNumDataPoints(libSvmFile);
+        TextMatrixParser parser = new TextMatrixParser(new File(libSvmFile));
+        int numDatapoints = parser.getNumLines();
 //        int numClasses = getNumClasses(libSvmFile);
 //        int numFeatures = getnumFeatures(libSvmFile);
 
@@ -237,31 +190,13 @@ public class LibSvmFormat {
                 .numFeatures(numFeatures).numDataPoints(numDatapoints).
                         density(Density.SPARSE_RANDOM).build();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int lineCount = 0;
-            while ((line=br.readLine()) != null) {
-                String[] lineInfo = line.split(" ");
-                // adding labels
-                String labels = lineInfo[0];
-                for (String label : labels.split(",")) {
-                    int l = Integer.parseInt(label);
-                    dataSet.addLabel(lineCount, l-1);
-//                    dataSet.addLabel(lineCount, l);
-                }
-                // adding feature
-                for (int i=1; i<lineInfo.length; i++) {
-                    String[] featureValue = lineInfo[i].split(":");
-                    int feature = Integer.parseInt(featureValue[0]);
-                    double value = Double.parseDouble(featureValue[1]);
-                    dataSet.setFeatureValue(lineCount, feature-1, value);
-                }
-                lineCount++;
+        FeatureValueBuffer buffer = new FeatureValueBuffer(numDatapoints, numFeatures);
+        parser.parse(1, buffer, (dataIndex, labels, numLabels) -> {
+            for (int l=0;l<numLabels;l++){
+                dataSet.addLabel(dataIndex, TextMatrixParser.intLabel(labels[l])-1);
             }
-            br.close();
-        }
-
+        });
+        buffer.fill(dataSet);
 
         return dataSet;
     }
@@ -7,6 +7,7 @@ public class MLClfDataSetBuilder {
     private int numDataPoints = -1;
     private int numFeatures = -1;
     private boolean missingValue = false;
+    private ColumnIndex columnIndex = ColumnIndex.EAGER;
     private int numClasses = -1;
     private Density density = Density.DENSE;
 
@@ -40,6 +41,11 @@ public class MLClfDataSetBuilder {
         return this;
     }
 
+    public MLClfDataSetBuilder columnIndex(ColumnIndex columnIndex) {
+        this.columnIndex = columnIndex;
+        return this;
+    }
+
     public MultiLabelClfDataSet build(){
         if (numDataPoints<=0){
             throw new RuntimeException("numDataPoints<=0");
@@ -56,13 +62,13 @@ public class MLClfDataSetBuilder {
         MultiLabelClfDataSet dataSet = null;
         switch (density){
             case DENSE:
-                dataSet = new DenseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                dataSet = new DenseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
                 break;
             case SPARSE_RANDOM:
-                dataSet = new SparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                dataSet = new SparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
                 break;
             case SPARSE_SEQUENTIAL:
-                dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
                 break;
         }
 
@@ -1,29 +1,100 @@
 package edu.neu.ccs.pyramid.dataset;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
+ * class-major: the probabilities of each class are stored in one primitive array,
+ * so per-class passes over all data points are sequential scans
  * Created by chengli on 2/3/15.
  */
 public class ProbabilityMatrix {
-    // num data * num classes
-    private float[][] m;
+    private int numDataPoints;
+    private int numClasses;
+    // num classes * num data
+    private float[][] columns;
+
 
     public ProbabilityMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.columns = new float[numClasses][numDataPoints];
     }
 
     public void setProbability(int dataPointIndex, int classIndex, double probability){
-        this.m[dataPointIndex][classIndex] = (float)probability;
+        this.columns[classIndex][dataPointIndex] = (float)probability;
+    }
+
+    public float getProbability(int dataPointIndex, int classIndex){
+        return columns[classIndex][dataPointIndex];
     }
 
+    /**
+     *
+     * @param classIndex
+     * @return the backing array of the class; changes are visible in the matrix
+     */
+    public float[] getProbabilitiesForClass(int classIndex){
+        return columns[classIndex];
+    }
+
+    /**
+     * gathers one value per class; prefer {@link #getProbability(int, int)} or per-class scans in hot loops
+     * @param dataPointIndex
+     * @return a copy
+     */
     public float[] getProbabilitiesForData(int dataPointIndex){
-        return m[dataPointIndex];
+        float[] row = new float[numClasses];
+        for (int k=0;k<numClasses;k++){
+            row[k] = columns[k][dataPointIndex];
+        }
+        return row;
     }
 
 
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.columns[classIndex][dataPointIndex] += increment;
     }
 
+    public int getNumDataPoints(){
+        return numDataPoints;
+    }
 
-}
+    public int getNumClasses(){
+        return numClasses;
+    }
+
+    /**
+     * compact binary form: num data points, num classes, then the probabilities of each class as floats
+     * @param out
+     * @throws IOException
+     */
+    public void serialize(DataOutput out) throws IOException{
+        out.writeInt(numDataPoints);
+        out.writeInt(numClasses);
+        for (float[] column: columns){
+            for (float value: column){
+                out.writeFloat(value);
+            }
+        }
+    }
 
+    /**
+     * reads the form written by {@link #serialize(DataOutput)}
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static ProbabilityMatrix deserialize(DataInput in) throws IOException{
+        int numDataPoints = in.readInt();
+        int numClasses = in.readInt();
+        ProbabilityMatrix matrix = new ProbabilityMatrix(numDataPoints, numClasses);
+        for (float[] column: matrix.columns){
+            for (int i=0;i<numDataPoints;i++){
+                column[i] = in.readFloat();
+            }
+        }
+        return matrix;
+    }
+}
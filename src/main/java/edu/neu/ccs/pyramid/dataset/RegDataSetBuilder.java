@@ -8,6 +8,7 @@ public class RegDataSetBuilder {
     private int numFeatures = -1;
     private boolean dense = true;
     private boolean missingValue = false;
+    private ColumnIndex columnIndex = ColumnIndex.EAGER;
 
     public static RegDataSetBuilder getBuilder(){
         return new RegDataSetBuilder();
@@ -35,15 +36,20 @@ public class RegDataSetBuilder {
 
 
 
+    public RegDataSetBuilder columnIndex(ColumnIndex columnIndex) {
+        this.columnIndex = columnIndex;
+        return this;
+    }
+
     public RegDataSet build(){
         if (!valid()){
             throw new IllegalArgumentException("Illegal arguments");
         }
         RegDataSet dataSet;
         if (dense){
-            dataSet = new DenseRegDataSet(numDataPoints,numFeatures,missingValue);
+            dataSet = new DenseRegDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
         } else {
-            dataSet = new SparseRegDataSet(numDataPoints,numFeatures,missingValue);
+            dataSet = new SparseRegDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
         }
         return dataSet;
     }
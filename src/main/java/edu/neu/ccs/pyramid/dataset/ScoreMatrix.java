@@ -1,27 +1,100 @@
 package edu.neu.ccs.pyramid.dataset;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
+ * class-major: the scores of each class are stored in one primitive array,
+ * so per-class passes over all data points are sequential scans
  * Created by chengli on 2/3/15.
  */
 public class ScoreMatrix {
-    // num data * num classes
-    private float[][] m;
+    private int numDataPoints;
+    private int numClasses;
+    // num classes * num data
+    private float[][] columns;
 
 
     public ScoreMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.columns = new float[numClasses][numDataPoints];
     }
 
     public void setScore(int dataPointIndex, int classIndex, double score){
-        this.m[dataPointIndex][classIndex] = (float)score;
+        this.columns[classIndex][dataPointIndex] = (float)score;
+    }
+
+    public float getScore(int dataPointIndex, int classIndex){
+        return columns[classIndex][dataPointIndex];
     }
 
+    /**
+     *
+     * @param classIndex
+     * @return the backing array of the class; changes are visible in the matrix
+     */
+    public float[] getScoresForClass(int classIndex){
+        return columns[classIndex];
+    }
+
+    /**
+     * gathers one value per class; prefer {@link #getScore(int, int)} or per-class scans in hot loops
+     * @param dataPointIndex
+     * @return a copy
+     */
     public float[] getScoresForData(int dataPointIndex){
-        return m[dataPointIndex];
+        float[] row = new float[numClasses];
+        for (int k=0;k<numClasses;k++){
+            row[k] = columns[k][dataPointIndex];
+        }
+        return row;
     }
 
 
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.columns[classIndex][dataPointIndex] += increment;
+    }
+
+    public int getNumDataPoints(){
+        return numDataPoints;
+    }
+
+    public int getNumClasses(){
+        return numClasses;
+    }
+
+    /**
+     * compact binary form: num data points, num classes, then the scores of each class as floats
+     * @param out
+     * @throws IOException
+     */
+    public void serialize(DataOutput out) throws IOException{
+        out.writeInt(numDataPoints);
+        out.writeInt(numClasses);
+        for (float[] column: columns){
+            for (float value: column){
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    /**
+     * reads the form written by {@link #serialize(DataOutput)}
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static ScoreMatrix deserialize(DataInput in) throws IOException{
+        int numDataPoints = in.readInt();
+        int numClasses = in.readInt();
+        ScoreMatrix matrix = new ScoreMatrix(numDataPoints, numClasses);
+        for (float[] column: matrix.columns){
+            for (int i=0;i<numDataPoints;i++){
+                column[i] = in.readFloat();
+            }
+        }
+        return matrix;
     }
 }
@@ -10,17 +10,27 @@ import org.apache.mahout.math.Vector;
 public class SequentialSparseDataSet extends AbstractDataSet implements DataSet{
 
     protected transient SequentialAccessSparseVector[] featureRows;
-    protected transient SequentialAccessSparseVector[] featureColumns;
+    /**
+     * null until built when columns are not eagerly indexed
+     */
+    protected transient volatile SequentialAccessSparseVector[] featureColumns;
 
     public SequentialSparseDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        this(numDataPoints, numFeatures, missingValue, ColumnIndex.EAGER);
+    }
+
+    public SequentialSparseDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex) {
         super(numDataPoints,numFeatures,missingValue);
+        this.columnIndex = columnIndex;
         this.featureRows = new SequentialAccessSparseVector[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
             this.featureRows[i] = new SequentialAccessSparseVector(numFeatures);
         }
-        this.featureColumns = new SequentialAccessSparseVector[numFeatures];
-        for (int j=0;j<numFeatures;j++){
-            this.featureColumns[j] = new SequentialAccessSparseVector(numDataPoints);
+        if (columnIndex==ColumnIndex.EAGER){
+            this.featureColumns = new SequentialAccessSparseVector[numFeatures];
+            for (int j=0;j<numFeatures;j++){
+                this.featureColumns[j] = new SequentialAccessSparseVector(numDataPoints);
+            }
         }
     }
 
@@ -31,7 +41,24 @@ public class SequentialSparseDataSet extends AbstractDataSet implements DataSet{
 
     @Override
     public Vector getColumn(int featureIndex) {
-        return this.featureColumns[featureIndex];
+        SequentialAccessSparseVector[] columns = this.featureColumns;
+        if (columns==null){
+            columns = indexColumns();
+        }
+        return columns[featureIndex];
+    }
+
+    private synchronized SequentialAccessSparseVector[] indexColumns(){
+        if (this.featureColumns==null){
+            if (columnIndex==ColumnIndex.NONE){
+                throw new UnsupportedOperationException("columns are not indexed in this data set");
+            }
+            SequentialAccessSparseVector[] columns = new SequentialAccessSparseVector[numFeatures];
+            transpose(featureRows, columns, numEntries -> new SequentialAccessSparseVector(numDataPoints,
+                    Math.max(numEntries, 1)));
+            this.featureColumns = columns;
+        }
+        return this.featureColumns;
     }
 
     @Override
@@ -39,6 +66,16 @@ public class SequentialSparseDataSet extends AbstractDataSet implements DataSet{
         return this.featureRows[dataPointIndex];
     }
 
+    @Override
+    Vector[] rowVectors() {
+        return featureRows;
+    }
+
+    @Override
+    Vector[] columnVectors() {
+        return featureColumns;
+    }
+
     /**
      * must be synchronized, otherwise may get ArrayIndexOutOfBoundsException
      * @param dataPointIndex
@@ -51,7 +88,9 @@ public class SequentialSparseDataSet extends AbstractDataSet implements DataSet{
             throw new IllegalArgumentException("missing value is not allowed in this data set");
         }
         this.featureRows[dataPointIndex].set(featureIndex, featureValue);
-        this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        if (this.featureColumns!=null){
+            this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        }
     }
 
 
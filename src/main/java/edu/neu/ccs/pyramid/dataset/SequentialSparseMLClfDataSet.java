@@ -16,7 +16,12 @@ public class SequentialSparseMLClfDataSet extends SequentialSparseDataSet implem
 
     public SequentialSparseMLClfDataSet(int numDataPoints, int numFeatures,
                               boolean missingValue, int numClasses){
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, numClasses, ColumnIndex.EAGER);
+    }
+
+    public SequentialSparseMLClfDataSet(int numDataPoints, int numFeatures,
+                              boolean missingValue, int numClasses, ColumnIndex columnIndex){
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.numClasses=numClasses;
         this.multiLabels=new MultiLabel[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
@@ -84,9 +89,13 @@ public class SequentialSparseMLClfDataSet extends SequentialSparseDataSet implem
         for (int i=0;i<featureRows.length;i++){
             serFeatureRows[i] = new SerializableVector(featureRows[i]);
         }
-        SerializableVector[] serFeatureColumns = new SerializableVector[featureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+        // columns that are not built yet are not written
+        SerializableVector[] serFeatureColumns = null;
+        if (featureColumns!=null){
+            serFeatureColumns = new SerializableVector[featureColumns.length];
+            for (int i=0;i<featureColumns.length;i++){
+                serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+            }
         }
         out.writeObject(serFeatureRows);
         out.writeObject(serFeatureColumns);
@@ -103,9 +112,12 @@ public class SequentialSparseMLClfDataSet extends SequentialSparseDataSet implem
         }
 
         SerializableVector[] serFeatureColumns = (SerializableVector[])in.readObject();
-        featureColumns = new SequentialAccessSparseVector[serFeatureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            featureColumns[i] = (SequentialAccessSparseVector) serFeatureColumns[i].getVector();
+        if (serFeatureColumns!=null){
+            SequentialAccessSparseVector[] columns = new SequentialAccessSparseVector[serFeatureColumns.length];
+            for (int i=0;i<columns.length;i++){
+                columns[i] = (SequentialAccessSparseVector) serFeatureColumns[i].getVector();
+            }
+            featureColumns = columns;
         }
     }
 }
@@ -15,7 +15,12 @@ public class SparseClfDataSet extends SparseDataSet implements ClfDataSet {
 
     public SparseClfDataSet(int numDataPoints, int numFeatures,
                             boolean missingValue, int numClasses) {
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, numClasses, ColumnIndex.EAGER);
+    }
+
+    public SparseClfDataSet(int numDataPoints, int numFeatures,
+                            boolean missingValue, int numClasses, ColumnIndex columnIndex) {
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.labels = new int[numDataPoints];
         this.numClasses = numClasses;
         this.labelTranslator = LabelTranslator.newDefaultLabelTranslator(numClasses);
@@ -9,17 +9,27 @@ import org.apache.mahout.math.Vector;
  */
 public class SparseDataSet extends AbstractDataSet implements DataSet{
     protected transient RandomAccessSparseVector[] featureRows;
-    protected transient RandomAccessSparseVector[] featureColumns;
+    /**
+     * null until built when columns are not eagerly indexed
+     */
+    protected transient volatile RandomAccessSparseVector[] featureColumns;
 
     public SparseDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        this(numDataPoints, numFeatures, missingValue, ColumnIndex.EAGER);
+    }
+
+    public SparseDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex) {
         super(numDataPoints,numFeatures,missingValue);
+        this.columnIndex = columnIndex;
         this.featureRows = new RandomAccessSparseVector[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
             this.featureRows[i] = new RandomAccessSparseVector(numFeatures);
         }
-        this.featureColumns = new RandomAccessSparseVector[numFeatures];
-        for (int j=0;j<numFeatures;j++){
-            this.featureColumns[j] = new RandomAccessSparseVector(numDataPoints);
+        if (columnIndex==ColumnIndex.EAGER){
+            this.featureColumns = new RandomAccessSparseVector[numFeatures];
+            for (int j=0;j<numFeatures;j++){
+                this.featureColumns[j] = new RandomAccessSparseVector(numDataPoints);
+            }
         }
     }
 
@@ -30,7 +40,23 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
 
     @Override
     public Vector getColumn(int featureIndex) {
-        return this.featureColumns[featureIndex];
+        RandomAccessSparseVector[] columns = this.featureColumns;
+        if (columns==null){
+            columns = indexColumns();
+        }
+        return columns[featureIndex];
+    }
+
+    private synchronized RandomAccessSparseVector[] indexColumns(){
+        if (this.featureColumns==null){
+            if (columnIndex==ColumnIndex.NONE){
+                throw new UnsupportedOperationException("columns are not indexed in this data set");
+            }
+            RandomAccessSparseVector[] columns = new RandomAccessSparseVector[numFeatures];
+            transpose(featureRows, columns, numEntries -> new RandomAccessSparseVector(numDataPoints, Math.max(numEntries, 1)));
+            this.featureColumns = columns;
+        }
+        return this.featureColumns;
     }
 
     @Override
@@ -38,6 +64,16 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
         return this.featureRows[dataPointIndex];
     }
 
+    @Override
+    Vector[] rowVectors() {
+        return featureRows;
+    }
+
+    @Override
+    Vector[] columnVectors() {
+        return featureColumns;
+    }
+
     /**
      * must be synchronized, otherwise may get ArrayIndexOutOfBoundsException
      * @param dataPointIndex
@@ -50,7 +86,9 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
             throw new IllegalArgumentException("missing value is not allowed in this data set");
         }
         this.featureRows[dataPointIndex].set(featureIndex, featureValue);
-        this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        if (this.featureColumns!=null){
+            this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        }
     }
 
 
@@ -15,7 +15,12 @@ public class SparseMLClfDataSet extends SparseDataSet implements MultiLabelClfDa
 
     public SparseMLClfDataSet(int numDataPoints, int numFeatures,
                               boolean missingValue, int numClasses){
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, numClasses, ColumnIndex.EAGER);
+    }
+
+    public SparseMLClfDataSet(int numDataPoints, int numFeatures,
+                              boolean missingValue, int numClasses, ColumnIndex columnIndex){
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.numClasses=numClasses;
         this.multiLabels=new MultiLabel[numDataPoints];
         for (int i=0;i<numDataPoints;i++){
@@ -82,9 +87,13 @@ public class SparseMLClfDataSet extends SparseDataSet implements MultiLabelClfDa
         for (int i=0;i<featureRows.length;i++){
             serFeatureRows[i] = new SerializableVector(featureRows[i]);
         }
-        SerializableVector[] serFeatureColumns = new SerializableVector[featureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+        // columns that are not built yet are not written
+        SerializableVector[] serFeatureColumns = null;
+        if (featureColumns!=null){
+            serFeatureColumns = new SerializableVector[featureColumns.length];
+            for (int i=0;i<featureColumns.length;i++){
+                serFeatureColumns[i] = new SerializableVector(featureColumns[i]);
+            }
         }
         out.writeObject(serFeatureRows);
         out.writeObject(serFeatureColumns);
@@ -101,9 +110,12 @@ public class SparseMLClfDataSet extends SparseDataSet implements MultiLabelClfDa
         }
 
         SerializableVector[] serFeatureColumns = (SerializableVector[])in.readObject();
-        featureColumns = new RandomAccessSparseVector[serFeatureColumns.length];
-        for (int i=0;i<featureColumns.length;i++){
-            featureColumns[i] = (RandomAccessSparseVector) serFeatureColumns[i].getVector();
+        if (serFeatureColumns!=null){
+            RandomAccessSparseVector[] columns = new RandomAccessSparseVector[serFeatureColumns.length];
+            for (int i=0;i<columns.length;i++){
+                columns[i] = (RandomAccessSparseVector) serFeatureColumns[i].getVector();
+            }
+            featureColumns = columns;
         }
     }
 }
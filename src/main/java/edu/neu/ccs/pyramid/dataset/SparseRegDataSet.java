@@ -9,7 +9,11 @@ public class SparseRegDataSet extends SparseDataSet implements RegDataSet{
     private double[] labels;
 
     SparseRegDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
-        super(numDataPoints, numFeatures, missingValue);
+        this(numDataPoints, numFeatures, missingValue, ColumnIndex.EAGER);
+    }
+
+    SparseRegDataSet(int numDataPoints, int numFeatures, boolean missingValue, ColumnIndex columnIndex) {
+        super(numDataPoints, numFeatures, missingValue, columnIndex);
         this.labels = new double[numDataPoints];
     }
 
@@ -10,7 +10,6 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -116,21 +115,30 @@ public class TRECFormat {
 
     public static ClfDataSet loadClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
+        return loadClfDataSet(trecFile, dataSetType, loadSettings, ColumnIndex.EAGER);
+    }
+
+    /**
+     * @param columnIndex LAZY or NONE when the data set is only read by rows
+     */
+    public static ClfDataSet loadClfDataSet(File trecFile, DataSetType dataSetType, boolean loadSettings,
+                                            ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.CLF_DENSE)
                 ||(dataSetType==DataSetType.CLF_SPARSE));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
-        int numDataPoints = parseNumDataPoints(trecFile);
-        int numFeatures = parseNumFeaturess(trecFile);
-        int numClasses = parseNumClasses(trecFile);
-        boolean missingValue = parseMissingValue(trecFile);
+        Config config = loadConfig(trecFile);
+        int numDataPoints = config.getInt(TREC_CONFIG_NUM_DATA_POINTS);
+        int numFeatures = config.getInt(TREC_CONFIG_NUM_FEATURES);
+        int numClasses = config.getInt(TREC_CONFIG_NUM_CLASSES);
+        boolean missingValue = config.getBoolean(TREC_CONFIG_MISSING_VALUE);
         ClfDataSet dataSet = null;
         if (dataSetType==DataSetType.CLF_DENSE){
-            dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         if (dataSetType==DataSetType.CLF_SPARSE){
-            dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         fillClfDataSet(dataSet,trecFile);
         if (loadSettings){
@@ -144,24 +152,33 @@ public class TRECFormat {
 
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
+        return loadMultiLabelClfDataSet(trecFile, dataSetType, loadSettings, ColumnIndex.EAGER);
+    }
+
+    /**
+     * @param columnIndex LAZY or NONE when the data set is only read by rows
+     */
+    public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File trecFile, DataSetType dataSetType,
+                                                                boolean loadSettings, ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.ML_CLF_DENSE)
                 ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
-        int numDataPoints = parseNumDataPoints(trecFile);
-        int numFeatures = parseNumFeaturess(trecFile);
-        int numClasses = parseNumClasses(trecFile);
-        boolean missingValue = parseMissingValue(trecFile);
+        Config config = loadConfig(trecFile);
+        int numDataPoints = config.getInt(TREC_CONFIG_NUM_DATA_POINTS);
+        int numFeatures = config.getInt(TREC_CONFIG_NUM_FEATURES);
+        int numClasses = config.getInt(TREC_CONFIG_NUM_CLASSES);
+        boolean missingValue = config.getBoolean(TREC_CONFIG_MISSING_VALUE);
         MultiLabelClfDataSet dataSet = null;
         if (dataSetType==DataSetType.ML_CLF_DENSE){
-            dataSet = new DenseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new DenseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         if (dataSetType==DataSetType.ML_CLF_SPARSE){
-            dataSet = new SparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new SparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         if (dataSetType==DataSetType.ML_CLF_SEQ_SPARSE) {
-            dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+            dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses,columnIndex);
         }
         fillMultiLabelClfDataSet(dataSet,trecFile);
         if (loadSettings){
@@ -194,20 +211,29 @@ public class TRECFormat {
 
     public static RegDataSet loadRegDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
+        return loadRegDataSet(trecFile, dataSetType, loadSettings, ColumnIndex.EAGER);
+    }
+
+    /**
+     * @param columnIndex LAZY or NONE when the data set is only read by rows
+     */
+    public static RegDataSet loadRegDataSet(File trecFile, DataSetType dataSetType, boolean loadSettings,
+                                            ColumnIndex columnIndex) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.REG_DENSE)
                 ||(dataSetType==DataSetType.REG_SPARSE));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
-        int numDataPoints = parseNumDataPoints(trecFile);
-        int numFeatures = parseNumFeaturess(trecFile);
-        boolean missingValue = parseMissingValue(trecFile);
+        Config config = loadConfig(trecFile);
+        int numDataPoints = config.getInt(TREC_CONFIG_NUM_DATA_POINTS);
+        int numFeatures = config.getInt(TREC_CONFIG_NUM_FEATURES);
+        boolean missingValue = config.getBoolean(TREC_CONFIG_MISSING_VALUE);
         RegDataSet dataSet = null;
         if (dataSetType==DataSetType.REG_DENSE){
-            dataSet = new DenseRegDataSet(numDataPoints,numFeatures,missingValue);
+            dataSet = new DenseRegDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
         }
         if (dataSetType==DataSetType.REG_SPARSE){
-            dataSet = new SparseRegDataSet(numDataPoints,numFeatures,missingValue);
+            dataSet = new SparseRegDataSet(numDataPoints,numFeatures,missingValue,columnIndex);
         }
         fillRegDataSet(dataSet, trecFile);
         if (loadSettings){
@@ -248,56 +274,15 @@ public class TRECFormat {
 
     //==========PRIVATE==========
 
-    private static int parseNumDataPoints(File trecFile) throws IOException {
-        File configFile = new File(trecFile, TREC_CONFIG_FILE_NAME);
-        int numDataPoints;
-        try(
-                BufferedReader br = new BufferedReader(new FileReader(configFile));
-        ){
-            Config config = new Config(configFile);
-            numDataPoints = config.getInt(TREC_CONFIG_NUM_DATA_POINTS);
-        }
-        return numDataPoints;
-    }
-
-    private static int parseNumFeaturess(File trecFile) throws IOException {
-        File configFile = new File(trecFile, TREC_CONFIG_FILE_NAME);
-        int numFeatures;
-        try(
-                BufferedReader br = new BufferedReader(new FileReader(configFile));
-        ){
-            Config config = new Config(configFile);
-            numFeatures = config.getInt(TREC_CONFIG_NUM_FEATURES);
-        }
-        return numFeatures;
-    }
-
-    private static int parseNumClasses(File trecFile) throws IOException {
-        File configFile = new File(trecFile, TREC_CONFIG_FILE_NAME);
-        int numClasses;
-        try(
-                BufferedReader br = new BufferedReader(new FileReader(configFile));
-        ){
-            Config config = new Config(configFile);
-            numClasses = config.getInt(TREC_CONFIG_NUM_CLASSES);
-        }
-        return numClasses;
-    }
-
-    private static boolean parseMissingValue(File trecFile) throws IOException {
-        File configFile = new File(trecFile, TREC_CONFIG_FILE_NAME);
-        boolean missingValue;
-        try(
-                BufferedReader br = new BufferedReader(new FileReader(configFile));
-        ){
-            Config config = new Config(configFile);
-            missingValue = config.getBoolean(TREC_CONFIG_MISSING_VALUE);
-        }
-        return missingValue;
+    /**
+     * the config file is read once per load
+     */
+    private static Config loadConfig(File trecFile) {
+        return new Config(new File(trecFile, TREC_CONFIG_FILE_NAME));
     }
 
     static boolean isDense(File trecFile) throws IOException {
-        int numFeatures = parseNumFeaturess(trecFile);
+        int numFeatures = loadConfig(trecFile).getInt(TREC_CONFIG_NUM_FEATURES);
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
         int data = 0;
         double nonZeros = 0;
@@ -336,99 +321,31 @@ public class TRECFormat {
     }
 
     private static void fillClfDataSet(ClfDataSet dataSet, File trecFile) throws IOException {
-        File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                int label = Integer.parseInt(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        TextMatrixParser parser = new TextMatrixParser(new File(trecFile, TREC_MATRIX_FILE_NAME));
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        parser.parse(0, buffer, (dataIndex, labels, numLabels) ->
+                dataSet.setLabel(dataIndex, TextMatrixParser.intLabel(TextMatrixParser.singleLabel(labels, numLabels))));
+        buffer.fill(dataSet);
     }
 
     private static void fillMultiLabelClfDataSet(MultiLabelClfDataSet dataSet, File trecFile) throws IOException {
-        File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                // the line is not just a space
-                if (lineSplit.length>=1){
-                    String multiLabelString = null;
-                    try {
-                        multiLabelString = lineSplit[0];
-                    } catch (Exception e) {
-                        System.out.println("load data error happens");
-                        System.out.println("line number: " + dataIndex);
-                        System.out.println("line: " + line);
-                    }
-                    String[] multiLabelSplit = multiLabelString.split(Pattern.quote(","));
-                    for (String label: multiLabelSplit){
-                        if (label.equals("")) {
-                            continue;
-                        }
-                        dataSet.addLabel(dataIndex,Integer.parseInt(label));
-                    }
-                }
-
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
+        TextMatrixParser parser = new TextMatrixParser(new File(trecFile, TREC_MATRIX_FILE_NAME));
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        parser.parse(0, buffer, (dataIndex, labels, numLabels) -> {
+            for (int l=0;l<numLabels;l++){
+                dataSet.addLabel(dataIndex, TextMatrixParser.intLabel(labels[l]));
             }
-        }
+        });
+        buffer.fill(dataSet);
     }
 
 
     private static void fillRegDataSet(RegDataSet dataSet, File trecFile) throws IOException {
-        File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        TextMatrixParser parser = new TextMatrixParser(new File(trecFile, TREC_MATRIX_FILE_NAME));
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        parser.parse(0, buffer, (dataIndex, labels, numLabels) ->
+                dataSet.setLabel(dataIndex, TextMatrixParser.singleLabel(labels, numLabels)));
+        buffer.fill(dataSet);
     }
 
 
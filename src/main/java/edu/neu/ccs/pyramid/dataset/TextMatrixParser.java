@@ -0,0 +1,367 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * parses feature matrix text files where each line is "labels index:value index:value ... # comment"
+ * and labels are comma-separated numbers, as in TREC and LibSVM files;
+ * a line that starts with a space or with a feature has no labels
+ * the file is cut into byte ranges at line boundaries; each range is mapped and parsed by one thread
+ * with a hand-written tokenizer, and feature values go into a FeatureValueBuffer
+ * line i of the file is data point i; every line counts, including empty ones, as with BufferedReader.readLine
+ * lines end with \n or \r\n
+ * Created by chengli on 5/27/17.
+ */
+class TextMatrixParser {
+    private static final long MIN_RANGE_SIZE = 1L<<20;
+    private static final long MAX_RANGE_SIZE = 1L<<25;
+    /**
+     * powers of ten that are exact doubles
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L<<53;
+    private File file;
+    /**
+     * range r is bytes rangeStarts[r] ... rangeStarts[r+1]-1, holding lines firstLines[r] ... firstLines[r+1]-1
+     */
+    private long[] rangeStarts;
+    private int[] firstLines;
+
+    /**
+     * find the ranges and count the lines in parallel
+     * @param file
+     */
+    TextMatrixParser(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+            long numRanges = Math.max(ForkJoinPool.getCommonPoolParallelism()*4L, (size+MAX_RANGE_SIZE-1)/MAX_RANGE_SIZE);
+            numRanges = Math.max(1, Math.min(numRanges, (size+MIN_RANGE_SIZE-1)/MIN_RANGE_SIZE));
+            List<Long> starts = new ArrayList<>();
+            starts.add(0L);
+            for (long r=1;r<numRanges;r++){
+                long boundary = lineStart(channel, size*r/numRanges);
+                if (boundary>starts.get(starts.size()-1) && boundary<size){
+                    starts.add(boundary);
+                }
+            }
+            starts.add(size);
+            this.rangeStarts = starts.stream().mapToLong(Long::longValue).toArray();
+            int[] numLines = IntStream.range(0, rangeStarts.length-1).parallel()
+                    .map(r -> countLines(map(channel, r))).toArray();
+            this.firstLines = new int[rangeStarts.length];
+            for (int r=0;r<numLines.length;r++){
+                firstLines[r+1] = firstLines[r]+numLines[r];
+            }
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    int getNumLines(){
+        return firstLines[firstLines.length-1];
+    }
+
+    /**
+     * parse all ranges in parallel, then return; labelHandler is called once per line,
+     * concurrently for different lines
+     * @param featureIndexBase the index of the first feature in the file, 0 for TREC and 1 for LibSVM
+     * @param buffer receives the feature values; null to only parse labels
+     * @param labelHandler
+     */
+    void parse(int featureIndexBase, FeatureValueBuffer buffer, LabelHandler labelHandler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            IntStream.range(0, rangeStarts.length-1).parallel()
+                    .forEach(r -> parseRange(map(channel, r), firstLines[r], featureIndexBase, buffer, labelHandler));
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the only label of the line
+     */
+    static double singleLabel(double[] labels, int numLabels){
+        if (numLabels!=1){
+            throw new NumberFormatException("expected one label, found "+numLabels);
+        }
+        return labels[0];
+    }
+
+    /**
+     * @return the label as an int; labels such as 1.7 are rejected rather than truncated
+     */
+    static int intLabel(double label){
+        int intLabel = (int)label;
+        if (intLabel!=label){
+            throw new NumberFormatException("label "+label+" is not an integer");
+        }
+        return intLabel;
+    }
+
+    private MappedByteBuffer map(FileChannel channel, int range){
+        long start = rangeStarts[range];
+        long length = rangeStarts[range+1]-start;
+        if (length>Integer.MAX_VALUE){
+            throw new IllegalArgumentException("line too long in "+file);
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the first position after the first line break at or after position-1
+     */
+    private static long lineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(1<<16);
+        long blockStart = position-1;
+        while (true){
+            block.clear();
+            int numRead = channel.read(block, blockStart);
+            if (numRead<=0){
+                return channel.size();
+            }
+            for (int k=0;k<numRead;k++){
+                if (block.get(k)=='\n'){
+                    return blockStart+k+1;
+                }
+            }
+            blockStart += numRead;
+        }
+    }
+
+    private static int countLines(ByteBuffer bytes){
+        int length = bytes.limit();
+        int numLines = 0;
+        for (int k=0;k<length;k++){
+            if (bytes.get(k)=='\n'){
+                numLines += 1;
+            }
+        }
+        if (length>0 && bytes.get(length-1)!='\n'){
+            numLines += 1;
+        }
+        return numLines;
+    }
+
+    private void parseRange(ByteBuffer bytes, int firstLine, int featureIndexBase, FeatureValueBuffer buffer,
+                            LabelHandler labelHandler){
+        int length = bytes.limit();
+        double[] labels = new double[8];
+        int line = firstLine;
+        int position = 0;
+        while (position<length){
+            int lineEnd = position;
+            while (lineEnd<length && bytes.get(lineEnd)!='\n'){
+                lineEnd += 1;
+            }
+            int nextLine = lineEnd+1;
+            if (lineEnd>position && bytes.get(lineEnd-1)=='\r'){
+                lineEnd -= 1;
+            }
+            try {
+                int tokenStart = skipSpaces(bytes, position, lineEnd);
+                int tokenEnd = tokenEnd(bytes, tokenStart, lineEnd);
+                // a line without labels starts with a space, or directly with a feature
+                if (tokenStart>position || contains(bytes, tokenStart, tokenEnd, ':')){
+                    tokenEnd = tokenStart;
+                }
+                int numLabels = 0;
+                int labelStart = tokenStart;
+                while (labelStart<tokenEnd && bytes.get(labelStart)!='#'){
+                    int labelEnd = labelStart;
+                    while (labelEnd<tokenEnd && bytes.get(labelEnd)!=','){
+                        labelEnd += 1;
+                    }
+                    if (labelEnd>labelStart){
+                        if (numLabels==labels.length){
+                            labels = Arrays.copyOf(labels, 2*numLabels);
+                        }
+                        labels[numLabels] = parseDouble(bytes, labelStart, labelEnd);
+                        numLabels += 1;
+                    }
+                    labelStart = labelEnd+1;
+                }
+                labelHandler.handle(line, labels, numLabels);
+
+                if (buffer!=null){
+                    tokenStart = skipSpaces(bytes, tokenEnd, lineEnd);
+                    // ignore things after #
+                    while (tokenStart<lineEnd && bytes.get(tokenStart)!='#'){
+                        tokenEnd = tokenEnd(bytes, tokenStart, lineEnd);
+                        int colon = tokenStart;
+                        while (colon<tokenEnd && bytes.get(colon)!=':'){
+                            colon += 1;
+                        }
+                        if (colon==tokenEnd){
+                            throw new NumberFormatException("no value in \""+text(bytes, tokenStart, tokenEnd)+"\"");
+                        }
+                        int featureIndex = parseInt(bytes, tokenStart, colon)-featureIndexBase;
+                        double featureValue = parseDouble(bytes, colon+1, tokenEnd);
+                        buffer.setFeatureValue(line, featureIndex, featureValue);
+                        tokenStart = skipSpaces(bytes, tokenEnd, lineEnd);
+                    }
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e){
+                throw new IllegalArgumentException(file+", line "+(line+1)+": "+e.getMessage(), e);
+            }
+            line += 1;
+            position = nextLine;
+        }
+    }
+
+    private static boolean isSpace(byte b){
+        return b==' ' || b=='\t' || b=='\r' || b=='\f' || b==0x0B;
+    }
+
+    private static int skipSpaces(ByteBuffer bytes, int position, int end){
+        while (position<end && isSpace(bytes.get(position))){
+            position += 1;
+        }
+        return position;
+    }
+
+    private static int tokenEnd(ByteBuffer bytes, int position, int end){
+        while (position<end && !isSpace(bytes.get(position))){
+            position += 1;
+        }
+        return position;
+    }
+
+    private static boolean contains(ByteBuffer bytes, int start, int end, char c){
+        for (int k=start;k<end;k++){
+            if (bytes.get(k)==c){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String text(ByteBuffer bytes, int start, int end){
+        byte[] text = new byte[end-start];
+        for (int k=start;k<end;k++){
+            text[k-start] = bytes.get(k);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    static int parseInt(ByteBuffer bytes, int start, int end){
+        if (start==end || end-start>9){
+            return Integer.parseInt(text(bytes, start, end));
+        }
+        int value = 0;
+        for (int k=start;k<end;k++){
+            int digit = bytes.get(k)-'0';
+            if (digit<0 || digit>9){
+                return Integer.parseInt(text(bytes, start, end));
+            }
+            value = value*10+digit;
+        }
+        return value;
+    }
+
+    /**
+     * same result as Double.parseDouble
+     * decimals with at most 2^53 as digits and a power of ten up to 22 are computed with one exact
+     * multiplication or division, which rounds correctly; other inputs go to Double.parseDouble
+     */
+    static double parseDouble(ByteBuffer bytes, int start, int end){
+        int position = start;
+        boolean negative = false;
+        if (position<end && (bytes.get(position)=='-' || bytes.get(position)=='+')){
+            negative = bytes.get(position)=='-';
+            position += 1;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int numDigits = 0;
+        boolean exact = true;
+        while (position<end){
+            int digit = bytes.get(position)-'0';
+            if (digit<0 || digit>9){
+                break;
+            }
+            if (mantissa<MAX_EXACT_MANTISSA){
+                mantissa = mantissa*10+digit;
+            } else {
+                exact = false;
+            }
+            numDigits += 1;
+            position += 1;
+        }
+        if (position<end && bytes.get(position)=='.'){
+            position += 1;
+            while (position<end){
+                int digit = bytes.get(position)-'0';
+                if (digit<0 || digit>9){
+                    break;
+                }
+                if (mantissa<MAX_EXACT_MANTISSA){
+                    mantissa = mantissa*10+digit;
+                    exponent -= 1;
+                } else {
+                    exact = false;
+                }
+                numDigits += 1;
+                position += 1;
+            }
+        }
+        if (numDigits>0 && position<end && (bytes.get(position)=='e' || bytes.get(position)=='E')){
+            position += 1;
+            boolean negativeExponent = false;
+            if (position<end && (bytes.get(position)=='-' || bytes.get(position)=='+')){
+                negativeExponent = bytes.get(position)=='-';
+                position += 1;
+            }
+            int exponentStart = position;
+            int explicitExponent = 0;
+            while (position<end){
+                int digit = bytes.get(position)-'0';
+                if (digit<0 || digit>9 || explicitExponent>1000){
+                    break;
+                }
+                explicitExponent = explicitExponent*10+digit;
+                position += 1;
+            }
+            if (position==exponentStart){
+                exact = false;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (!exact || numDigits==0 || position!=end || mantissa>MAX_EXACT_MANTISSA
+                || exponent<-22 || exponent>22){
+            return Double.parseDouble(text(bytes, start, end));
+        }
+        double value;
+        if (exponent<0){
+            value = mantissa/POWERS_OF_TEN[-exponent];
+        } else {
+            value = mantissa*POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    interface LabelHandler {
+        /**
+         * @param dataIndex line number, starting from 0
+         * @param labels the comma-separated numbers of the first token; only the first numLabels are valid
+         */
+        void handle(int dataIndex, double[] labels, int numLabels);
+    }
+}
@@ -18,30 +18,63 @@ import java.util.stream.IntStream;
 public class FeatureLoader {
 
 
+    /**
+     * features are queried in parallel; values are buffered per thread and written into the data set at the end
+     */
     public static void loadFeatures(ESIndex index, DataSet dataSet, FeatureList features,
                                     IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter){
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
 //        ProgressBar progressBar = new ProgressBar(features.size());
         IntStream.range(0,features.size()).parallel()
                 .forEach(i-> {
                     Feature feature = features.get(i);
                     if (feature instanceof CategoricalFeature){
-                        loadCategoricalFeature(index,dataSet,(CategoricalFeature)feature,idTranslator, docFilter);
+                        loadCategoricalFeature(index,buffer,(CategoricalFeature)feature,idTranslator, docFilter);
                     } else if (feature instanceof Ngram){
-                        loadNgramFeature(index, dataSet, (Ngram)feature, idTranslator, matchScoreType, docFilter);
+                        loadNgramFeature(index, buffer, (Ngram)feature, idTranslator, matchScoreType, docFilter);
                     } else if (feature instanceof CodeDescription) {
-                        loadCodeDesFeature(index, dataSet, feature, idTranslator, docFilter);
+                        loadCodeDesFeature(index, buffer, feature, idTranslator, docFilter);
                     } else {
-                        loadNumericalFeature(index,dataSet,feature,idTranslator);
+                        loadNumericalFeature(index,buffer,feature,idTranslator);
                     }
 
 //                    progressBar.incrementAndPrint();
                 }
                 );
 //        System.out.println();
+        buffer.fill(dataSet);
     }
 
     public static void loadCategoricalFeature(ESIndex index, DataSet dataSet, CategoricalFeature feature,
                                               IdTranslator idTranslator, String docFilter){
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        loadCategoricalFeature(index, buffer, feature, idTranslator, docFilter);
+        buffer.fill(dataSet);
+    }
+
+    public static void loadNgramFeature(ESIndex index, DataSet dataSet, Ngram feature,
+                                        IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter){
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        loadNgramFeature(index, buffer, feature, idTranslator, matchScoreType, docFilter);
+        buffer.fill(dataSet);
+    }
+
+    public static void loadNgramFeatureBinary(ESIndex index, DataSet dataSet, Ngram feature,
+                                              IdTranslator idTranslator, String docFilter){
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        loadNgramFeatureBinary(index, buffer, feature, idTranslator, docFilter);
+        buffer.fill(dataSet);
+    }
+
+    public static void loadNumericalFeature(ESIndex index, DataSet dataSet, Feature feature,
+                                            IdTranslator idTranslator){
+        FeatureValueBuffer buffer = new FeatureValueBuffer(dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+        loadNumericalFeature(index, buffer, feature, idTranslator);
+        buffer.fill(dataSet);
+    }
+
+    public static void loadCategoricalFeature(ESIndex index, FeatureValueBuffer buffer, CategoricalFeature feature,
+                                              IdTranslator idTranslator, String docFilter){
         String[] dataIndexIds = idTranslator.getAllExtIds();
         String variableName = feature.getVariableName();
         int featureIndex = feature.getIndex();
@@ -54,37 +87,37 @@ public class FeatureLoader {
         }
         for (String matchedId: matchedIds){
             int algorithmId = idTranslator.toIntId(matchedId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,1);
+            buffer.setFeatureValue(algorithmId,featureIndex,1);
         }
 
         List<String> docMissingField = index.docsWithFieldMissing(variableName,dataIndexIds);
         for (String extId: docMissingField){
             int algorithmId = idTranslator.toIntId(extId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,Double.NaN);
+            buffer.setFeatureValue(algorithmId,featureIndex,Double.NaN);
         }
 
 
     }
 
-    public static void loadNgramFeature(ESIndex index, DataSet dataSet, Ngram feature,
+    public static void loadNgramFeature(ESIndex index, FeatureValueBuffer buffer, Ngram feature,
                                         IdTranslator idTranslator, MatchScoreType matchScoreType, String docFilter){
         switch (matchScoreType){
             case ES_ORIGINAL:
-                loadNgramFeatureOriginal(index, dataSet, feature, idTranslator, docFilter);
+                loadNgramFeatureOriginal(index, buffer, feature, idTranslator, docFilter);
                 break;
             case BINARY:
-                loadNgramFeatureBinary(index, dataSet, feature, idTranslator, docFilter);
+                loadNgramFeatureBinary(index, buffer, feature, idTranslator, docFilter);
                 break;
             case FREQUENCY:
-                loadNgramFeatureFrequency(index, dataSet, feature, idTranslator, docFilter);
+                loadNgramFeatureFrequency(index, buffer, feature, idTranslator, docFilter);
                 break;
             case TFIFL:
-                loadNgramFeatureTFIFL(index, dataSet, feature, idTranslator, docFilter);
+                loadNgramFeatureTFIFL(index, buffer, feature, idTranslator, docFilter);
         }
     }
 
 
-    private static void loadNgramFeatureOriginal(ESIndex index, DataSet dataSet, Ngram feature,
+    private static void loadNgramFeatureOriginal(ESIndex index, FeatureValueBuffer buffer, Ngram feature,
                                                  IdTranslator idTranslator, String docFilter){
         int featureIndex = feature.getIndex();
         SearchResponse response = index.spanNear(feature, docFilter, idTranslator.numData());
@@ -93,11 +126,11 @@ public class FeatureLoader {
             String indexId = hit.getId();
             float score = hit.getScore();
             int algorithmId = idTranslator.toIntId(indexId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,score);
+            buffer.setFeatureValue(algorithmId,featureIndex,score);
         }
     }
 
-    private static void loadNgramFeatureFrequency(ESIndex index, DataSet dataSet, Ngram feature,
+    private static void loadNgramFeatureFrequency(ESIndex index, FeatureValueBuffer buffer, Ngram feature,
                                                   IdTranslator idTranslator, String docFilter){
         int featureIndex = feature.getIndex();
         SearchResponse response = index.spanNearFrequency(feature, docFilter, idTranslator.numData());
@@ -106,13 +139,13 @@ public class FeatureLoader {
             String indexId = hit.getId();
             float score = hit.getScore();
             int algorithmId = idTranslator.toIntId(indexId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,score);
+            buffer.setFeatureValue(algorithmId,featureIndex,score);
         }
     }
 
     // term frequency inverse field length
     // field storing the length of the body field should be called body_field_length
-    private static void loadNgramFeatureTFIFL(ESIndex index, DataSet dataSet, Ngram feature,
+    private static void loadNgramFeatureTFIFL(ESIndex index, FeatureValueBuffer buffer, Ngram feature,
                                               IdTranslator idTranslator, String docFilter){
         int featureIndex = feature.getIndex();
         SearchResponse response = index.spanNearFrequency(feature, docFilter, idTranslator.numData());
@@ -125,11 +158,11 @@ public class FeatureLoader {
             float docLength = index.getFloatField(indexId,lengthField);
             double s = score/docLength;
             int algorithmId = idTranslator.toIntId(indexId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,s);
+            buffer.setFeatureValue(algorithmId,featureIndex,s);
         }
     }
 
-    public static void loadNgramFeatureBinary(ESIndex index, DataSet dataSet, Ngram feature,
+    public static void loadNgramFeatureBinary(ESIndex index, FeatureValueBuffer buffer, Ngram feature,
                                               IdTranslator idTranslator, String docFilter){
         int featureIndex = feature.getIndex();
         SearchResponse response = index.spanNear(feature, docFilter, idTranslator.numData());
@@ -141,7 +174,7 @@ public class FeatureLoader {
             if (score>0){
                 score=1;
             }
-            dataSet.setFeatureValue(algorithmId,featureIndex,score);
+            buffer.setFeatureValue(algorithmId,featureIndex,score);
         }
     }
 
@@ -176,7 +209,7 @@ public class FeatureLoader {
 //    }
 
 
-    public static void loadNumericalFeature(ESIndex index, DataSet dataSet, Feature feature,
+    public static void loadNumericalFeature(ESIndex index, FeatureValueBuffer buffer, Feature feature,
                                               IdTranslator idTranslator){
         String[] dataIndexIds = idTranslator.getAllExtIds();
         String variableName = feature.getName();
@@ -187,13 +220,13 @@ public class FeatureLoader {
                 int algorithmId = idTranslator.toIntId(id);
                 //may return NaN
                 double value = index.getFloatField(id,variableName);
-                dataSet.setFeatureValue(algorithmId, featureIndex, value);
+                buffer.setFeatureValue(algorithmId, featureIndex, value);
             });
         }
     }
 
 
-    private static void loadCodeDesFeature(ESIndex index, DataSet dataSet, Feature feature,
+    private static void loadCodeDesFeature(ESIndex index, FeatureValueBuffer buffer, Feature feature,
                                            IdTranslator idTranslator, String docFilter){
         String[] dataIndexIds = idTranslator.getAllExtIds();
         int featureIndex = feature.getIndex();
@@ -204,7 +237,7 @@ public class FeatureLoader {
             String indexId = hit.getId();
             float score = hit.getScore();
             int algorithmId = idTranslator.toIntId(indexId);
-            dataSet.setFeatureValue(algorithmId,featureIndex,score);
+            buffer.setFeatureValue(algorithmId,featureIndex,score);
         }
 
     }
@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.multilabel_classification.adaboostmh;
 
 import edu.neu.ccs.pyramid.dataset.WeightMatrix;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
 import edu.neu.ccs.pyramid.multilabel_classification.MLPriorProbClassifier;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
@@ -91,14 +92,10 @@ public class AdaBoostMHTrainer {
     private void updateDistribution(){
         int numClasses = boosting.getNumClasses();
         IntStream.range(0,dataSet.getNumDataPoints()).parallel().forEach(i->{
-            double[] y = new double[numClasses];
-            Arrays.fill(y,-1);
-            for (int k: dataSet.getMultiLabels()[i].getMatchedLabels()){
-                y[k] = 1;
-            }
-            float[] scores = scoreMatrix.getScoresForData(i);
+            MultiLabel multiLabel = dataSet.getMultiLabels()[i];
             for (int k=0;k<numClasses;k++){
-                double prob = Math.exp(-1*y[k]*scores[k]);
+                double y = multiLabel.matchClass(k) ? 1 : -1;
+                double prob = Math.exp(-1*y*scoreMatrix.getScore(i,k));
                 weightMatrix.setProbability(i, k, prob);
             }
         });
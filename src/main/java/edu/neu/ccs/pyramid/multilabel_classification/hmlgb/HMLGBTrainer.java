@@ -208,9 +208,8 @@ public class HMLGBTrainer {
 
     private double calAssignmentScores(int dataPoint, MultiLabel assignment){
         double score = 0;
-        float[] scores = this.scoreMatrix.getScoresForData(dataPoint);
         for (Integer label : assignment.getMatchedLabels()){
-            score += scores[label];
+            score += this.scoreMatrix.getScore(dataPoint,label);
         }
         return score;
     }
@@ -254,15 +253,13 @@ public class HMLGBTrainer {
     private void updateClassGradients(int dataPoint){
         int numClasses = this.config.getDataSet().getNumClasses();
         MultiLabel multiLabel = this.config.getDataSet().getMultiLabels()[dataPoint];
-        //just use as a local variable
-        //no need to store all in a matrix
-        float[] classProbs = this.probabilityMatrix.getProbabilitiesForData(dataPoint);
         for (int k=0;k<numClasses;k++){
+            double classProb = this.probabilityMatrix.getProbability(dataPoint,k);
             double gradient = 0;
             if (multiLabel.matchClass(k)){
-                gradient = 1-classProbs[k];
+                gradient = 1-classProb;
             } else {
-                gradient = 0-classProbs[k];
+                gradient = 0-classProb;
             }
             this.gradientMatrix.setGradient(dataPoint,k,gradient);
         }
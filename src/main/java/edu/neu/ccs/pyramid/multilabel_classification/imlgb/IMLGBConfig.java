@@ -1,6 +1,10 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.GOSS;
+import edu.neu.ccs.pyramid.regression.regression_tree.BinnedDataSet;
+import edu.neu.ccs.pyramid.regression.regression_tree.MissingValuePolicy;
+import edu.neu.ccs.pyramid.regression.regression_tree.SplitMode;
 import edu.neu.ccs.pyramid.util.Sampling;
 
 import java.util.stream.IntStream;
@@ -17,6 +21,14 @@ public class IMLGBConfig {
     private int[] activeDataPoints;
     private int numSplitIntervals;
     private boolean usePrior;
+    private SplitMode splitMode;
+    private int maxNumBins;
+    private boolean bundleFeatures;
+    private MissingValuePolicy missingValuePolicy;
+    private GOSS goss;
+    private boolean newton;
+    private double l1Regularization;
+    private double l2Regularization;
 
     boolean usePrior() {
         return usePrior;
@@ -58,6 +70,38 @@ public class IMLGBConfig {
         return numSplitIntervals;
     }
 
+    SplitMode getSplitMode() {
+        return splitMode;
+    }
+
+    int getMaxNumBins() {
+        return maxNumBins;
+    }
+
+    boolean isBundleFeatures() {
+        return bundleFeatures;
+    }
+
+    MissingValuePolicy getMissingValuePolicy() {
+        return missingValuePolicy;
+    }
+
+    GOSS getGoss() {
+        return goss;
+    }
+
+    boolean isNewton() {
+        return newton;
+    }
+
+    double getL1Regularization() {
+        return l1Regularization;
+    }
+
+    double getL2Regularization() {
+        return l2Regularization;
+    }
+
 
     public static class Builder {
         /**
@@ -75,6 +119,14 @@ public class IMLGBConfig {
         double featureSamplingRate=1;
         private int numSplitIntervals =100;
         boolean usePrior = true;
+        private SplitMode splitMode = SplitMode.INTERVAL;
+        private int maxNumBins = BinnedDataSet.DEFAULT_MAX_NUM_BINS;
+        private boolean bundleFeatures = false;
+        private MissingValuePolicy missingValuePolicy = MissingValuePolicy.PROBABILISTIC;
+        private GOSS goss;
+        private boolean newton = false;
+        private double l1Regularization = 0;
+        private double l2Regularization = 1;
 
         public Builder(MultiLabelClfDataSet dataSet) {
             this.dataSet = dataSet;
@@ -116,6 +168,84 @@ public class IMLGBConfig {
             return this;
         }
 
+        public Builder splitMode(SplitMode splitMode) {
+            this.splitMode = splitMode;
+            return this;
+        }
+
+        /**
+         * only used in HISTOGRAM split mode
+         * @param maxNumBins max number of bins for present values of each feature
+         * @return
+         */
+        public Builder maxNumBins(int maxNumBins) {
+            if (maxNumBins<2 || maxNumBins>=0xFFFF){
+                throw new IllegalArgumentException("maxNumBins should be between 2 and 65534");
+            }
+            this.maxNumBins = maxNumBins;
+            return this;
+        }
+
+        /**
+         * only used in HISTOGRAM split mode
+         * @param bundleFeatures whether to bundle mutually exclusive sparse features
+         * @return
+         */
+        public Builder bundleFeatures(boolean bundleFeatures) {
+            this.bundleFeatures = bundleFeatures;
+            return this;
+        }
+
+        /**
+         * only used in HISTOGRAM and EXACT split modes
+         * @param missingValuePolicy
+         * @return
+         */
+        public Builder missingValuePolicy(MissingValuePolicy missingValuePolicy) {
+            this.missingValuePolicy = missingValuePolicy;
+            return this;
+        }
+
+        /**
+         * train each tree on a gradient-based one-side sample of the data
+         * @param goss null to use all data points
+         * @return
+         */
+        public Builder goss(GOSS goss) {
+            this.goss = goss;
+            return this;
+        }
+
+        /**
+         * fit trees with gradient and hessian statistics; leaves output regularized newton steps
+         * @param newton
+         * @return
+         */
+        public Builder newton(boolean newton) {
+            this.newton = newton;
+            return this;
+        }
+
+        /**
+         * only used by newton training
+         * @param l1Regularization
+         * @return
+         */
+        public Builder l1Regularization(double l1Regularization) {
+            this.l1Regularization = l1Regularization;
+            return this;
+        }
+
+        /**
+         * only used by newton training
+         * @param l2Regularization
+         * @return
+         */
+        public Builder l2Regularization(double l2Regularization) {
+            this.l2Regularization = l2Regularization;
+            return this;
+        }
+
         //todo add setter for active featureList
 
         public IMLGBConfig build() {
@@ -135,6 +265,14 @@ public class IMLGBConfig {
         double featureSamplingRate = builder.featureSamplingRate;
         this.numSplitIntervals = builder.numSplitIntervals;
         this.usePrior = builder.usePrior;
+        this.splitMode = builder.splitMode;
+        this.maxNumBins = builder.maxNumBins;
+        this.bundleFeatures = builder.bundleFeatures;
+        this.missingValuePolicy = builder.missingValuePolicy;
+        this.goss = builder.goss;
+        this.newton = builder.newton;
+        this.l1Regularization = builder.l1Regularization;
+        this.l2Regularization = builder.l2Regularization;
         int numDataPoints = dataSet.getNumDataPoints();
         if (dataSamplingRate == 1) {
             /**
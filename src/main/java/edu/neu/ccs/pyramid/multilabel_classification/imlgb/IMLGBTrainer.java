@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.multilabel_classification.MLPriorProbClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.GOSS;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.regression_tree.*;
@@ -36,6 +37,15 @@ public class IMLGBTrainer {
 
     private boolean[] shouldStop;
 
+    /**
+     * only used in HISTOGRAM split mode; binned once for all trees
+     */
+    private BinnedDataSet binnedDataSet;
+    /**
+     * only used in EXACT split mode; sorted once for all trees
+     */
+    private PresortedDataSet presortedDataSet;
+
 
     public IMLGBTrainer(IMLGBConfig config,
                         IMLGradientBoosting boosting) {
@@ -58,6 +68,13 @@ public class IMLGBTrainer {
         List<MultiLabel> assignments = DataSetUtil.gatherMultiLabels(dataSet);
         boosting.setAssignments(assignments);
         this.shouldStop = new boolean[numClasses];
+        if (config.getSplitMode()== SplitMode.HISTOGRAM){
+            this.binnedDataSet = BinnedDataSet.build(dataSet, config.getMaxNumBins(),
+                    config.isBundleFeatures());
+        }
+        if (config.getSplitMode()== SplitMode.EXACT){
+            this.presortedDataSet = PresortedDataSet.build(dataSet);
+        }
     }
 
     public void setShouldStop(int classIndex){
@@ -178,7 +195,7 @@ public class IMLGBTrainer {
 
 
     private double calClassProb(int dataPoint, int k){
-        double score = this.scoreMatrix.getScoresForData(dataPoint)[k];
+        double score = this.scoreMatrix.getScore(dataPoint,k);
         double logNumerator = score;
         double[] scores = new double[2];
         scores[0] = 0;
@@ -207,6 +224,17 @@ public class IMLGBTrainer {
         return gradient;
     }
 
+    /**
+     * second derivatives of the binary log loss of class k, p(1-p)
+     */
+    private double[] computeHessianForClass(int k){
+        return IntStream.range(0, this.config.getDataSet().getNumDataPoints()).parallel()
+                .mapToDouble(i->{
+                    double classProb = this.calClassProb(i, k);
+                    return classProb*(1-classProb);
+                }).toArray();
+    }
+
     /**
      * parallel
      * find the best regression tree for class k
@@ -229,11 +257,44 @@ public class IMLGBTrainer {
         regTreeConfig.setMinDataPerLeaf(this.config.getMinDataPerLeaf());
 
         regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
+        regTreeConfig.setSplitMode(this.config.getSplitMode());
+        regTreeConfig.setMaxNumBins(this.config.getMaxNumBins());
+        regTreeConfig.setMissingValuePolicy(this.config.getMissingValuePolicy());
+        regTreeConfig.setL1Regularization(this.config.getL1Regularization());
+        regTreeConfig.setL2Regularization(this.config.getL2Regularization());
+
+        double[] weights = new double[gradients.length];
+        Arrays.fill(weights,1.0);
+        GOSS goss = this.config.getGoss();
+        if (goss!=null){
+            weights = goss.sample(gradients, weights, k, boosting.getRegressors(k).size());
+        }
 
-        RegressionTree regressionTree = RegTreeTrainer.fit(regTreeConfig,
-                this.config.getDataSet(),
-                gradients,
-                leafOutputCalculator);
+        RegressionTree regressionTree;
+        if (this.config.isNewton()){
+            double[] hessians = computeHessianForClass(k);
+            if (binnedDataSet!=null){
+                regressionTree = RegTreeTrainer.fit(regTreeConfig, binnedDataSet, gradients, hessians, weights);
+            } else if (presortedDataSet!=null){
+                regressionTree = RegTreeTrainer.fit(regTreeConfig, this.config.getDataSet(), presortedDataSet,
+                        gradients, hessians, weights);
+            } else {
+                regressionTree = RegTreeTrainer.fit(regTreeConfig, this.config.getDataSet(), gradients, hessians,
+                        weights);
+            }
+        } else if (binnedDataSet!=null){
+            regressionTree = RegTreeTrainer.fit(regTreeConfig, binnedDataSet, gradients, weights,
+                    leafOutputCalculator);
+        } else if (presortedDataSet!=null){
+            regressionTree = RegTreeTrainer.fit(regTreeConfig, this.config.getDataSet(), presortedDataSet,
+                    gradients, weights, leafOutputCalculator);
+        } else {
+            regressionTree = RegTreeTrainer.fit(regTreeConfig,
+                    this.config.getDataSet(),
+                    gradients,
+                    weights,
+                    leafOutputCalculator);
+        }
         regressionTree.shrink(learningRate);
         return regressionTree;
     }
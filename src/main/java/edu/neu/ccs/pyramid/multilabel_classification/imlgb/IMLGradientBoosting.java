@@ -1,10 +1,12 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
 import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.CompiledTreeEnsemble;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.Vector;
 
@@ -22,6 +24,10 @@ import java.util.stream.IntStream;
 public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstimator, MultiLabelClassifier.ClassProbEstimator {
     private static final long serialVersionUID = 3L;
     private List<List<Regressor>> regressors;
+    /**
+     * optional, for fast scoring; dropped when regressors are added, rebuilt when deserialized
+     */
+    private transient CompiledTreeEnsemble[] compiled;
     private int numClasses;
     /**
      * legal assignments of labels, optional
@@ -55,6 +61,31 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
 
     void addRegressor(Regressor regressor, int k){
         this.regressors.get(k).add(regressor);
+        this.compiled = null;
+    }
+
+    /**
+     * flatten regressors of all classes for fast scoring, e.g. before serving a trained model
+     */
+    public void compile(){
+        this.compiled = compileAll();
+    }
+
+    /**
+     * a deserialized model is usually served, so it is compiled right away
+     */
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        compile();
+    }
+
+    private CompiledTreeEnsemble[] compileAll(){
+        CompiledTreeEnsemble[] compiled = new CompiledTreeEnsemble[numClasses];
+        for (int k=0;k<numClasses;k++){
+            compiled[k] = CompiledTreeEnsemble.compile(regressors.get(k));
+        }
+        return compiled;
     }
 
 
@@ -89,6 +120,10 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
      * @return
      */
     public double predictClassScore(Vector vector, int k){
+        CompiledTreeEnsemble[] compiled = this.compiled;
+        if (compiled!=null){
+            return compiled[k].predict(vector);
+        }
         List<Regressor> regressorsClassK = this.regressors.get(k);
         double score = 0;
         for (Regressor regressor: regressorsClassK){
@@ -97,6 +132,21 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         return score;
     }
 
+    /**
+     * batch scoring, much faster than scoring data points one by one on large data sets
+     * the model is compiled on first use and stays compiled until regressors are added
+     * @param dataSet
+     * @return class scores of each data point, num data points * num classes
+     */
+    public double[][] predictClassScores(DataSet dataSet){
+        CompiledTreeEnsemble[] compiled = this.compiled;
+        if (compiled==null){
+            compiled = compileAll();
+            this.compiled = compiled;
+        }
+        return CompiledTreeEnsemble.predict(compiled, dataSet);
+    }
+
     public double[] predictClassScores(Vector vector){
         int numClasses = this.numClasses;
         double[] scores = new double[numClasses];
@@ -1,9 +1,11 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
-import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.CompiledTreeEnsemble;
 import org.apache.mahout.math.Vector;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +18,10 @@ public class Ensemble implements Serializable{
     private static final long serialVersionUID = 1L;
 
     private List<Regressor> regressors;
+    /**
+     * optional, for fast scoring; dropped when regressors are added, rebuilt when deserialized
+     */
+    private transient CompiledTreeEnsemble compiled;
 
     public Ensemble() {
         this.regressors = new ArrayList<>();
@@ -23,6 +29,7 @@ public class Ensemble implements Serializable{
 
     public void add(Regressor regressor){
         this.regressors.add(regressor);
+        this.compiled = null;
     }
 
     public Regressor get(int index){
@@ -33,7 +40,49 @@ public class Ensemble implements Serializable{
         return regressors;
     }
 
+    /**
+     * keep the first size regressors
+     * @param size
+     * @return removed regressors
+     */
+    public List<Regressor> truncate(int size){
+        List<Regressor> tail = regressors.subList(size, regressors.size());
+        List<Regressor> removed = new ArrayList<>(tail);
+        tail.clear();
+        this.compiled = null;
+        return removed;
+    }
+
+    /**
+     * flatten the regressors for fast scoring
+     * call again if the regressor list is modified other than by {@link #add(Regressor)}
+     */
+    public void compile(){
+        this.compiled = CompiledTreeEnsemble.compile(regressors);
+    }
+
+    public boolean isCompiled(){
+        return compiled!=null;
+    }
+
+    /**
+     *
+     * @return the compiled form, compiling and keeping it if the ensemble is not compiled
+     */
+    CompiledTreeEnsemble getCompiled(){
+        CompiledTreeEnsemble compiled = this.compiled;
+        if (compiled==null){
+            compiled = CompiledTreeEnsemble.compile(regressors);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
     public double score(Vector vector) {
+        CompiledTreeEnsemble compiled = this.compiled;
+        if (compiled!=null){
+            return compiled.predict(vector);
+        }
         double res = 0;
         for (Regressor regressor: regressors){
             res += regressor.predict(vector);
@@ -41,6 +90,31 @@ public class Ensemble implements Serializable{
         return res;
     }
 
+    /**
+     * batch scoring, much faster than scoring data points one by one on large data sets
+     * blocks of data points are scored in parallel, tree by tree
+     * ensembles are compiled on first use and stay compiled until regressors are added
+     * @param ensembles
+     * @param dataSet
+     * @return scores of each data point by each ensemble, num data points * num ensembles
+     */
+    public static double[][] scores(List<Ensemble> ensembles, DataSet dataSet){
+        CompiledTreeEnsemble[] compiled = new CompiledTreeEnsemble[ensembles.size()];
+        for (int k=0;k<compiled.length;k++){
+            compiled[k] = ensembles.get(k).getCompiled();
+        }
+        return CompiledTreeEnsemble.predict(compiled, dataSet);
+    }
+
+    /**
+     * a deserialized model is usually served, so it is compiled right away
+     */
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        compile();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Ensemble{");
@@ -1,14 +1,27 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
-import edu.neu.ccs.pyramid.dataset.GradientMatrix;
 import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
+import edu.neu.ccs.pyramid.optimization.EarlyStopper;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.RegressorFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.CompiledTreeEnsemble;
+import edu.neu.ccs.pyramid.regression.regression_tree.LeafAssignment;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
 import org.apache.mahout.math.Vector;
 
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
 /**
@@ -23,6 +36,38 @@ public abstract class GBOptimizer {
     protected double[] weights;
     protected boolean isInitialized;
     protected double shrinkage = 1;
+    /**
+     * number of threads used to fit the ensembles of one iteration concurrently
+     * 1 means ensembles are fitted one after another
+     */
+    protected int ensembleParallelism = 1;
+    /**
+     * optional; if set, each regressor is fit on a gradient-based sample of the data
+     */
+    protected GOSS goss;
+    /**
+     * fit regression trees with second order (newton) statistics; needs a {@link RegTreeFactory}
+     */
+    protected boolean secondOrder = false;
+    /**
+     * number of iterations run by this optimizer, including those restored from a checkpoint
+     */
+    protected int numIterations;
+    /**
+     * optional; if set, a checkpoint is written every checkpointInterval iterations
+     */
+    private File checkpointFile;
+    private int checkpointInterval;
+    /**
+     * optional; staged scores of the validation set are updated with the newest regressors only
+     */
+    protected DataSet validationSet;
+    protected ScoreMatrix validationScoreMatrix;
+    private EarlyStopper earlyStopper;
+    /**
+     * reusable gradient and hessian buffers, one data point per entry
+     */
+    private final Queue<double[]> buffers = new ConcurrentLinkedQueue<>();
 
 
     protected GBOptimizer(GradientBoosting boosting, DataSet dataSet,  RegressorFactory factory, double[] weights) {
@@ -51,21 +96,304 @@ public abstract class GBOptimizer {
         initializeOthers();
         updateOthers();
         this.isInitialized = true;
+        initValidationScores();
+    }
+
+    /**
+     * warm start from a checkpoint written by {@link #checkpoint(File)}, instead of {@link #initialize()}
+     * regressors of the checkpoint are restored into the model if it is still empty;
+     * otherwise the model should be the one saved in the checkpoint
+     * staged scores are restored as well, so existing regressors are not evaluated again
+     * @param checkpoint
+     * @throws Exception
+     */
+    public void initialize(File checkpoint) throws Exception{
+        try (
+                FileInputStream fileInputStream = new FileInputStream(checkpoint);
+                BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
+                ObjectInputStream in = new ObjectInputStream(bufferedInputStream);
+        ){
+            GradientBoosting saved = (GradientBoosting) in.readObject();
+            if (saved.getNumEnsembles()!=boosting.getNumEnsembles()){
+                throw new IllegalArgumentException("the checkpoint has "+saved.getNumEnsembles()
+                        +" ensembles, but the model has "+boosting.getNumEnsembles());
+            }
+            boolean empty = boosting.ensembles.stream().allMatch(ensemble -> ensemble.getRegressors().isEmpty());
+            if (empty){
+                boosting.ensembles = saved.ensembles;
+            } else {
+                for (int k=0;k<boosting.getNumEnsembles();k++){
+                    if (saved.getEnsemble(k).getRegressors().size()!=boosting.getEnsemble(k).getRegressors().size()){
+                        throw new IllegalArgumentException("the model does not match the checkpoint at ensemble "+k);
+                    }
+                }
+            }
+            this.numIterations = in.readInt();
+            ScoreMatrix restored = ScoreMatrix.deserialize(in);
+            if (restored.getNumDataPoints()!=dataSet.getNumDataPoints()
+                    || restored.getNumClasses()!=boosting.getNumEnsembles()){
+                throw new IllegalArgumentException("the checkpoint was written for a different data set");
+            }
+            this.scoreMatrix = restored;
+            readOthers(in);
+        }
+        this.isInitialized = true;
+        initValidationScores();
+    }
+
+    /**
+     * write the model, the number of iterations and the staged scores to one file
+     * the file is written under a temporary name and then renamed,
+     * so an interrupted checkpoint leaves the previous one intact
+     * @param checkpoint
+     * @throws Exception
+     */
+    public void checkpoint(File checkpoint) throws Exception{
+        if (!isInitialized){
+            throw new RuntimeException("GBOptimizer is not initialized");
+        }
+        File parent = checkpoint.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File tmp = new File(parent, checkpoint.getName()+".tmp");
+        try (
+                FileOutputStream fileOutputStream = new FileOutputStream(tmp);
+                BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
+                ObjectOutputStream out = new ObjectOutputStream(bufferedOutputStream);
+        ){
+            out.writeObject(boosting);
+            out.writeInt(numIterations);
+            scoreMatrix.serialize(out);
+            writeOthers(out);
+        }
+        Files.move(tmp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * write a checkpoint every checkpointInterval iterations
+     * @param checkpoint null to disable
+     * @param checkpointInterval
+     */
+    public void setCheckpoint(File checkpoint, int checkpointInterval) {
+        if (checkpoint!=null && checkpointInterval<1){
+            throw new IllegalArgumentException("checkpointInterval should be at least 1");
+        }
+        this.checkpointFile = checkpoint;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public int getNumIterations() {
+        return numIterations;
+    }
+
+    /**
+     * subclasses expose this with typed validation sets, which carry the labels {@link #validationLoss()} needs
+     * @param validationSet
+     * @param earlyStopper optional; gets the validation loss after every iteration, should minimize
+     */
+    protected void setValidation(DataSet validationSet, EarlyStopper earlyStopper){
+        if (validationSet!=null && !supportsValidation()){
+            throw new UnsupportedOperationException("validation is not supported by "+getClass().getSimpleName());
+        }
+        this.validationSet = validationSet;
+        this.earlyStopper = earlyStopper;
+        this.validationScoreMatrix = null;
+        if (isInitialized){
+            initValidationScores();
+        }
+    }
+
+    /**
+     * whether {@link #validationLoss()} is implemented; checked when the validation set is given
+     */
+    protected boolean supportsValidation(){
+        return false;
+    }
+
+    /**
+     * loss on the validation set, computed from validationScoreMatrix
+     * only called if {@link #supportsValidation()}
+     */
+    protected double validationLoss(){
+        throw new UnsupportedOperationException("validation is not supported by "+getClass().getSimpleName());
+    }
+
+    public double getValidationLoss(){
+        if (validationScoreMatrix==null){
+            throw new RuntimeException("no validation set");
+        }
+        return validationLoss();
+    }
+
+    public EarlyStopper getEarlyStopper() {
+        return earlyStopper;
+    }
+
+    public boolean shouldStop(){
+        return earlyStopper!=null && earlyStopper.shouldStop();
+    }
+
+    /**
+     * remove regressors added after the best iteration of the early stopper,
+     * and their contributions to staged scores
+     */
+    public void truncateToBestIteration(){
+        if (earlyStopper==null || earlyStopper.getBestIteration()<0){
+            throw new RuntimeException("no best iteration");
+        }
+        int numRemoved = numIterations - earlyStopper.getBestIteration();
+        if (numRemoved<=0){
+            return;
+        }
+        for (int k=0;k<boosting.getNumEnsembles();k++){
+            Ensemble ensemble = boosting.getEnsemble(k);
+            List<Regressor> removed = ensemble.truncate(ensemble.getRegressors().size()-numRemoved);
+            CompiledTreeEnsemble compiled = CompiledTreeEnsemble.compile(removed);
+            int ensembleIndex = k;
+            IntStream.range(0, dataSet.getNumDataPoints()).parallel().forEach(i ->
+                    scoreMatrix.increment(i, ensembleIndex, -compiled.predict(dataSet.getRow(i))));
+            if (validationScoreMatrix!=null){
+                IntStream.range(0, validationSet.getNumDataPoints()).parallel().forEach(i ->
+                        validationScoreMatrix.increment(i, ensembleIndex, -compiled.predict(validationSet.getRow(i))));
+            }
+        }
+        numIterations = earlyStopper.getBestIteration();
+        updateOthers();
+    }
+
+    /**
+     * existing regressors are scored once, in batch
+     */
+    private void initValidationScores(){
+        if (validationSet==null){
+            return;
+        }
+        double[][] scores = boosting.scores(validationSet);
+        ScoreMatrix matrix = new ScoreMatrix(validationSet.getNumDataPoints(), boosting.getNumEnsembles());
+        for (int i=0;i<scores.length;i++){
+            for (int k=0;k<boosting.getNumEnsembles();k++){
+                matrix.setScore(i, k, scores[i][k]);
+            }
+        }
+        this.validationScoreMatrix = matrix;
+    }
+
+    /**
+     * add the newest regressor of each ensemble, then report to the early stopper
+     */
+    private void updateValidationScores(){
+        for (int k=0;k<boosting.getNumEnsembles();k++){
+            List<Regressor> regressors = boosting.getEnsemble(k).getRegressors();
+            Regressor compiled = CompiledTreeEnsemble.compile(regressors.subList(regressors.size()-1,
+                    regressors.size()));
+            int ensembleIndex = k;
+            IntStream.range(0, validationSet.getNumDataPoints()).parallel().forEach(i ->
+                    validationScoreMatrix.increment(i, ensembleIndex, compiled.predict(validationSet.getRow(i))));
+        }
+        if (earlyStopper!=null){
+            earlyStopper.add(numIterations, validationLoss());
+        }
     }
 
     protected abstract void addPriors();
 
     protected abstract double[] gradient(int ensembleIndex);
 
+    /**
+     * whether {@link #hessian(int)} is implemented; checked when second order training is turned on
+     */
+    protected boolean supportsSecondOrder(){
+        return false;
+    }
+
+    /**
+     * second derivatives of the loss with respect to the scores of the ensemble, non-negative
+     * only called by second order training, if {@link #supportsSecondOrder()}
+     */
+    protected double[] hessian(int ensembleIndex){
+        throw new UnsupportedOperationException("second order training is not supported by "
+                +getClass().getSimpleName());
+    }
+
+    /**
+     * write the gradients of the ensemble into a reusable buffer
+     * override to avoid allocating a new array in {@link #gradient(int)}
+     */
+    protected void gradient(int ensembleIndex, double[] buffer){
+        double[] gradients = gradient(ensembleIndex);
+        System.arraycopy(gradients, 0, buffer, 0, gradients.length);
+    }
+
+    /**
+     * write the hessians of the ensemble into a reusable buffer
+     * override to avoid allocating a new array in {@link #hessian(int)}
+     */
+    protected void hessian(int ensembleIndex, double[] buffer){
+        double[] hessians = hessian(ensembleIndex);
+        System.arraycopy(hessians, 0, buffer, 0, hessians.length);
+    }
+
     /**
      * e.g. probability matrix
      */
     protected abstract void initializeOthers();
 
+    /**
+     * save model specific state derived from staged scores, e.g. probability matrix
+     * by default nothing is saved, and {@link #readOthers(DataInput)} rebuilds it from staged scores
+     */
+    protected void writeOthers(DataOutput out) throws IOException{
+    }
+
+    protected void readOthers(DataInput in) throws IOException{
+        initializeOthers();
+        updateOthers();
+    }
+
+    /**
+     * gradients and hessians are written into pooled buffers, which are reused once the regressor is fit;
+     * regressors should not keep references to their labels
+     */
     protected Regressor fitRegressor(int ensembleIndex){
-        double[] gradients = gradient(ensembleIndex);
-        Regressor regressor = factory.fit(dataSet,gradients, weights);
-        return regressor;
+        double[] gradients = acquireBuffer();
+        double[] hessians = null;
+        try {
+            gradient(ensembleIndex, gradients);
+            double[] weights = this.weights;
+            int round = boosting.getEnsemble(ensembleIndex).getRegressors().size();
+            if (goss!=null){
+                weights = goss.sample(gradients, this.weights, ensembleIndex, round);
+            }
+            // ensembles may be fitted concurrently, so trees are indexed by position rather than by fitting order
+            long treeIndex = (long) round*boosting.getNumEnsembles()+ensembleIndex;
+            if (secondOrder){
+                hessians = acquireBuffer();
+                hessian(ensembleIndex, hessians);
+                return ((RegTreeFactory) factory).fit(dataSet, gradients, hessians, weights, true, treeIndex);
+            }
+            // trees keep their training leaf assignment for updateTrainingStagedScores, which clears it right away
+            if (factory instanceof RegTreeFactory){
+                return ((RegTreeFactory) factory).fit(dataSet, gradients, weights, true, treeIndex);
+            }
+            Regressor regressor = factory.fit(dataSet,gradients, weights);
+            return regressor;
+        } finally {
+            buffers.offer(gradients);
+            if (hessians!=null){
+                buffers.offer(hessians);
+            }
+        }
+    }
+
+    /**
+     * at most two buffers per ensemble fitted concurrently are ever allocated
+     */
+    private double[] acquireBuffer(){
+        double[] buffer = buffers.poll();
+        if (buffer==null){
+            buffer = new double[dataSet.getNumDataPoints()];
+        }
+        return buffer;
     }
 
     //todo make it more general
@@ -88,22 +416,128 @@ public abstract class GBOptimizer {
                 .forEach(dataIndex -> this.updateStagedScore(regressor,ensembleIndex,dataIndex));
     }
 
+    /**
+     * right after fitting, read predictions on the training set from the leaves the trainer put data points in,
+     * instead of predicting every data point again
+     * falls back to {@link #updateStagedScores(Regressor, int)} for other regressors
+     */
+    protected void updateTrainingStagedScores(Regressor regressor, int ensembleIndex){
+        if (regressor instanceof RegressionTree){
+            RegressionTree tree = (RegressionTree) regressor;
+            LeafAssignment leafAssignment = tree.getTrainingLeafAssignment();
+            // only needed once
+            tree.clearTrainingLeafAssignment();
+            int numDataPoints = dataSet.getNumDataPoints();
+            if (leafAssignment!=null && leafAssignment.getNumDataPoints()==numDataPoints){
+                double[] predictions = leafAssignment.predict();
+                // data points left out of training, e.g. by sampling
+                Regressor compiled = CompiledTreeEnsemble.compile(Collections.singletonList(regressor));
+                IntStream.range(0, numDataPoints).parallel().forEach(dataIndex -> {
+                    if (leafAssignment.isAssigned(dataIndex)){
+                        this.scoreMatrix.increment(dataIndex,ensembleIndex,predictions[dataIndex]);
+                    } else {
+                        this.updateStagedScore(compiled,ensembleIndex,dataIndex);
+                    }
+                });
+                return;
+            }
+        }
+        updateStagedScores(regressor,ensembleIndex);
+    }
+
     public void iterate(){
+        ForkJoinPool ensemblePool = newEnsemblePool();
+        try {
+            iterate(ensemblePool);
+        } finally {
+            shutdown(ensemblePool);
+        }
+    }
+
+    /**
+     * @param ensemblePool null to fit ensembles sequentially
+     */
+    private void iterate(ForkJoinPool ensemblePool){
         if (!isInitialized){
             throw new RuntimeException("GBOptimizer is not initialized");
         }
-        for (int k=0;k<boosting.getNumEnsembles();k++){
-            Regressor regressor = fitRegressor(k);
-            shrink(regressor);
-            boosting.getEnsemble(k).add(regressor);
-            updateStagedScores(regressor,k);
+        if (ensemblePool!=null){
+            iterateEnsemblesInParallel(ensemblePool);
+        } else {
+            for (int k=0;k<boosting.getNumEnsembles();k++){
+                Regressor regressor = fitRegressor(k);
+                shrink(regressor);
+                boosting.getEnsemble(k).add(regressor);
+                updateTrainingStagedScores(regressor,k);
+            }
         }
         updateOthers();
+        numIterations += 1;
+        if (validationScoreMatrix!=null){
+            updateValidationScores();
+        }
+        if (checkpointFile!=null && numIterations%checkpointInterval==0){
+            try {
+                checkpoint(checkpointFile);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
+    /**
+     * gradients of all ensembles only depend on the state left by the previous iteration,
+     * so the regressors of one iteration are independent and can be fitted concurrently
+     * parallel streams started inside a fork join pool run in the same pool,
+     * so the nested parallelism (by feature, by data) of each fit is bounded by the pool as well
+     */
+    private void iterateEnsemblesInParallel(ForkJoinPool ensemblePool){
+        int numEnsembles = boosting.getNumEnsembles();
+        Regressor[] regressors = new Regressor[numEnsembles];
+        try {
+            ensemblePool.submit(() -> IntStream.range(0, numEnsembles).parallel()
+                    .forEach(k -> {
+                        Regressor regressor = fitRegressor(k);
+                        shrink(regressor);
+                        regressors[k] = regressor;
+                    })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        for (int k=0;k<numEnsembles;k++){
+            boosting.getEnsemble(k).add(regressors[k]);
+            updateTrainingStagedScores(regressors[k],k);
+        }
+    }
+
+    /**
+     * stops early if the early stopper says so
+     */
     public void iterate(int numIterations){
-        for (int i=0;i<numIterations;i++){
-            iterate();
+        ForkJoinPool ensemblePool = newEnsemblePool();
+        try {
+            for (int i=0;i<numIterations && !shouldStop();i++){
+                iterate(ensemblePool);
+            }
+        } finally {
+            shutdown(ensemblePool);
+        }
+    }
+
+    /**
+     * the pool only lives for one call of iterate, so no threads outlive training
+     * @return null if ensembles are fitted sequentially
+     */
+    private ForkJoinPool newEnsemblePool(){
+        if (ensembleParallelism>1 && boosting.getNumEnsembles()>1){
+            return new ForkJoinPool(ensembleParallelism);
+        }
+        return null;
+    }
+
+    private static void shutdown(ForkJoinPool ensemblePool){
+        if (ensemblePool!=null){
+            ensemblePool.shutdown();
         }
     }
 
@@ -125,6 +559,45 @@ public abstract class GBOptimizer {
         this.shrinkage = shrinkage;
     }
 
+    /**
+     * fit the ensembles (e.g. one per class) of each iteration concurrently
+     * useful when there are many ensembles but too few features to keep all cores busy
+     * the regressor factory and leaf output calculator must be thread safe
+     * @param ensembleParallelism max number of threads used by one iteration, including nested parallelism;
+     *                            1 (default) fits ensembles sequentially
+     */
+    public void setEnsembleParallelism(int ensembleParallelism) {
+        if (ensembleParallelism<1){
+            throw new IllegalArgumentException("ensembleParallelism should be at least 1");
+        }
+        this.ensembleParallelism = ensembleParallelism;
+    }
+
+    /**
+     * train each regressor on a gradient-based one-side sample of the data
+     * @param goss null to use all data points
+     */
+    public void setGoss(GOSS goss) {
+        this.goss = goss;
+    }
+
+    /**
+     * second order training: trees are fit with gradient and hessian statistics,
+     * leaves output regularized newton steps (see {@link RegTreeConfig#setL2Regularization(double)})
+     * and the leaf output calculator of the factory is not used
+     * @param secondOrder
+     */
+    public void setSecondOrder(boolean secondOrder) {
+        if (secondOrder && !supportsSecondOrder()){
+            throw new UnsupportedOperationException("second order training is not supported by "
+                    +getClass().getSimpleName());
+        }
+        if (secondOrder && !(factory instanceof RegTreeFactory)){
+            throw new IllegalArgumentException("second order training needs a RegTreeFactory");
+        }
+        this.secondOrder = secondOrder;
+    }
+
     public RegressorFactory getRegressorFactory() {
         return factory;
     }
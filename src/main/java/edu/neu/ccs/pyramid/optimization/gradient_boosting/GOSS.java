@@ -0,0 +1,154 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * gradient-based one-side sampling
+ * keeps data points with the largest absolute gradients, plus a random sample of the rest;
+ * sampled small-gradient data points are up-weighted by (1-topRate)/otherRate so that gradient sums stay unbiased
+ * data points left out get zero weights, and are skipped by the tree trainer
+ * Created by chengli on 5/22/17.
+ */
+public class GOSS implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private double topRate;
+    private double otherRate;
+    private long seed;
+
+    /**
+     *
+     * @param topRate fraction of data points kept for large gradients
+     * @param otherRate fraction of data points sampled from the rest
+     * @param seed
+     */
+    public GOSS(double topRate, double otherRate, long seed) {
+        if (topRate<0 || otherRate<=0 || topRate+otherRate>1){
+            throw new IllegalArgumentException("need topRate>=0, otherRate>0, topRate+otherRate<=1");
+        }
+        this.topRate = topRate;
+        this.otherRate = otherRate;
+        this.seed = seed;
+    }
+
+    public double getTopRate() {
+        return topRate;
+    }
+
+    public double getOtherRate() {
+        return otherRate;
+    }
+
+    /**
+     * the same ensemble index and round always give the same sample, regardless of thread scheduling
+     * @param gradients
+     * @param weights original weights
+     * @param ensembleIndex
+     * @param round e.g. number of regressors already in the ensemble
+     * @return sampled weights
+     */
+    public double[] sample(double[] gradients, double[] weights, int ensembleIndex, int round){
+        Random random = new Random(seed + 1000003L*round + ensembleIndex);
+        int numDataPoints = gradients.length;
+        int numActive = 0;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                numActive += 1;
+            }
+        }
+        double[] sampled = new double[numDataPoints];
+        if (numActive==0){
+            return sampled;
+        }
+        double[] absGradients = new double[numActive];
+        int cursor = 0;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                absGradients[cursor] = Math.abs(gradients[i]);
+                cursor += 1;
+            }
+        }
+        int numTop = (int)(topRate*numActive);
+        // exactly numTop data points are kept, ordered by absolute gradient, then by index
+        double threshold = Double.POSITIVE_INFINITY;
+        if (numTop>0){
+            threshold = kthLargest(absGradients, numTop);
+        }
+        int numAbove = 0;
+        for (double absGradient: absGradients){
+            if (absGradient>threshold){
+                numAbove += 1;
+            }
+        }
+        // ties at the threshold that are kept
+        int numTies = numTop-numAbove;
+        double otherProb = otherRate/(1-topRate);
+        double amplifier = (1-topRate)/otherRate;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                double absGradient = Math.abs(gradients[i]);
+                boolean top = absGradient>threshold;
+                if (absGradient==threshold && numTies>0){
+                    top = true;
+                    numTies -= 1;
+                }
+                if (top){
+                    sampled[i] = weights[i];
+                } else if (random.nextDouble()<otherProb){
+                    sampled[i] = weights[i]*amplifier;
+                }
+            }
+        }
+        return sampled;
+    }
+
+    /**
+     * quick select; reorders the array
+     * @param values
+     * @param k 1-based
+     * @return the k-th largest value
+     */
+    static double kthLargest(double[] values, int k){
+        int target = values.length-k;
+        int left = 0;
+        int right = values.length-1;
+        while (left<right){
+            double pivot = values[(left+right)>>>1];
+            int i = left;
+            int j = right;
+            while (i<=j){
+                while (values[i]<pivot){
+                    i += 1;
+                }
+                while (values[j]>pivot){
+                    j -= 1;
+                }
+                if (i<=j){
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (target<=j){
+                right = j;
+            } else if (target>=i){
+                left = i;
+            } else {
+                return values[target];
+            }
+        }
+        return values[target];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GOSS{");
+        sb.append("topRate=").append(topRate);
+        sb.append(", otherRate=").append(otherRate);
+        sb.append(", seed=").append(seed);
+        sb.append('}');
+        return sb.toString();
+    }
+}
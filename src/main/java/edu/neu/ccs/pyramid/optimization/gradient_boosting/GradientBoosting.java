@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import org.apache.mahout.math.Vector;
 
@@ -33,6 +34,16 @@ public class GradientBoosting implements Serializable{
         return ensembles.get(ensembleIndex);
     }
 
+    /**
+     * flatten all ensembles for fast scoring, e.g. before serving a trained model
+     * ensembles that get new regressors afterwards fall back to normal scoring
+     */
+    public void compile(){
+        for (Ensemble ensemble: ensembles){
+            ensemble.compile();
+        }
+    }
+
     public double score(Vector vector, int ensembleIndex){
         return ensembles.get(ensembleIndex).score(vector);
     }
@@ -46,6 +57,15 @@ public class GradientBoosting implements Serializable{
         return scores;
     }
 
+    /**
+     * batch scoring, see {@link Ensemble#scores(List, DataSet)}
+     * @param dataSet
+     * @return scores of each data point by each ensemble, num data points * num ensembles
+     */
+    public double[][] scores(DataSet dataSet){
+        return Ensemble.scores(ensembles, dataSet);
+    }
+
     public FeatureList getFeatureList() {
         return featureList;
     }
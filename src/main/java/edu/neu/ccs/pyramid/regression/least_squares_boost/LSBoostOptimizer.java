@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.regression.least_squares_boost;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.optimization.EarlyStopper;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GBOptimizer;
 import edu.neu.ccs.pyramid.optimization.gradient_boosting.GradientBoosting;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
@@ -18,6 +19,7 @@ import java.util.stream.IntStream;
 public class LSBoostOptimizer extends GBOptimizer{
     private static final Logger logger = LogManager.getLogger();
     private double[] labels;
+    private double[] validationLabels;
 
     public LSBoostOptimizer(GradientBoosting boosting, DataSet dataSet, RegressorFactory factory, double[] weights, double[] labels) {
         super(boosting, dataSet, factory, weights);
@@ -34,6 +36,29 @@ public class LSBoostOptimizer extends GBOptimizer{
         this(boosting,  dataSet, factory, dataSet.getLabels());
     }
 
+    /**
+     * track the mean squared error on the validation set
+     * @param validationSet
+     * @param earlyStopper optional, should minimize
+     */
+    public void setValidation(RegDataSet validationSet, EarlyStopper earlyStopper) {
+        this.validationLabels = validationSet.getLabels();
+        super.setValidation(validationSet, earlyStopper);
+    }
+
+    @Override
+    protected boolean supportsValidation() {
+        return true;
+    }
+
+    @Override
+    protected double validationLoss() {
+        return IntStream.range(0, validationSet.getNumDataPoints()).parallel().mapToDouble(i->{
+            double diff = validationLabels[i] - validationScoreMatrix.getScore(i,0);
+            return diff*diff;
+        }).average().getAsDouble();
+    }
+
     @Override
     protected void addPriors() {
         double average = IntStream.range(0,dataSet.getNumDataPoints()).parallel().mapToDouble(i-> labels[i]*weights[i]).average().getAsDouble();
@@ -44,7 +69,7 @@ public class LSBoostOptimizer extends GBOptimizer{
     @Override
     protected double[] gradient(int ensembleIndex) {
         return IntStream.range(0, dataSet.getNumDataPoints()).parallel().
-                mapToDouble(i->labels[i]-scoreMatrix.getScoresForData(i)[0]).toArray();
+                mapToDouble(i->labels[i]-scoreMatrix.getScore(i,0)).toArray();
     }
 
     @Override
@@ -51,7 +51,7 @@ public class MBoostOptimizer extends GBOptimizer {
     @Override
     protected double[] gradient(int ensembleIndex) {
         double[] residual  = IntStream.range(0, dataSet.getNumDataPoints()).parallel().
-                mapToDouble(i->labels[i]-scoreMatrix.getScoresForData(i)[0]).toArray();
+                mapToDouble(i->labels[i]-scoreMatrix.getScore(i,0)).toArray();
         double[] absResidual = Arrays.stream(residual).map(Math::abs).toArray();
         DescriptiveStatistics statistics = new DescriptiveStatistics(absResidual);
         double threshold = statistics.getPercentile(alpha*100);
@@ -0,0 +1,96 @@
+package edu.neu.ccs.pyramid.regression.random_forest;
+
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+
+/**
+ * trees are grown with regTreeConfig; sample features per node with
+ * {@link RegTreeConfig#setFeatureSamplingRatePerNode(double)}, e.g. sqrt(numFeatures)/numFeatures,
+ * and use HISTOGRAM split mode so that all trees share one binned data set
+ * Created by chengli on 5/27/17.
+ */
+public class RFConfig {
+    private RegTreeConfig regTreeConfig;
+    private int numTrees=100;
+    private boolean bootstrap=true;
+    private double dataSamplingRate=1;
+    private long seed=0;
+    private int numThreads=Runtime.getRuntime().availableProcessors();
+
+    public RFConfig(RegTreeConfig regTreeConfig) {
+        this.regTreeConfig = regTreeConfig;
+    }
+
+    public RFConfig setNumTrees(int numTrees) {
+        if (numTrees<1){
+            throw new IllegalArgumentException("numTrees should be at least 1");
+        }
+        this.numTrees = numTrees;
+        return this;
+    }
+
+    /**
+     *
+     * @param bootstrap true: each tree gets numDataPoints*dataSamplingRate rows drawn with replacement;
+     *                  false: each row is kept with probability dataSamplingRate
+     * @return
+     */
+    public RFConfig setBootstrap(boolean bootstrap) {
+        this.bootstrap = bootstrap;
+        return this;
+    }
+
+    public RFConfig setDataSamplingRate(double dataSamplingRate) {
+        if (dataSamplingRate<=0){
+            throw new IllegalArgumentException("dataSamplingRate should be positive");
+        }
+        this.dataSamplingRate = dataSamplingRate;
+        return this;
+    }
+
+    /**
+     * the same seed gives the same forest, regardless of the number of threads
+     * @param seed
+     * @return
+     */
+    public RFConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * max number of threads, including the nested parallelism of each tree
+     * @param numThreads
+     * @return
+     */
+    public RFConfig setNumThreads(int numThreads) {
+        if (numThreads<1){
+            throw new IllegalArgumentException("numThreads should be at least 1");
+        }
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    RegTreeConfig getRegTreeConfig() {
+        return regTreeConfig;
+    }
+
+    int getNumTrees() {
+        return numTrees;
+    }
+
+    boolean isBootstrap() {
+        return bootstrap;
+    }
+
+    double getDataSamplingRate() {
+        return dataSamplingRate;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    int getNumThreads() {
+        return numThreads;
+    }
+}
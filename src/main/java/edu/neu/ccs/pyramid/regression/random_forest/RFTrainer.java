@@ -0,0 +1,86 @@
+package edu.neu.ccs.pyramid.regression.random_forest;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * trees are independent, so they are all trained in parallel
+ * the binned (or presorted) data set is built once and shared by all trees
+ * Created by chengli on 5/27/17.
+ */
+public class RFTrainer {
+
+    public static RandomForest fit(RFConfig config, RegDataSet dataSet){
+        return fit(config, dataSet, dataSet.getLabels());
+    }
+
+    public static RandomForest fit(RFConfig config, DataSet dataSet, double[] labels){
+        RegressionTree[][] trees = fitTrees(config, dataSet, new double[][]{labels});
+        RandomForest forest = new RandomForest(dataSet.getFeatureList());
+        for (RegressionTree tree: trees[0]){
+            forest.getEnsemble().add(tree);
+        }
+        return forest;
+    }
+
+    /**
+     * each bag of data points grows one tree per target; trees are shrunk by 1/numTrees
+     * @param config
+     * @param dataSet
+     * @param targets labels of each target, e.g. class indicators
+     * @return trees of each target, num targets * num trees
+     */
+    public static RegressionTree[][] fitTrees(RFConfig config, DataSet dataSet, double[][] targets){
+        int numTrees = config.getNumTrees();
+        RegressionTree[][] trees = new RegressionTree[targets.length][numTrees];
+        RegTreeFactory factory = new RegTreeFactory(config.getRegTreeConfig());
+        ForkJoinPool pool = new ForkJoinPool(config.getNumThreads());
+        try {
+            // parallel streams started inside the pool run in the pool, including those of each tree
+            pool.submit(() -> IntStream.range(0, numTrees).parallel().forEach(t -> {
+                double[] weights = bag(config, dataSet.getNumDataPoints(), t);
+                for (int o=0;o<targets.length;o++){
+                    // trees are fitted concurrently, so they are indexed by position rather than by fitting order
+                    RegressionTree tree = factory.fit(dataSet, targets[o], weights, false, (long) t*targets.length+o);
+                    tree.shrink(1.0/numTrees);
+                    trees[o][t] = tree;
+                }
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        return trees;
+    }
+
+    /**
+     * rows left out get zero weights, and are skipped by the tree trainer
+     * @return number of times each data point is drawn
+     */
+    static double[] bag(RFConfig config, int numDataPoints, int treeIndex){
+        Random random = new Random(config.getSeed() + 1000003L*treeIndex);
+        double[] weights = new double[numDataPoints];
+        double rate = config.getDataSamplingRate();
+        if (config.isBootstrap()){
+            long numDraws = Math.round(rate*numDataPoints);
+            for (long d=0;d<numDraws;d++){
+                weights[random.nextInt(numDataPoints)] += 1;
+            }
+        } else {
+            for (int i=0;i<numDataPoints;i++){
+                if (rate>=1 || random.nextDouble()<rate){
+                    weights[i] = 1;
+                }
+            }
+        }
+        return weights;
+    }
+}
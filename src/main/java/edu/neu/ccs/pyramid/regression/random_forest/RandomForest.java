@@ -0,0 +1,63 @@
+package edu.neu.ccs.pyramid.regression.random_forest;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.Ensemble;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * average of bagged regression trees
+ * leaf outputs are divided by the number of trees at training time, so the prediction is the sum of the trees,
+ * and compiled and batch scoring of {@link Ensemble} apply
+ * Created by chengli on 5/27/17.
+ */
+public class RandomForest implements Regressor {
+    private static final long serialVersionUID = 2L;
+    private Ensemble ensemble;
+    private FeatureList featureList;
+
+    public RandomForest(FeatureList featureList) {
+        this.ensemble = new Ensemble();
+        this.featureList = featureList;
+    }
+
+    public Ensemble getEnsemble() {
+        return ensemble;
+    }
+
+    /**
+     * flatten the trees for fast scoring, e.g. before serving a trained forest
+     */
+    public void compile(){
+        ensemble.compile();
+    }
+
+    @Override
+    public double predict(Vector vector) {
+        return ensemble.score(vector);
+    }
+
+    /**
+     * batch prediction
+     * @param dataSet
+     * @return
+     */
+    @Override
+    public double[] predict(DataSet dataSet) {
+        return Arrays.stream(Ensemble.scores(Collections.singletonList(ensemble), dataSet))
+                .mapToDouble(scores -> scores[0]).toArray();
+    }
+
+    public int getNumTrees(){
+        return ensemble.getRegressors().size();
+    }
+
+    @Override
+    public FeatureList getFeatureList() {
+        return featureList;
+    }
+}
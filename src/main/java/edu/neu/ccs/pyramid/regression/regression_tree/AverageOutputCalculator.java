@@ -18,4 +18,15 @@ public class AverageOutputCalculator implements LeafOutputCalculator{
         }
         return sum/count;
     }
+
+    @Override
+    public double getLeafOutput(int[] dataPoints, double[] probabilities, double[] labels) {
+        double sum = 0;
+        double count = 0;
+        for (int k=0;k<dataPoints.length;k++){
+            sum += labels[dataPoints[k]]*probabilities[k];
+            count += probabilities[k];
+        }
+        return sum/count;
+    }
 }
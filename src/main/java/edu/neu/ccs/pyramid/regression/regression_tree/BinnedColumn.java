@@ -0,0 +1,427 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * one feature column with every value replaced by the index of its quantile bin
+ * bins 0 ... numBins-1 hold present values in increasing order,
+ * bin numBins holds missing values
+ * Created by chengli on 5/8/17.
+ */
+abstract class BinnedColumn implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * a column is stored sparsely if the fraction of non-zero (including NaN) entries is below this value
+     * a sparse entry takes 6 bytes while a dense entry takes 1 or 2 bytes
+     */
+    static final double MAX_SPARSE_DENSITY = 0.1;
+
+    /**
+     * number of bins for present values
+     */
+    protected int numBins;
+
+    /**
+     * a present value v falls into the first bin b with v <= upperBounds[b]
+     * upperBounds[numBins-1] = +infinity
+     * other bounds are mid points between adjacent present values, so they can be used as split thresholds
+     */
+    protected double[] upperBounds;
+
+    int getNumBins() {
+        return numBins;
+    }
+
+    int getNanBin(){
+        return numBins;
+    }
+
+    /**
+     * threshold to use if data points in bins 0 ... bin go left
+     * @param bin
+     * @return
+     */
+    double getThreshold(int bin){
+        return upperBounds[bin];
+    }
+
+    int findBin(double featureValue){
+        if (Double.isNaN(featureValue)){
+            return numBins;
+        }
+        int position = Arrays.binarySearch(upperBounds, featureValue);
+        if (position>=0){
+            return position;
+        }
+        return -position-1;
+    }
+
+    abstract int getBin(int dataPoint);
+
+    /**
+     * accumulate statistics of data points reaching the node into the histogram
+     * @param partition
+     * @param node
+     * @param labels
+     * @param histogram
+     * @param offset position of the first bin of this feature in the histogram
+     * @param globalStats statistics of the node
+     */
+    abstract void fillHistogram(DataPartition partition, Node node, double[] labels, Histogram histogram, int offset,
+                                Splitter.GlobalStats globalStats);
+
+    /**
+     * accumulate statistics of several leaves of the same tree in one task over the column
+     * by default, node ranges are visited one after another; they are sorted, so the column is read in order
+     * @param partition
+     * @param nodes
+     * @param slots position of each node id in nodes, -1 for other nodes
+     * @param labels
+     * @param histograms one for each node
+     * @param offset position of the first bin of this feature in the histograms
+     * @param globalStats statistics of each node
+     */
+    void fillHistograms(DataPartition partition, Node[] nodes, int[] slots, double[] labels,
+                        Histogram[] histograms, int offset, Splitter.GlobalStats[] globalStats){
+        for (int s=0;s<nodes.length;s++){
+            fillHistogram(partition, nodes[s], labels, histograms[s], offset, globalStats[s]);
+        }
+    }
+
+    /**
+     * data points reaching the node with fractional probabilities
+     */
+    protected void fillFractional(DataPartition partition, Node node, double[] labels, Histogram histogram,
+                                  int offset){
+        double[] hessians = partition.getHessians();
+        int[] fractionalDataPoints = node.getFractionalDataPoints();
+        double[] fractionalProbs = node.getFractionalProbs();
+        for (int k=0;k<fractionalDataPoints.length;k++){
+            int i = fractionalDataPoints[k];
+            histogram.add(offset+getBin(i), i, fractionalProbs[k], labels, hessians);
+        }
+    }
+
+    /**
+     * only increase binary counts of the given data points
+     * @param dataPoints
+     * @param histogram
+     * @param offset position of the first bin of this feature in the histogram
+     */
+    void addBinaryCounts(int[] dataPoints, Histogram histogram, int offset){
+        for (int i: dataPoints){
+            histogram.binaryCounts[offset+getBin(i)] += 1;
+        }
+    }
+
+    static BinnedColumn build(Vector featureValues, int numDataPoints, int maxNumBins){
+        int numEntries = 0;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            numEntries += 1;
+        }
+        int[] rows = new int[numEntries];
+        double[] values = new double[numEntries];
+        int numPresent = 0;
+        int cursor = 0;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            rows[cursor] = element.index();
+            values[cursor] = element.get();
+            if (!Double.isNaN(values[cursor])){
+                numPresent += 1;
+            }
+            cursor += 1;
+        }
+        int numZeros = numDataPoints - numEntries;
+
+        double[] presentValues = new double[numPresent];
+        int presentCursor = 0;
+        for (double value: values){
+            if (!Double.isNaN(value)){
+                presentValues[presentCursor] = value;
+                presentCursor += 1;
+            }
+        }
+        double[] upperBounds = computeUpperBounds(presentValues, numZeros, maxNumBins);
+
+        BinnedColumn column;
+        int maxBin = upperBounds.length;
+        if (numEntries < MAX_SPARSE_DENSITY*numDataPoints){
+            column = new SparseColumn();
+        } else if (maxBin <= 0xFF){
+            column = new DenseByteColumn();
+        } else {
+            column = new DenseShortColumn();
+        }
+        column.numBins = upperBounds.length;
+        column.upperBounds = upperBounds;
+        column.fill(rows, values, numDataPoints);
+        return column;
+    }
+
+    /**
+     * store bins of the given entries; data points not in the entries are zeros
+     */
+    protected abstract void fill(int[] rows, double[] values, int numDataPoints);
+
+    /**
+     * quantile binning
+     * if there are no more than maxNumBins distinct values, each value gets its own bin;
+     * otherwise adjacent distinct values are merged so that bins have roughly equal counts
+     * @param presentValues non-zero present values
+     * @param numZeros number of zero values
+     * @param maxNumBins
+     * @return upper bounds of bins
+     */
+    static double[] computeUpperBounds(double[] presentValues, int numZeros, int maxNumBins){
+        double[] sorted = Arrays.copyOf(presentValues, presentValues.length);
+        Arrays.sort(sorted);
+        // distinct values and their counts
+        double[] distinctValues = new double[sorted.length+1];
+        int[] counts = new int[sorted.length+1];
+        int numDistinct = 0;
+        boolean zerosAdded = (numZeros==0);
+        for (double value: sorted){
+            if (!zerosAdded && value>0){
+                distinctValues[numDistinct] = 0;
+                counts[numDistinct] = numZeros;
+                numDistinct += 1;
+                zerosAdded = true;
+            }
+            if (numDistinct>0 && distinctValues[numDistinct-1]==value){
+                counts[numDistinct-1] += 1;
+            } else {
+                distinctValues[numDistinct] = value;
+                counts[numDistinct] = 1;
+                numDistinct += 1;
+            }
+        }
+        if (!zerosAdded){
+            distinctValues[numDistinct] = 0;
+            counts[numDistinct] = numZeros;
+            numDistinct += 1;
+        }
+
+        if (numDistinct==0){
+            return new double[0];
+        }
+
+        double[] bounds = new double[Math.min(numDistinct, maxNumBins)];
+        int numBounds = 0;
+        double remainingCount = presentValues.length + numZeros;
+        int remainingBins = maxNumBins;
+        double accumulated = 0;
+        for (int d=0;d<numDistinct-1 && remainingBins>1;d++){
+            accumulated += counts[d];
+            double target = remainingCount/remainingBins;
+            int remainingValues = numDistinct-1-d;
+            if (accumulated>=target || remainingValues<=remainingBins-1){
+                bounds[numBounds] = (distinctValues[d]+distinctValues[d+1])/2;
+                numBounds += 1;
+                remainingCount -= accumulated;
+                remainingBins -= 1;
+                accumulated = 0;
+            }
+        }
+        bounds[numBounds] = Double.POSITIVE_INFINITY;
+        numBounds += 1;
+        return Arrays.copyOf(bounds, numBounds);
+    }
+
+    static class DenseByteColumn extends BinnedColumn{
+        private static final long serialVersionUID = 1L;
+        // unsigned
+        private byte[] bins;
+
+        @Override
+        protected void fill(int[] rows, double[] values, int numDataPoints) {
+            bins = new byte[numDataPoints];
+            if (numBins>0){
+                Arrays.fill(bins, (byte) findBin(0));
+            }
+            for (int e=0;e<rows.length;e++){
+                bins[rows[e]] = (byte) findBin(values[e]);
+            }
+        }
+
+        @Override
+        int getBin(int dataPoint) {
+            return bins[dataPoint] & 0xFF;
+        }
+
+        @Override
+        void fillHistogram(DataPartition partition, Node node, double[] labels, Histogram histogram, int offset,
+                           Splitter.GlobalStats globalStats) {
+            int[] dataPoints = partition.getDataPoints();
+            double[] weights = partition.getWeights();
+            double[] hessians = partition.getHessians();
+            for (int k=node.getBegin();k<node.getEnd();k++){
+                int i = dataPoints[k];
+                histogram.add(offset+(bins[i] & 0xFF), i, weights[i], labels, hessians);
+            }
+            fillFractional(partition, node, labels, histogram, offset);
+        }
+    }
+
+    static class DenseShortColumn extends BinnedColumn{
+        private static final long serialVersionUID = 1L;
+        // unsigned
+        private short[] bins;
+
+        @Override
+        protected void fill(int[] rows, double[] values, int numDataPoints) {
+            bins = new short[numDataPoints];
+            if (numBins>0){
+                Arrays.fill(bins, (short) findBin(0));
+            }
+            for (int e=0;e<rows.length;e++){
+                bins[rows[e]] = (short) findBin(values[e]);
+            }
+        }
+
+        @Override
+        int getBin(int dataPoint) {
+            return bins[dataPoint] & 0xFFFF;
+        }
+
+        @Override
+        void fillHistogram(DataPartition partition, Node node, double[] labels, Histogram histogram, int offset,
+                           Splitter.GlobalStats globalStats) {
+            int[] dataPoints = partition.getDataPoints();
+            double[] weights = partition.getWeights();
+            double[] hessians = partition.getHessians();
+            for (int k=node.getBegin();k<node.getEnd();k++){
+                int i = dataPoints[k];
+                histogram.add(offset+(bins[i] & 0xFFFF), i, weights[i], labels, hessians);
+            }
+            fillFractional(partition, node, labels, histogram, offset);
+        }
+    }
+
+    /**
+     * only non-zero entries are stored, sorted by data point index
+     */
+    static class SparseColumn extends BinnedColumn{
+        private static final long serialVersionUID = 1L;
+        private int[] rows;
+        // unsigned
+        private short[] bins;
+        private int zeroBin;
+
+        @Override
+        protected void fill(int[] rows, double[] values, int numDataPoints) {
+            zeroBin = findBin(0);
+            // sort entries by data point index
+            long[] packed = new long[rows.length];
+            for (int e=0;e<rows.length;e++){
+                packed[e] = ((long)rows[e] << 16) | findBin(values[e]);
+            }
+            Arrays.sort(packed);
+            this.rows = new int[rows.length];
+            this.bins = new short[rows.length];
+            for (int e=0;e<packed.length;e++){
+                this.rows[e] = (int)(packed[e] >>> 16);
+                this.bins[e] = (short)(packed[e] & 0xFFFF);
+            }
+        }
+
+        /**
+         *
+         * @return data points with non-zero values, including missing values
+         */
+        int[] getRows() {
+            return rows;
+        }
+
+        /**
+         *
+         * @param entry position in {@link #getRows()}
+         * @return bin of the entry
+         */
+        int getEntryBin(int entry) {
+            return bins[entry] & 0xFFFF;
+        }
+
+        @Override
+        int getBin(int dataPoint) {
+            int position = Arrays.binarySearch(rows, dataPoint);
+            if (position<0){
+                return zeroBin;
+            }
+            return bins[position] & 0xFFFF;
+        }
+
+        /**
+         * small nodes look up the bin of each data point;
+         * large nodes scan non-zero entries, and statistics of zeros are derived from the node statistics
+         */
+        @Override
+        void fillHistogram(DataPartition partition, Node node, double[] labels, Histogram histogram, int offset,
+                           Splitter.GlobalStats globalStats) {
+            int[] dataPoints = partition.getDataPoints();
+            double[] weights = partition.getWeights();
+            double[] hessians = partition.getHessians();
+            int numFull = node.getEnd()-node.getBegin();
+            // a look up costs a binary search over the entries
+            int searchCost = 32 - Integer.numberOfLeadingZeros(rows.length);
+            if ((long)numFull*searchCost < rows.length){
+                for (int k=node.getBegin();k<node.getEnd();k++){
+                    int i = dataPoints[k];
+                    histogram.add(offset+getBin(i), i, weights[i], labels, hessians);
+                }
+                fillFractional(partition, node, labels, histogram, offset);
+                return;
+            }
+
+            fillFractional(partition, node, labels, histogram, offset);
+            int[] owners = partition.getOwners();
+            int nodeId = node.getId();
+            for (int e=0;e<rows.length;e++){
+                int i = rows[e];
+                if (owners[i]==nodeId){
+                    histogram.add(offset+(bins[e] & 0xFFFF), i, weights[i], labels, hessians);
+                }
+            }
+            histogram.fillRemainder(offset, offset+numBins+1, offset+zeroBin, globalStats);
+        }
+
+        /**
+         * small nodes look up the bin of each data point;
+         * otherwise non-zero entries are scanned once for all nodes, and statistics of zeros are derived
+         * from the node statistics
+         */
+        @Override
+        void fillHistograms(DataPartition partition, Node[] nodes, int[] slots, double[] labels,
+                            Histogram[] histograms, int offset, Splitter.GlobalStats[] globalStats) {
+            int numNodes = nodes.length;
+            long numFull = 0;
+            for (Node node: nodes){
+                numFull += node.getEnd()-node.getBegin();
+            }
+            int searchCost = 32 - Integer.numberOfLeadingZeros(rows.length);
+            if (numFull*searchCost < rows.length){
+                super.fillHistograms(partition, nodes, slots, labels, histograms, offset, globalStats);
+                return;
+            }
+            for (int s=0;s<numNodes;s++){
+                fillFractional(partition, nodes[s], labels, histograms[s], offset);
+            }
+            int[] owners = partition.getOwners();
+            double[] weights = partition.getWeights();
+            double[] hessians = partition.getHessians();
+            for (int e=0;e<rows.length;e++){
+                int i = rows[e];
+                int owner = owners[i];
+                if (owner>=0 && slots[owner]>=0){
+                    histograms[slots[owner]].add(offset+(bins[e] & 0xFFFF), i, weights[i], labels, hessians);
+                }
+            }
+            for (int s=0;s<numNodes;s++){
+                histograms[s].fillRemainder(offset, offset+numBins+1, offset+zeroBin, globalStats[s]);
+            }
+        }
+    }
+}
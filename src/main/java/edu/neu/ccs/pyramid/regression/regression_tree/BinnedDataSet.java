@@ -0,0 +1,277 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * a data set with feature values replaced by quantile bin indices
+ * built once, and shared by all trees trained on the same data set
+ * each column is stored as unsigned bytes, unsigned shorts, or sparse entries, whichever is the most compact
+ * optionally, sparse features that are never non-zero on the same data point are bundled,
+ * so that their histograms are built in one pass
+ * Created by chengli on 5/8/17.
+ */
+public class BinnedDataSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * with at most 255 present-value bins, each feature value takes one byte
+     */
+    public static final int DEFAULT_MAX_NUM_BINS = 255;
+    private int numDataPoints;
+    private int numFeatures;
+    private int maxNumBins;
+    private BinnedColumn[] columns;
+    /**
+     * position of the first bin of each feature in a {@link Histogram}
+     */
+    private int[] binOffsets;
+    private int totalNumBins;
+    private FeatureList featureList;
+    /**
+     * max number of existing bundles tried for each feature
+     */
+    private static final int MAX_BUNDLE_CANDIDATES = 50;
+    private FeatureBundle[] bundles;
+    /**
+     * bundle of each feature, -1 if not bundled
+     */
+    private int[] bundleIndices;
+
+    private BinnedDataSet() {
+    }
+
+    /**
+     * parallel by feature
+     * @param dataSet
+     * @param maxNumBins max number of bins for present values of each feature; missing values get one extra bin
+     * @return
+     */
+    public static BinnedDataSet build(DataSet dataSet, int maxNumBins){
+        BinnedDataSet binnedDataSet = create(dataSet, maxNumBins);
+        IntStream.range(0, dataSet.getNumFeatures()).parallel()
+                .forEach(j -> binnedDataSet.columns[j] = BinnedColumn.build(dataSet.getColumn(j),
+                        dataSet.getNumDataPoints(), maxNumBins));
+        binnedDataSet.index();
+        return binnedDataSet;
+    }
+
+    private static BinnedDataSet create(DataSet dataSet, int maxNumBins){
+        if (maxNumBins<2 || maxNumBins>=0xFFFF){
+            throw new IllegalArgumentException("maxNumBins should be between 2 and 65534");
+        }
+        BinnedDataSet binnedDataSet = new BinnedDataSet();
+        binnedDataSet.numDataPoints = dataSet.getNumDataPoints();
+        binnedDataSet.numFeatures = dataSet.getNumFeatures();
+        binnedDataSet.maxNumBins = maxNumBins;
+        binnedDataSet.featureList = dataSet.getFeatureList();
+        binnedDataSet.columns = new BinnedColumn[dataSet.getNumFeatures()];
+        return binnedDataSet;
+    }
+
+    /**
+     * histogram positions; no bundles
+     */
+    private void index(){
+        binOffsets = new int[numFeatures];
+        int offset = 0;
+        for (int j=0;j<numFeatures;j++){
+            binOffsets[j] = offset;
+            // one more bin for missing values
+            offset += columns[j].getNumBins()+1;
+        }
+        totalNumBins = offset;
+        bundles = new FeatureBundle[0];
+        bundleIndices = new int[numFeatures];
+        for (int j=0;j<numFeatures;j++){
+            bundleIndices[j] = -1;
+        }
+    }
+
+    /**
+     *
+     * @param dataSet
+     * @param maxNumBins max number of bins for present values of each feature; missing values get one extra bin
+     * @param bundleFeatures whether to bundle mutually exclusive sparse features
+     * @return
+     */
+    public static BinnedDataSet build(DataSet dataSet, int maxNumBins, boolean bundleFeatures){
+        BinnedDataSet binnedDataSet = build(dataSet, maxNumBins);
+        if (bundleFeatures){
+            binnedDataSet.bundle();
+        }
+        return binnedDataSet;
+    }
+
+    /**
+     * greedy: features with more non-zeros go first, and join the first bundle they do not conflict with
+     * bundles are exact; no data point has two non-zero members in one bundle
+     */
+    private void bundle(){
+        List<Integer> candidates = new ArrayList<>();
+        for (int j=0;j<numFeatures;j++){
+            if (columns[j] instanceof BinnedColumn.SparseColumn){
+                candidates.add(j);
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(sparse(b).getRows().length, sparse(a).getRows().length));
+
+        List<List<Integer>> members = new ArrayList<>();
+        List<BitSet> usedRows = new ArrayList<>();
+        List<Integer> numEntries = new ArrayList<>();
+        List<Integer> numBundleBins = new ArrayList<>();
+        for (int j: candidates){
+            int[] rows = sparse(j).getRows();
+            int bins = columns[j].getNumBins()+1;
+            int chosen = -1;
+            int start = Math.max(0, members.size()-MAX_BUNDLE_CANDIDATES);
+            for (int b=start;b<members.size();b++){
+                if (numBundleBins.get(b)+bins>0xFFFF || numEntries.get(b)+rows.length>numDataPoints){
+                    continue;
+                }
+                if (!conflicts(usedRows.get(b), rows)){
+                    chosen = b;
+                    break;
+                }
+            }
+            if (chosen==-1){
+                members.add(new ArrayList<>());
+                usedRows.add(new BitSet(numDataPoints));
+                numEntries.add(0);
+                // bin 0 of a bundle is for all zeros
+                numBundleBins.add(1);
+                chosen = members.size()-1;
+            }
+            members.get(chosen).add(j);
+            for (int i: rows){
+                usedRows.get(chosen).set(i);
+            }
+            numEntries.set(chosen, numEntries.get(chosen)+rows.length);
+            numBundleBins.set(chosen, numBundleBins.get(chosen)+bins);
+        }
+
+        List<FeatureBundle> bundleList = new ArrayList<>();
+        for (List<Integer> bundleMembers: members){
+            // a single feature gains nothing from bundling
+            if (bundleMembers.size()>1){
+                int[] features = bundleMembers.stream().mapToInt(Integer::intValue).sorted().toArray();
+                BinnedColumn.SparseColumn[] bundleColumns = new BinnedColumn.SparseColumn[features.length];
+                for (int m=0;m<features.length;m++){
+                    bundleColumns[m] = sparse(features[m]);
+                }
+                bundleList.add(new FeatureBundle(features, bundleColumns, numDataPoints));
+            }
+        }
+        this.bundles = bundleList.toArray(new FeatureBundle[bundleList.size()]);
+        for (int b=0;b<bundles.length;b++){
+            for (int j: bundles[b].getFeatures()){
+                bundleIndices[j] = b;
+            }
+        }
+    }
+
+    private BinnedColumn.SparseColumn sparse(int featureIndex){
+        return (BinnedColumn.SparseColumn)columns[featureIndex];
+    }
+
+    private static boolean conflicts(BitSet usedRows, int[] rows){
+        for (int i: rows){
+            if (usedRows.get(i)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getMaxNumBins() {
+        return maxNumBins;
+    }
+
+    public FeatureList getFeatureList() {
+        return featureList;
+    }
+
+    /**
+     *
+     * @param featureIndex
+     * @return number of bins for present values of the feature
+     */
+    public int getNumBins(int featureIndex){
+        return columns[featureIndex].getNumBins();
+    }
+
+    BinnedColumn getColumn(int featureIndex){
+        return columns[featureIndex];
+    }
+
+    int getBinOffset(int featureIndex){
+        return binOffsets[featureIndex];
+    }
+
+    /**
+     *
+     * @return number of bundles of mutually exclusive features
+     */
+    public int getNumBundles(){
+        return bundles.length;
+    }
+
+    /**
+     *
+     * @param bundleIndex
+     * @return original indices of features in the bundle
+     */
+    public int[] getBundleFeatures(int bundleIndex){
+        return bundles[bundleIndex].getFeatures().clone();
+    }
+
+    /**
+     *
+     * @param featureIndex
+     * @return bundle containing the feature, or -1 if the feature is not bundled
+     */
+    public int getBundleIndex(int featureIndex){
+        return bundleIndices[featureIndex];
+    }
+
+    FeatureBundle getBundle(int bundleIndex){
+        return bundles[bundleIndex];
+    }
+
+    /**
+     *
+     * @return number of bins of all features, including missing value bins
+     */
+    int getTotalNumBins() {
+        return totalNumBins;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BinnedDataSet{");
+        sb.append("numDataPoints=").append(numDataPoints);
+        sb.append(", numFeatures=").append(numFeatures);
+        sb.append(", maxNumBins=").append(maxNumBins);
+        int numBundledFeatures = 0;
+        for (FeatureBundle bundle: bundles){
+            numBundledFeatures += bundle.getFeatures().length;
+        }
+        sb.append(", numBundles=").append(bundles.length);
+        sb.append(", numBundledFeatures=").append(numBundledFeatures);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,543 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * a sum of regressors compiled for fast prediction
+ * the nodes of all trees are flattened into parallel arrays, and a leaf is a node that leads to itself;
+ * the features used by the trees get consecutive slots; a row is first gathered into a primitive array
+ * of these slots, then the trees are traversed iteratively from their roots over that array, four at a time;
+ * a group of walks takes as many steps as the deepest of them, so the walks need no test for reaching a leaf;
+ * ensembles of fewer than four trees are walked directly on the row, since gathering would cost more than it saves,
+ * and in such ensembles, trees with a default direction at every node are kept as they are:
+ * one walk over node objects is as fast as over the arrays, and there are no other walks to overlap with it
+ * a data point only takes both branches of a node when its feature value is missing
+ * and the node has no default direction for missing values
+ * constant regressors (e.g. priors) are folded into the leaf outputs of one tree,
+ * and shrinkage is already part of the leaf outputs; other regressors are kept as they are
+ * prediction of one row by a larger ensemble allocates one array with a value per used feature
+ * the result is a snapshot; regressors added to the source afterwards are not included
+ * Created by chengli on 5/17/17.
+ */
+public class CompiledTreeEnsemble implements Regressor {
+    private static final long serialVersionUID = 4L;
+    /**
+     * a block of rows is gathered into a local array of at most this many values
+     */
+    private static final int MAX_BLOCK_VALUES = 1<<15;
+    private static final int MIN_BLOCK_SIZE = 64;
+    private static final int MAX_BLOCK_SIZE = 1024;
+    /**
+     * number of walks done in lockstep
+     */
+    private static final int LOCKSTEP = 4;
+    /**
+     * a leaf with output 0, where a walk goes once it was added to the prediction
+     */
+    private static final int ZERO = 0;
+    /**
+     * returned by a step when the walk has to take both branches
+     */
+    private static final int BOTH = -1;
+
+    /**
+     * feature index of each slot, in increasing order
+     */
+    private int[] features;
+    /**
+     * slot of each feature index up to the largest used one, -1 if the feature is not used
+     */
+    private int[] slots;
+    /**
+     * nodes of all trees, pre-order; nodes refer to features by slot, leaves to slot 0
+     */
+    private int[] featureSlots;
+    /**
+     * feature index of each node, for walking a row directly; -1 for leaves
+     */
+    private int[] featureIndices;
+    private double[] thresholds;
+    /**
+     * left child of node n at 2n, right child at 2n+1, so that a step is an array lookup instead of a branch;
+     * both children of a leaf are the leaf itself
+     */
+    private int[] children;
+    /**
+     * probabilities of going left and right for missing values; a leaf goes left
+     */
+    private double[] leftProbs;
+    private double[] rightProbs;
+    /**
+     * outputs of the leaves, 0 for other nodes
+     * constant regressors are folded into the leaves of one tree when possible
+     */
+    private double[] leafValues;
+    private int[] roots;
+    /**
+     * number of steps from the root of each tree to its deepest leaf
+     */
+    private int[] depths;
+    /**
+     * constants that could not be folded into leaves
+     */
+    private double bias;
+    private Regressor[] others;
+    private FeatureList featureList;
+
+    private CompiledTreeEnsemble() {
+    }
+
+    public static CompiledTreeEnsemble compile(List<Regressor> regressors){
+        CompiledTreeEnsemble compiled = new CompiledTreeEnsemble();
+        int numSourceTrees = (int) regressors.stream().filter(regressor -> regressor instanceof RegressionTree).count();
+        // the zero leaf
+        int numNodes = 1;
+        int numTrees = 0;
+        for (Regressor regressor: regressors){
+            if (isFlattened(regressor, numSourceTrees)){
+                numNodes += ((RegressionTree) regressor).traverse().size();
+                numTrees += 1;
+            }
+        }
+        compiled.featureIndices = new int[numNodes];
+        compiled.thresholds = new double[numNodes];
+        compiled.children = new int[2*numNodes];
+        compiled.leftProbs = new double[numNodes];
+        compiled.rightProbs = new double[numNodes];
+        compiled.leafValues = new double[numNodes];
+        compiled.roots = new int[numTrees];
+        compiled.depths = new int[numTrees];
+
+        List<Regressor> others = new ArrayList<>();
+        int[] size = {0};
+        compiled.addLeaf(0, size);
+        // nodes of the tree that takes the constants
+        int foldBegin = -1;
+        int foldEnd = -1;
+        int treeIndex = 0;
+        for (Regressor regressor: regressors){
+            if (regressor instanceof RegressionTree && compiled.featureList==null){
+                compiled.featureList = ((RegressionTree) regressor).getFeatureList();
+            }
+            if (isFlattened(regressor, numSourceTrees)){
+                RegressionTree tree = (RegressionTree) regressor;
+                int firstNode = size[0];
+                compiled.roots[treeIndex] = compiled.add(tree.getRoot(), size);
+                compiled.depths[treeIndex] = depth(tree.getRoot());
+                treeIndex += 1;
+                if (foldBegin==-1 && compiled.isFoldable(firstNode, size[0])){
+                    foldBegin = firstNode;
+                    foldEnd = size[0];
+                }
+            } else if (regressor instanceof ConstantRegressor){
+                compiled.bias += ((ConstantRegressor) regressor).getScore();
+            } else {
+                others.add(regressor);
+            }
+        }
+        if (foldBegin!=-1){
+            for (int n=foldBegin;n<foldEnd;n++){
+                if (compiled.isLeaf(n)){
+                    compiled.leafValues[n] += compiled.bias;
+                }
+            }
+            compiled.bias = 0;
+        }
+        compiled.others = others.toArray(new Regressor[others.size()]);
+        compiled.assignSlots();
+        return compiled;
+    }
+
+    private static boolean isFlattened(Regressor regressor, int numTrees){
+        if (!(regressor instanceof RegressionTree)){
+            return false;
+        }
+        if (numTrees>=LOCKSTEP){
+            return true;
+        }
+        // a probabilistic split is much faster on the arrays
+        return ((RegressionTree) regressor).traverse().stream().anyMatch(node -> !node.isLeaf()
+                && node.getLeftProb()!=0 && node.getRightProb()!=0);
+    }
+
+    private static int depth(Node node){
+        if (node.isLeaf()){
+            return 0;
+        }
+        return 1+Math.max(depth(node.getLeftChild()), depth(node.getRightChild()));
+    }
+
+    /**
+     * nodes hold feature indices until slots are assigned
+     */
+    private void assignSlots(){
+        this.features = Arrays.stream(featureIndices).filter(featureIndex -> featureIndex>=0)
+                .distinct().sorted().toArray();
+        int maxFeature = (features.length==0) ? -1 : features[features.length-1];
+        this.slots = new int[maxFeature+1];
+        Arrays.fill(slots, -1);
+        for (int s=0;s<features.length;s++){
+            slots[features[s]] = s;
+        }
+        this.featureSlots = new int[featureIndices.length];
+        for (int n=0;n<featureIndices.length;n++){
+            if (featureIndices[n]>=0){
+                featureSlots[n] = slots[featureIndices[n]];
+            }
+        }
+    }
+
+    /**
+     * copy the values of the used features of a row into values[offset] ... values[offset+numSlots-1]
+     * sparse rows with fewer entries than used features are scattered from their non-zeros,
+     * other rows are read feature by feature
+     */
+    private void gather(Vector vector, double[] values, int offset){
+        int numSlots = features.length;
+        if (vector.isDense() || numSlots<=vector.getNumNondefaultElements()){
+            for (int s=0;s<numSlots;s++){
+                values[offset+s] = vector.get(features[s]);
+            }
+            return;
+        }
+        Arrays.fill(values, offset, offset+numSlots, 0);
+        for (Vector.Element element: vector.nonZeroes()){
+            int featureIndex = element.index();
+            if (featureIndex<slots.length){
+                int slot = slots[featureIndex];
+                if (slot>=0){
+                    values[offset+slot] = element.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * pre-order
+     * @param node
+     * @param size number of nodes added so far; updated
+     * @return position of the node
+     */
+    private int add(Node node, int[] size){
+        if (node.isLeaf()){
+            return addLeaf(node.getValue(), size);
+        }
+        int position = size[0];
+        size[0] += 1;
+        featureIndices[position] = node.getFeatureIndex();
+        thresholds[position] = node.getThreshold();
+        leftProbs[position] = node.getLeftProb();
+        rightProbs[position] = node.getRightProb();
+        children[2*position] = add(node.getLeftChild(), size);
+        children[2*position+1] = add(node.getRightChild(), size);
+        return position;
+    }
+
+    private int addLeaf(double value, int[] size){
+        int position = size[0];
+        size[0] += 1;
+        featureIndices[position] = -1;
+        leftProbs[position] = 1;
+        children[2*position] = position;
+        children[2*position+1] = position;
+        leafValues[position] = value;
+        return position;
+    }
+
+    private boolean isLeaf(int node){
+        return children[2*node]==node;
+    }
+
+    /**
+     * a constant added to every leaf of a tree is added to every prediction
+     * only if missing values are split with probabilities summing to one
+     */
+    private boolean isFoldable(int firstNode, int endNode){
+        for (int n=firstNode;n<endNode;n++){
+            if (Math.abs(leftProbs[n]+rightProbs[n]-1)>1e-9){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double predict(Vector vector) {
+        double prediction = bias;
+        if (roots.length<LOCKSTEP){
+            for (int root: roots){
+                prediction += predictTree(vector, root);
+            }
+        } else {
+            double[] values = new double[features.length];
+            gather(vector, values, 0);
+            prediction += predictTrees(values, 0);
+        }
+        for (Regressor regressor: others){
+            prediction += regressor.predict(vector);
+        }
+        return prediction;
+    }
+
+    /**
+     * the rows are gathered into one block, which is then scored tree by tree
+     * @param rows
+     * @param predictions filled with predictions of rows
+     */
+    public void predict(Vector[] rows, double[] predictions){
+        double[] block = new double[rows.length*features.length];
+        predict(rows, block, predictions);
+    }
+
+    /**
+     * @param block scratch space of at least rows.length*numSlots values
+     */
+    private void predict(Vector[] rows, double[] block, double[] predictions){
+        int numSlots = features.length;
+        for (int r=0;r<rows.length;r++){
+            gather(rows[r], block, r*numSlots);
+        }
+        Arrays.fill(predictions, 0, rows.length, bias);
+        predictTrees(block, rows.length, predictions);
+        for (Regressor regressor: others){
+            for (int r=0;r<rows.length;r++){
+                predictions[r] += regressor.predict(rows[r]);
+            }
+        }
+    }
+
+    /**
+     * each step down a tree is a chain of dependent loads; {@link #LOCKSTEP} trees are walked in lockstep
+     * so that their loads overlap
+     */
+    private double predictTrees(double[] values, int offset){
+        double prediction = 0;
+        int numTrees = roots.length;
+        int t = 0;
+        for (;t+LOCKSTEP<=numTrees;t+=LOCKSTEP){
+            int node0 = roots[t];
+            int node1 = roots[t+1];
+            int node2 = roots[t+2];
+            int node3 = roots[t+3];
+            int depth = Math.max(Math.max(depths[t], depths[t+1]), Math.max(depths[t+2], depths[t+3]));
+            for (int d=0;d<depth;d++){
+                int next0 = step(values, offset, node0);
+                int next1 = step(values, offset, node1);
+                int next2 = step(values, offset, node2);
+                int next3 = step(values, offset, node3);
+                if ((next0 | next1 | next2 | next3)<0){
+                    // some missing value takes both branches, which is rare
+                    prediction += both(values, offset, node0, next0)+both(values, offset, node1, next1)
+                            +both(values, offset, node2, next2)+both(values, offset, node3, next3);
+                    next0 = resume(next0);
+                    next1 = resume(next1);
+                    next2 = resume(next2);
+                    next3 = resume(next3);
+                }
+                node0 = next0;
+                node1 = next1;
+                node2 = next2;
+                node3 = next3;
+            }
+            prediction += leafValues[node0]+leafValues[node1]+leafValues[node2]+leafValues[node3];
+        }
+        for (;t<numTrees;t++){
+            prediction += predictTree(values, offset, roots[t]);
+        }
+        return prediction;
+    }
+
+    /**
+     * tree by tree over a gathered block, {@link #LOCKSTEP} rows at a time;
+     * all walks of a tree take the same number of steps
+     * @param numRows
+     * @param predictions incremented by the tree outputs
+     */
+    private void predictTrees(double[] block, int numRows, double[] predictions){
+        int numSlots = features.length;
+        for (int t=0;t<roots.length;t++){
+            int root = roots[t];
+            int depth = depths[t];
+            int r = 0;
+            for (;r+LOCKSTEP<=numRows;r+=LOCKSTEP){
+                int offset0 = r*numSlots;
+                int offset1 = offset0+numSlots;
+                int offset2 = offset1+numSlots;
+                int offset3 = offset2+numSlots;
+                int node0 = root;
+                int node1 = root;
+                int node2 = root;
+                int node3 = root;
+                for (int d=0;d<depth;d++){
+                    int next0 = step(block, offset0, node0);
+                    int next1 = step(block, offset1, node1);
+                    int next2 = step(block, offset2, node2);
+                    int next3 = step(block, offset3, node3);
+                    if ((next0 | next1 | next2 | next3)<0){
+                        predictions[r] += both(block, offset0, node0, next0);
+                        predictions[r+1] += both(block, offset1, node1, next1);
+                        predictions[r+2] += both(block, offset2, node2, next2);
+                        predictions[r+3] += both(block, offset3, node3, next3);
+                        next0 = resume(next0);
+                        next1 = resume(next1);
+                        next2 = resume(next2);
+                        next3 = resume(next3);
+                    }
+                    node0 = next0;
+                    node1 = next1;
+                    node2 = next2;
+                    node3 = next3;
+                }
+                predictions[r] += leafValues[node0];
+                predictions[r+1] += leafValues[node1];
+                predictions[r+2] += leafValues[node2];
+                predictions[r+3] += leafValues[node3];
+            }
+            for (;r<numRows;r++){
+                predictions[r] += predictTree(block, r*numSlots, root);
+            }
+        }
+    }
+
+    /**
+     * @return the node to visit next, or {@link #BOTH} if the value is missing and the split is probabilistic
+     */
+    private int step(double[] values, int offset, int node){
+        double featureValue = values[offset+featureSlots[node]];
+        if (Double.isNaN(featureValue)){
+            if (rightProbs[node]==0){
+                return children[2*node];
+            }
+            if (leftProbs[node]==0){
+                return children[2*node+1];
+            }
+            return BOTH;
+        }
+        return children[2*node+(featureValue<=thresholds[node] ? 0 : 1)];
+    }
+
+    /**
+     * @return output of the rest of a walk that has to take both branches of the node, 0 for other walks
+     */
+    private double both(double[] values, int offset, int node, int next){
+        return (next==BOTH) ? predictTree(values, offset, node) : 0;
+    }
+
+    private static int resume(int next){
+        return (next==BOTH) ? ZERO : next;
+    }
+
+    private double predictTree(double[] values, int offset, int node){
+        while (!isLeaf(node)){
+            double featureValue = values[offset+featureSlots[node]];
+            if (Double.isNaN(featureValue)){
+                if (rightProbs[node]==0){
+                    // default direction
+                    node = children[2*node];
+                    continue;
+                }
+                if (leftProbs[node]==0){
+                    node = children[2*node+1];
+                    continue;
+                }
+                // go to both branches probabilistically
+                return leftProbs[node]*predictTree(values, offset, children[2*node])
+                        + rightProbs[node]*predictTree(values, offset, children[2*node+1]);
+            }
+            node = children[2*node+(featureValue<=thresholds[node] ? 0 : 1)];
+        }
+        return leafValues[node];
+    }
+
+    /**
+     * walks a tree on the row itself, without gathering
+     */
+    private double predictTree(Vector vector, int node){
+        while (!isLeaf(node)){
+            double featureValue = vector.get(featureIndices[node]);
+            if (Double.isNaN(featureValue)){
+                if (rightProbs[node]==0){
+                    node = children[2*node];
+                    continue;
+                }
+                if (leftProbs[node]==0){
+                    node = children[2*node+1];
+                    continue;
+                }
+                return leftProbs[node]*predictTree(vector, children[2*node])
+                        + rightProbs[node]*predictTree(vector, children[2*node+1]);
+            }
+            node = children[2*node+(featureValue<=thresholds[node] ? 0 : 1)];
+        }
+        return leafValues[node];
+    }
+    /**
+     * batch scoring
+     * the data set is cut into blocks of rows scored in parallel; each row is read from the data set once per block,
+     * and for each ensemble, the block is gathered into a primitive array and scored tree by tree
+     * @param ensembles
+     * @param dataSet
+     * @return scores of each data point by each ensemble, num data points * num ensembles
+     */
+    public static double[][] predict(CompiledTreeEnsemble[] ensembles, DataSet dataSet){
+        int numDataPoints = dataSet.getNumDataPoints();
+        int maxNumSlots = 1;
+        for (CompiledTreeEnsemble ensemble: ensembles){
+            maxNumSlots = Math.max(maxNumSlots, ensemble.features.length);
+        }
+        int size = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, MAX_BLOCK_VALUES/maxNumSlots));
+        int numSlots = maxNumSlots;
+        double[][] scores = new double[numDataPoints][ensembles.length];
+        int numBlocks = (numDataPoints+size-1)/size;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            int begin = b*size;
+            int end = Math.min(numDataPoints, begin+size);
+            Vector[] rows = new Vector[end-begin];
+            for (int i=begin;i<end;i++){
+                rows[i-begin] = dataSet.getRow(i);
+            }
+            double[] block = new double[rows.length*numSlots];
+            double[] predictions = new double[rows.length];
+            for (int k=0;k<ensembles.length;k++){
+                ensembles[k].predict(rows, block, predictions);
+                for (int r=0;r<rows.length;r++){
+                    scores[begin+r][k] = predictions[r];
+                }
+            }
+        });
+        return scores;
+    }
+
+    public int getNumTrees(){
+        return roots.length;
+    }
+
+    @Override
+    public FeatureList getFeatureList() {
+        return featureList;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CompiledTreeEnsemble{");
+        sb.append("numTrees=").append(roots.length);
+        // without the zero leaf
+        int numLeaves = (int) IntStream.range(1, featureIndices.length).filter(this::isLeaf).count();
+        sb.append(", numInternalNodes=").append(featureIndices.length-1-numLeaves);
+        sb.append(", numFeatures=").append(features.length);
+        sb.append(", numLeaves=").append(numLeaves);
+        sb.append(", bias=").append(bias);
+        sb.append(", numOthers=").append(others.length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,270 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Arrays;
+
+/**
+ * data points reaching the nodes of a tree under construction
+ * a data point reaches a node either with its full weight, or with a fractional probability
+ * because it has missing values on some split features
+ * data points reaching a node with full weights occupy a contiguous range of a shared index buffer;
+ * fractional ones are kept in a small side list of the node
+ * memory is O(number of data points) for the whole tree, regardless of the number of nodes
+ * Created by chengli on 5/10/17.
+ */
+class DataPartition {
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+    static final int BOTH = 2;
+
+    private double[] weights;
+    /**
+     * only for second order training, otherwise null
+     */
+    private double[] hessians;
+    /**
+     * shared index buffer; the range of a node is [node.getBegin(), node.getEnd())
+     */
+    private int[] dataPoints;
+    private int[] scratch;
+    /**
+     * id of the node each data point reaches with full weight, or -1
+     * only valid for leaves
+     */
+    private int[] owners;
+
+    /**
+     * data points with zero weights are excluded from the start
+     * @param weights
+     */
+    DataPartition(double[] weights) {
+        this(weights, null);
+    }
+
+    /**
+     * data points with zero weights are excluded from the start
+     * @param weights
+     * @param hessians null for first order training
+     */
+    DataPartition(double[] weights, double[] hessians) {
+        this.weights = weights;
+        this.hessians = hessians;
+        int numDataPoints = weights.length;
+        this.owners = new int[numDataPoints];
+        Arrays.fill(owners, -1);
+        int size = 0;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                size += 1;
+            }
+        }
+        this.dataPoints = new int[size];
+        this.scratch = new int[size];
+        int cursor = 0;
+        for (int i=0;i<numDataPoints;i++){
+            if (weights[i]>0){
+                dataPoints[cursor] = i;
+                cursor += 1;
+            }
+        }
+    }
+
+    void assignRoot(Node root){
+        for (int i: dataPoints){
+            owners[i] = root.getId();
+        }
+        root.setRange(0, dataPoints.length);
+        root.setFractional(new int[0], new double[0]);
+    }
+
+    int[] getDataPoints() {
+        return dataPoints;
+    }
+
+    double[] getWeights() {
+        return weights;
+    }
+
+    double[] getHessians() {
+        return hessians;
+    }
+
+    boolean isSecondOrder(){
+        return hessians!=null;
+    }
+
+    int[] getOwners() {
+        return owners;
+    }
+
+    int getNumDataPoints(){
+        return weights.length;
+    }
+
+    /**
+     *
+     * @param node
+     * @return number of data points with non-zero probabilities at the node
+     */
+    int getBinaryCount(Node node){
+        return node.getEnd()-node.getBegin()+node.getFractionalDataPoints().length;
+    }
+
+    /**
+     *
+     * @param node
+     * @return indices of data points with non-zero probabilities at the node
+     */
+    int[] getDataPoints(Node node){
+        int[] fractionalDataPoints = node.getFractionalDataPoints();
+        int numFull = node.getEnd()-node.getBegin();
+        int[] result = new int[numFull+fractionalDataPoints.length];
+        System.arraycopy(dataPoints, node.getBegin(), result, 0, numFull);
+        System.arraycopy(fractionalDataPoints, 0, result, numFull, fractionalDataPoints.length);
+        return result;
+    }
+
+    /**
+     *
+     * @param node
+     * @return probabilities of data points in the same order as {@link #getDataPoints(Node)}
+     */
+    double[] getProbs(Node node){
+        double[] fractionalProbs = node.getFractionalProbs();
+        int numFull = node.getEnd()-node.getBegin();
+        double[] result = new double[numFull+fractionalProbs.length];
+        for (int k=0;k<numFull;k++){
+            result[k] = weights[dataPoints[node.getBegin()+k]];
+        }
+        System.arraycopy(fractionalProbs, 0, result, numFull, fractionalProbs.length);
+        return result;
+    }
+
+    /**
+     * only needed by splitters that work on full-length probabilities
+     * the array is not kept by the node
+     * @param node
+     * @return probabilities of all data points falling into the node
+     */
+    double[] getDenseProbs(Node node){
+        double[] probs = new double[weights.length];
+        for (int k=node.getBegin();k<node.getEnd();k++){
+            int i = dataPoints[k];
+            probs[i] = weights[i];
+        }
+        int[] fractionalDataPoints = node.getFractionalDataPoints();
+        double[] fractionalProbs = node.getFractionalProbs();
+        for (int k=0;k<fractionalDataPoints.length;k++){
+            probs[fractionalDataPoints[k]] = fractionalProbs[k];
+        }
+        return probs;
+    }
+
+    /**
+     * move data points of the parent to its children
+     * data points going to both children become fractional, following the parent's leftProb and rightProb
+     * @param parent
+     * @param leftChild
+     * @param rightChild
+     * @param router
+     * @return data points that go to both children
+     */
+    int[] split(Node parent, Node leftChild, Node rightChild, Router router){
+        int begin = parent.getBegin();
+        int end = parent.getEnd();
+        double leftProb = parent.getLeftProb();
+        double rightProb = parent.getRightProb();
+
+        int numLeft = 0;
+        int numRight = 0;
+        int numBoth = 0;
+        // data points that leave the shared buffer are collected at the end of scratch
+        for (int k=begin;k<end;k++){
+            int i = dataPoints[k];
+            switch (router.route(i)){
+                case LEFT:
+                    dataPoints[begin+numLeft] = i;
+                    owners[i] = leftChild.getId();
+                    numLeft += 1;
+                    break;
+                case RIGHT:
+                    scratch[begin+numRight] = i;
+                    owners[i] = rightChild.getId();
+                    numRight += 1;
+                    break;
+                default:
+                    numBoth += 1;
+                    scratch[end-numBoth] = i;
+                    owners[i] = -1;
+                    break;
+            }
+        }
+        System.arraycopy(scratch, begin, dataPoints, begin+numLeft, numRight);
+        leftChild.setRange(begin, begin+numLeft);
+        rightChild.setRange(begin+numLeft, begin+numLeft+numRight);
+
+        int[] parentFractionalDataPoints = parent.getFractionalDataPoints();
+        double[] parentFractionalProbs = parent.getFractionalProbs();
+        int maxFractional = numBoth + parentFractionalDataPoints.length;
+        int[] leftFractionalDataPoints = new int[maxFractional];
+        double[] leftFractionalProbs = new double[maxFractional];
+        int[] rightFractionalDataPoints = new int[maxFractional];
+        double[] rightFractionalProbs = new double[maxFractional];
+        int[] shared = new int[maxFractional];
+        int numLeftFractional = 0;
+        int numRightFractional = 0;
+        int numShared = 0;
+        for (int b=1;b<=numBoth;b++){
+            int i = scratch[end-b];
+            leftFractionalDataPoints[numLeftFractional] = i;
+            leftFractionalProbs[numLeftFractional] = weights[i]*leftProb;
+            numLeftFractional += 1;
+            rightFractionalDataPoints[numRightFractional] = i;
+            rightFractionalProbs[numRightFractional] = weights[i]*rightProb;
+            numRightFractional += 1;
+            shared[numShared] = i;
+            numShared += 1;
+        }
+        for (int k=0;k<parentFractionalDataPoints.length;k++){
+            int i = parentFractionalDataPoints[k];
+            double prob = parentFractionalProbs[k];
+            int direction = router.route(i);
+            if (direction==LEFT || direction==BOTH){
+                double childProb = (direction==LEFT) ? prob : prob*leftProb;
+                if (childProb>0){
+                    leftFractionalDataPoints[numLeftFractional] = i;
+                    leftFractionalProbs[numLeftFractional] = childProb;
+                    numLeftFractional += 1;
+                }
+            }
+            if (direction==RIGHT || direction==BOTH){
+                double childProb = (direction==RIGHT) ? prob : prob*rightProb;
+                if (childProb>0){
+                    rightFractionalDataPoints[numRightFractional] = i;
+                    rightFractionalProbs[numRightFractional] = childProb;
+                    numRightFractional += 1;
+                }
+            }
+            if (direction==BOTH){
+                shared[numShared] = i;
+                numShared += 1;
+            }
+        }
+        leftChild.setFractional(Arrays.copyOf(leftFractionalDataPoints, numLeftFractional),
+                Arrays.copyOf(leftFractionalProbs, numLeftFractional));
+        rightChild.setFractional(Arrays.copyOf(rightFractionalDataPoints, numRightFractional),
+                Arrays.copyOf(rightFractionalProbs, numRightFractional));
+        return Arrays.copyOf(shared, numShared);
+    }
+
+    /**
+     * decides where a data point goes at a split
+     */
+    interface Router {
+        /**
+         *
+         * @param dataPoint
+         * @return LEFT, RIGHT or BOTH
+         */
+        int route(int dataPoint);
+    }
+}
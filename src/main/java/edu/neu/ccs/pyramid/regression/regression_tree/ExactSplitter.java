@@ -0,0 +1,260 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * find the exact best split of one feature, considering all mid points between adjacent distinct values at the node
+ * missing values are handled in the same way as {@link IntervalSplitter}, or sent to a learned default direction
+ * Created by chengli on 5/19/17.
+ */
+class ExactSplitter {
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param presortedDataSet
+     * @param column original feature values, to look up data points reaching the node fractionally
+     * @param partition
+     * @param node
+     * @param labels
+     * @param featureIndex
+     * @param globalStats statistics of the node
+     * @return
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       PresortedDataSet presortedDataSet,
+                                       Vector column,
+                                       DataPartition partition,
+                                       Node node,
+                                       double[] labels,
+                                       int featureIndex,
+                                       Splitter.GlobalStats globalStats){
+        BinnedColumn countingColumn = presortedDataSet.getCountingColumn(featureIndex);
+        if (countingColumn!=null){
+            if (countingColumn.getNumBins()<2){
+                return Optional.empty();
+            }
+            // one bin per distinct value
+            Histogram histogram = new Histogram(countingColumn.getNumBins()+1);
+            countingColumn.fillHistogram(partition, node, labels, histogram, 0, globalStats);
+            return HistogramSplitter.findBest(regTreeConfig, countingColumn, histogram, 0, featureIndex, globalStats);
+        }
+        return scan(regTreeConfig, presortedDataSet.getSortedColumn(featureIndex), column, partition, node, labels,
+                featureIndex, globalStats);
+    }
+
+    /**
+     * collect present values at the node in increasing order, then search splits with prefix sums
+     * statistics of zeros are derived from the node statistics
+     */
+    private static Optional<SplitResult> scan(RegTreeConfig regTreeConfig,
+                                              SortedColumn sortedColumn,
+                                              Vector column,
+                                              DataPartition partition,
+                                              Node node,
+                                              double[] labels,
+                                              int featureIndex,
+                                              Splitter.GlobalStats globalStats){
+        int nodeId = node.getId();
+        int[] owners = partition.getOwners();
+        double[] weights = partition.getWeights();
+
+        double nanCount = 0;
+        double nanSum = 0;
+        int nanBinaryCount = 0;
+        for (int i: sortedColumn.getNanRows()){
+            if (owners[i]==nodeId){
+                nanCount += weights[i];
+                nanSum += weights[i]*labels[i];
+                nanBinaryCount += 1;
+            }
+        }
+
+        // fractional data points with non-zero present values, sorted by value
+        int[] fractionalDataPoints = node.getFractionalDataPoints();
+        double[] fractionalProbs = node.getFractionalProbs();
+        double[] fractionalValues = new double[fractionalDataPoints.length];
+        Integer[] order = new Integer[fractionalDataPoints.length];
+        int numFractional = 0;
+        for (int k=0;k<fractionalDataPoints.length;k++){
+            int i = fractionalDataPoints[k];
+            double value = column.get(i);
+            if (Double.isNaN(value)){
+                nanCount += fractionalProbs[k];
+                nanSum += fractionalProbs[k]*labels[i];
+                nanBinaryCount += 1;
+            } else if (value!=0){
+                fractionalValues[k] = value;
+                order[numFractional] = k;
+                numFractional += 1;
+            }
+        }
+        Arrays.sort(order, 0, numFractional, (a, b) -> Double.compare(fractionalValues[a], fractionalValues[b]));
+
+        // merge data points with full and fractional probabilities
+        int[] sortedRows = sortedColumn.getSortedRows();
+        double[] sortedValues = sortedColumn.getSortedValues();
+        int maxLength = sortedRows.length+numFractional+1;
+        double[] values = new double[maxLength];
+        double[] counts = new double[maxLength];
+        double[] sums = new double[maxLength];
+        int length = 0;
+        int f = 0;
+        double nonZeroCount = 0;
+        double nonZeroSum = 0;
+        int nonZeroBinaryCount = 0;
+        for (int e=0;e<=sortedRows.length;e++){
+            double value = (e<sortedRows.length) ? sortedValues[e] : Double.POSITIVE_INFINITY;
+            while (f<numFractional && fractionalValues[order[f]]<=value){
+                int k = order[f];
+                double prob = fractionalProbs[k];
+                double weightedLabel = prob*labels[fractionalDataPoints[k]];
+                length = append(values, counts, sums, length, fractionalValues[k], prob, weightedLabel);
+                nonZeroCount += prob;
+                nonZeroSum += weightedLabel;
+                nonZeroBinaryCount += 1;
+                f += 1;
+            }
+            if (e==sortedRows.length){
+                break;
+            }
+            int i = sortedRows[e];
+            if (owners[i]==nodeId){
+                double prob = weights[i];
+                double weightedLabel = prob*labels[i];
+                length = append(values, counts, sums, length, value, prob, weightedLabel);
+                nonZeroCount += prob;
+                nonZeroSum += weightedLabel;
+                nonZeroBinaryCount += 1;
+            }
+        }
+
+        // zeros go between negative and positive values
+        int zeroBinaryCount = globalStats.getBinaryCount() - nanBinaryCount - nonZeroBinaryCount;
+        if (zeroBinaryCount>0){
+            int position = 0;
+            while (position<length && values[position]<0){
+                position += 1;
+            }
+            System.arraycopy(values, position, values, position+1, length-position);
+            System.arraycopy(counts, position, counts, position+1, length-position);
+            System.arraycopy(sums, position, sums, position+1, length-position);
+            values[position] = 0;
+            counts[position] = globalStats.getProbabilisticCount() - nanCount - nonZeroCount;
+            sums[position] = globalStats.getWeightedLabelSum() - nanSum - nonZeroSum;
+            length += 1;
+        }
+
+        return findBest(regTreeConfig, values, counts, sums, length, nanCount, nanSum, featureIndex, globalStats);
+    }
+
+    /**
+     * data points with equal values are grouped together
+     * @return new length
+     */
+    private static int append(double[] values, double[] counts, double[] sums, int length,
+                              double value, double count, double sum){
+        if (length>0 && values[length-1]==value){
+            counts[length-1] += count;
+            sums[length-1] += sum;
+            return length;
+        }
+        values[length] = value;
+        counts[length] = count;
+        sums[length] = sum;
+        return length+1;
+    }
+
+    /**
+     * same criterion as {@link HistogramSplitter}, with one group per distinct value
+     */
+    private static Optional<SplitResult> findBest(RegTreeConfig regTreeConfig,
+                                                  double[] values,
+                                                  double[] counts,
+                                                  double[] sums,
+                                                  int length,
+                                                  double nanCount,
+                                                  double nanSum,
+                                                  int featureIndex,
+                                                  Splitter.GlobalStats globalStats){
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        double globalCount = globalStats.getProbabilisticCount();
+        boolean learnDirection = regTreeConfig.getMissingValuePolicy()==MissingValuePolicy.DEFAULT_DIRECTION;
+        boolean hasMissing = nanCount>0;
+        // statistics of missing values that go to one side as a whole; zero if they are spread
+        double missingCount = learnDirection ? nanCount : 0;
+        double missingSum = learnDirection ? nanSum : 0;
+        // otherwise assign missing values to every group probabilistically
+        double spread = learnDirection ? 0 : 1;
+        double totalCount = missingCount;
+        double totalSum = missingSum;
+        for (int g=0;g<length;g++){
+            double percentage = spread*counts[g]/globalCount;
+            counts[g] += percentage*nanCount;
+            sums[g] += percentage*nanSum;
+            totalCount += counts[g];
+            totalSum += sums[g];
+        }
+
+        int[] directions;
+        int lastThreshold = length-2;
+        if (!learnDirection){
+            directions = new int[]{DataPartition.BOTH};
+        } else if (hasMissing){
+            directions = new int[]{DataPartition.LEFT, DataPartition.RIGHT};
+            lastThreshold = length-1;
+        } else {
+            directions = new int[]{DataPartition.LEFT};
+        }
+
+        SplitResult best = null;
+        double leftCount = 0;
+        double leftSum = 0;
+        for (int g=0;g<=lastThreshold;g++){
+            leftCount += counts[g];
+            leftSum += sums[g];
+            for (int direction: directions){
+                boolean missingLeft = (direction==DataPartition.LEFT);
+                if (g==length-1 && missingLeft){
+                    // nothing goes right
+                    continue;
+                }
+                double splitLeftCount = missingLeft ? leftCount + missingCount : leftCount;
+                double splitLeftSum = missingLeft ? leftSum + missingSum : leftSum;
+                double rightCount = totalCount - splitLeftCount;
+                double rightSum = totalSum - splitLeftSum;
+                if (splitLeftCount<minDataPerLeaf || rightCount<minDataPerLeaf){
+                    continue;
+                }
+                double reduction = splitLeftSum * splitLeftSum / splitLeftCount +
+                        rightSum * rightSum / rightCount
+                        - totalSum * totalSum / totalCount;
+                if (best==null || reduction>best.getReduction()){
+                    // all present values go left
+                    double threshold = (g==length-1) ? Double.POSITIVE_INFINITY : (values[g]+values[g+1])/2;
+                    best = new SplitResult();
+                    best.setFeatureIndex(featureIndex)
+                            .setLeftCount(splitLeftCount)
+                            .setRightCount(rightCount)
+                            .setReduction(reduction)
+                            .setThreshold(threshold)
+                            .setMissingDirection(direction);
+                }
+            }
+        }
+        if (best!=null && learnDirection && !hasMissing){
+            // no missing values seen; send future ones to the larger child
+            best.setMissingDirection(best.getLeftCount()>=best.getRightCount() ? DataPartition.LEFT : DataPartition.RIGHT);
+        }
+        if (logger.isDebugEnabled()){
+            logger.debug("best split of feature "+featureIndex+" = "+best);
+        }
+        return Optional.ofNullable(best);
+    }
+}
@@ -0,0 +1,214 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * sparse features that are never non-zero on the same data point, stored as one column of bundle bins
+ * bundle bin 0 means all member features are zero;
+ * bundle bins base[m] ... base[m]+numBins[m] are the bins (including the missing value bin) of member m
+ * only used to build histograms faster; splits and trees still refer to the original features
+ * Created by chengli on 5/24/17.
+ */
+class FeatureBundle implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * original feature indices of the members
+     */
+    private int[] features;
+    /**
+     * first bundle bin of each member
+     */
+    private int[] bases;
+    /**
+     * member of each bundle bin, -1 for bin 0
+     */
+    private int[] binMembers;
+    private boolean dense;
+    /**
+     * dense layout: bundle bin of each data point, unsigned
+     */
+    private short[] bins;
+    /**
+     * sparse layout: data points with a non-zero member, sorted, and their bundle bins
+     */
+    private int[] rows;
+    private short[] entryBins;
+
+    /**
+     *
+     * @param features member feature indices
+     * @param columns binned columns of members
+     * @param numDataPoints
+     */
+    FeatureBundle(int[] features, BinnedColumn.SparseColumn[] columns, int numDataPoints) {
+        this.features = features;
+        int numMembers = features.length;
+        this.bases = new int[numMembers];
+        int numBundleBins = 1;
+        for (int m=0;m<numMembers;m++){
+            bases[m] = numBundleBins;
+            numBundleBins += columns[m].getNumBins()+1;
+        }
+        this.binMembers = new int[numBundleBins];
+        binMembers[0] = -1;
+        for (int m=0;m<numMembers;m++){
+            Arrays.fill(binMembers, bases[m], bases[m]+columns[m].getNumBins()+1, m);
+        }
+
+        int numEntries = 0;
+        for (BinnedColumn.SparseColumn column: columns){
+            numEntries += column.getRows().length;
+        }
+        long[] packed = new long[numEntries];
+        int cursor = 0;
+        for (int m=0;m<numMembers;m++){
+            int[] memberRows = columns[m].getRows();
+            for (int e=0;e<memberRows.length;e++){
+                packed[cursor] = ((long)memberRows[e] << 16) | (bases[m]+columns[m].getEntryBin(e));
+                cursor += 1;
+            }
+        }
+        this.dense = numEntries >= BinnedColumn.MAX_SPARSE_DENSITY*numDataPoints;
+        if (dense){
+            this.bins = new short[numDataPoints];
+            for (long entry: packed){
+                bins[(int)(entry >>> 16)] = (short)(entry & 0xFFFF);
+            }
+        } else {
+            Arrays.sort(packed);
+            this.rows = new int[numEntries];
+            this.entryBins = new short[numEntries];
+            for (int e=0;e<numEntries;e++){
+                rows[e] = (int)(packed[e] >>> 16);
+                entryBins[e] = (short)(packed[e] & 0xFFFF);
+            }
+        }
+    }
+
+    int[] getFeatures() {
+        return features;
+    }
+
+    private int getBundleBin(int dataPoint){
+        if (dense){
+            return bins[dataPoint] & 0xFFFF;
+        }
+        int position = Arrays.binarySearch(rows, dataPoint);
+        if (position<0){
+            return 0;
+        }
+        return entryBins[position] & 0xFFFF;
+    }
+
+    /**
+     * accumulate statistics of data points reaching the node into the histograms of all members
+     * statistics of zeros of each member are derived from the node statistics
+     */
+    void fillHistogram(BinnedDataSet binnedDataSet, DataPartition partition, Node node, double[] labels,
+                       Histogram histogram, Splitter.GlobalStats globalStats){
+        int[] offsets = offsets(binnedDataSet);
+        int[] dataPoints = partition.getDataPoints();
+        double[] weights = partition.getWeights();
+        double[] hessians = partition.getHessians();
+        int numFull = node.getEnd()-node.getBegin();
+        boolean lookUp = dense;
+        if (!dense){
+            int searchCost = 32 - Integer.numberOfLeadingZeros(rows.length);
+            lookUp = (long)numFull*searchCost < rows.length;
+        }
+        if (lookUp){
+            for (int k=node.getBegin();k<node.getEnd();k++){
+                int i = dataPoints[k];
+                addEntry(getBundleBin(i), i, weights[i], labels, hessians, offsets, histogram);
+            }
+        } else {
+            int[] owners = partition.getOwners();
+            int nodeId = node.getId();
+            for (int e=0;e<rows.length;e++){
+                int i = rows[e];
+                if (owners[i]==nodeId){
+                    addEntry(entryBins[e] & 0xFFFF, i, weights[i], labels, hessians, offsets, histogram);
+                }
+            }
+        }
+        fillFractional(partition, node, labels, offsets, histogram);
+        fillZeros(binnedDataSet, offsets, histogram, globalStats);
+    }
+
+    /**
+     * level-wise growth: accumulate statistics of several leaves of the same tree in one task over the bundle
+     * large sparse nodes share one scan of the non-zero entries
+     * @param slots position of each node id in nodes, -1 for other nodes
+     */
+    void fillHistograms(BinnedDataSet binnedDataSet, DataPartition partition, Node[] nodes, int[] slots,
+                        double[] labels, Histogram[] histograms, Splitter.GlobalStats[] globalStats){
+        int numNodes = nodes.length;
+        long numFull = 0;
+        for (Node node: nodes){
+            numFull += node.getEnd()-node.getBegin();
+        }
+        if (dense || numFull*(32 - Integer.numberOfLeadingZeros(rows.length)) < rows.length){
+            // node ranges are sorted, so visiting them one after another reads the bundle in order
+            for (int s=0;s<numNodes;s++){
+                fillHistogram(binnedDataSet, partition, nodes[s], labels, histograms[s], globalStats[s]);
+            }
+            return;
+        }
+        int[] offsets = offsets(binnedDataSet);
+        int[] owners = partition.getOwners();
+        double[] weights = partition.getWeights();
+        double[] hessians = partition.getHessians();
+        for (int e=0;e<rows.length;e++){
+            int i = rows[e];
+            int owner = owners[i];
+            if (owner>=0 && slots[owner]>=0){
+                addEntry(entryBins[e] & 0xFFFF, i, weights[i], labels, hessians, offsets, histograms[slots[owner]]);
+            }
+        }
+        for (int s=0;s<numNodes;s++){
+            fillFractional(partition, nodes[s], labels, offsets, histograms[s]);
+            fillZeros(binnedDataSet, offsets, histograms[s], globalStats[s]);
+        }
+    }
+
+    private int[] offsets(BinnedDataSet binnedDataSet){
+        int[] offsets = new int[features.length];
+        for (int m=0;m<features.length;m++){
+            offsets[m] = binnedDataSet.getBinOffset(features[m]);
+        }
+        return offsets;
+    }
+
+    private void fillFractional(DataPartition partition, Node node, double[] labels, int[] offsets,
+                                Histogram histogram){
+        double[] hessians = partition.getHessians();
+        int[] fractionalDataPoints = node.getFractionalDataPoints();
+        double[] fractionalProbs = node.getFractionalProbs();
+        for (int k=0;k<fractionalDataPoints.length;k++){
+            int i = fractionalDataPoints[k];
+            addEntry(getBundleBin(i), i, fractionalProbs[k], labels, hessians, offsets, histogram);
+        }
+    }
+
+    /**
+     * zeros of each member get what is left of the node statistics
+     */
+    private void fillZeros(BinnedDataSet binnedDataSet, int[] offsets, Histogram histogram,
+                           Splitter.GlobalStats globalStats){
+        for (int m=0;m<features.length;m++){
+            BinnedColumn column = binnedDataSet.getColumn(features[m]);
+            histogram.fillRemainder(offsets[m], offsets[m]+column.getNumBins()+1, offsets[m]+column.findBin(0),
+                    globalStats);
+        }
+    }
+
+    private void addEntry(int bundleBin, int dataPoint, double prob, double[] labels, double[] hessians,
+                          int[] offsets, Histogram histogram){
+        if (bundleBin==0){
+            return;
+        }
+        int m = binMembers[bundleBin];
+        histogram.add(offsets[m]+bundleBin-bases[m], dataPoint, prob, labels, hessians);
+    }
+}
@@ -0,0 +1,78 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+
+/**
+ * features considered for splits while growing one tree
+ * features of a tree are sampled from all features, features of a level from those of the tree,
+ * and features of a node from those of its level
+ * samples are seeded by the config seed, the index of the tree, the depth and the node id,
+ * so that the same tree is grown regardless of thread scheduling
+ * Created by chengli on 5/25/17.
+ */
+class FeatureSampler {
+    private int[] treeFeatures;
+    private double levelRate;
+    private double nodeRate;
+    private long treeSeed;
+    private ConcurrentMap<Integer, int[]> levelFeatures = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param numFeatures
+     * @param treeIndex trees with different indices get different samples
+     */
+    FeatureSampler(RegTreeConfig regTreeConfig, int numFeatures, long treeIndex) {
+        this.levelRate = regTreeConfig.getFeatureSamplingRatePerLevel();
+        this.nodeRate = regTreeConfig.getFeatureSamplingRatePerNode();
+        this.treeSeed = regTreeConfig.getFeatureSamplingSeed() + 1000003L*treeIndex;
+        int[] allFeatures = IntStream.range(0, numFeatures).toArray();
+        this.treeFeatures = sample(allFeatures, regTreeConfig.getFeatureSamplingRatePerTree(), treeSeed);
+    }
+
+    /**
+     *
+     * @return sorted features of the tree; histograms are only built for them
+     */
+    int[] getTreeFeatures() {
+        return treeFeatures;
+    }
+
+    /**
+     *
+     * @param node
+     * @return sorted features to search for the split of the node
+     */
+    int[] getNodeFeatures(Node node){
+        int[] features = levelFeatures.computeIfAbsent(node.getDepth(),
+                depth -> sample(treeFeatures, levelRate, treeSeed*31+depth));
+        return sample(features, nodeRate, treeSeed*17+node.getId()+1000003L);
+    }
+
+    /**
+     * partial Fisher-Yates shuffle; use ceiling, so at least one feature is kept
+     * @return sorted sample; the input itself if rate is 1
+     */
+    static int[] sample(int[] features, double rate, long seed){
+        if (rate>=1 || features.length==0){
+            return features;
+        }
+        int sampleSize = (int)Math.ceil(rate*features.length);
+        int[] pool = features.clone();
+        Random random = new Random(seed);
+        for (int k=0;k<sampleSize;k++){
+            int swap = k + random.nextInt(pool.length-k);
+            int tmp = pool[k];
+            pool[k] = pool[swap];
+            pool[swap] = tmp;
+        }
+        int[] sample = Arrays.copyOf(pool, sampleSize);
+        Arrays.sort(sample);
+        return sample;
+    }
+}
@@ -0,0 +1,12 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * order in which leaves are split
+ * LEAF_WISE: always split the leaf with the largest reduction
+ * LEVEL_WISE: split all splitable leaves of a level before going deeper;
+ * in HISTOGRAM split mode, histograms of a whole level are built in one task per column
+ * Created by chengli on 5/25/17.
+ */
+public enum GrowthPolicy {
+    LEAF_WISE, LEVEL_WISE
+}
@@ -0,0 +1,121 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * per-bin statistics of all features at one node
+ * bins of feature j start at {@link BinnedDataSet#getBinOffset(int)};
+ * the last bin of each feature is reserved for missing values
+ * Created by chengli on 5/8/17.
+ */
+class Histogram {
+    // \sum _i p_i in each bin
+    double[] probabilisticCounts;
+    // \sum _i p_i * y_i in each bin
+    double[] weightedLabelSums;
+    // number of elements with non-zero probabilities in each bin
+    int[] binaryCounts;
+    // \sum _i p_i * h_i in each bin; only for second order training, otherwise null
+    double[] weightedHessianSums;
+
+    /**
+     *
+     * @param totalNumBins number of bins of all features, including missing value bins
+     */
+    Histogram(int totalNumBins) {
+        this(totalNumBins, false);
+    }
+
+    /**
+     *
+     * @param totalNumBins number of bins of all features, including missing value bins
+     * @param secondOrder whether to keep hessian sums
+     */
+    Histogram(int totalNumBins, boolean secondOrder) {
+        this.probabilisticCounts = new double[totalNumBins];
+        this.weightedLabelSums = new double[totalNumBins];
+        this.binaryCounts = new int[totalNumBins];
+        if (secondOrder){
+            this.weightedHessianSums = new double[totalNumBins];
+        }
+    }
+
+    boolean isSecondOrder(){
+        return weightedHessianSums!=null;
+    }
+
+    /**
+     *
+     * @param position
+     * @param dataPoint
+     * @param prob
+     * @param labels
+     * @param hessians only read for second order histograms
+     */
+    void add(int position, int dataPoint, double prob, double[] labels, double[] hessians){
+        probabilisticCounts[position] += prob;
+        weightedLabelSums[position] += prob*labels[dataPoint];
+        if (weightedHessianSums!=null){
+            weightedHessianSums[position] += prob*hessians[dataPoint];
+        }
+        binaryCounts[position] += 1;
+    }
+
+    /**
+     * the bin gets whatever statistics of the node are not in bins [begin, end) yet
+     * used for zeros of sparse columns, after all other data points are added
+     * @param begin first bin of the feature
+     * @param end end of the bins of the feature, exclusive
+     * @param bin
+     * @param globalStats statistics of the node
+     */
+    void fillRemainder(int begin, int end, int bin, Splitter.GlobalStats globalStats){
+        int binaryCount = globalStats.getBinaryCount();
+        for (int b=begin;b<end;b++){
+            binaryCount -= binaryCounts[b];
+        }
+        if (binaryCount<=0){
+            return;
+        }
+        double count = globalStats.getProbabilisticCount();
+        double sum = globalStats.getWeightedLabelSum();
+        double hessianSum = globalStats.getWeightedHessianSum();
+        for (int b=begin;b<end;b++){
+            count -= probabilisticCounts[b];
+            sum -= weightedLabelSums[b];
+            if (weightedHessianSums!=null){
+                hessianSum -= weightedHessianSums[b];
+            }
+        }
+        probabilisticCounts[bin] += count;
+        weightedLabelSums[bin] += sum;
+        if (weightedHessianSums!=null){
+            weightedHessianSums[bin] += hessianSum;
+        }
+        binaryCounts[bin] += binaryCount;
+    }
+
+    /**
+     * in place; used to derive the histogram of one child from the parent and the other child
+     * binary counts of data points going to both children need to be added back afterwards
+     * @param other
+     */
+    void subtract(Histogram other){
+        for (int b=0;b<probabilisticCounts.length;b++){
+            probabilisticCounts[b] -= other.probabilisticCounts[b];
+            weightedLabelSums[b] -= other.weightedLabelSums[b];
+            binaryCounts[b] -= other.binaryCounts[b];
+        }
+        if (weightedHessianSums!=null){
+            for (int b=0;b<weightedHessianSums.length;b++){
+                weightedHessianSums[b] -= other.weightedHessianSums[b];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Histogram{");
+        sb.append("totalNumBins=").append(probabilisticCounts.length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
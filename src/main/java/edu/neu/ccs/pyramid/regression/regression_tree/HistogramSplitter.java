@@ -0,0 +1,274 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * find the best split of one feature from its pre-computed bins
+ * missing values are handled in the same way as {@link IntervalSplitter}, or sent to a learned default direction
+ * Created by chengli on 5/8/17.
+ */
+class HistogramSplitter {
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * parallel by unbundled feature and by bundle
+     * @param binnedDataSet
+     * @param features sorted features whose histograms are needed; bundles containing them are filled entirely
+     * @param partition
+     * @param node
+     * @param labels
+     * @param globalStats
+     * @return histogram of the features at the node
+     */
+    static Histogram build(BinnedDataSet binnedDataSet,
+                           int[] features,
+                           DataPartition partition,
+                           Node node,
+                           double[] labels,
+                           Splitter.GlobalStats globalStats){
+        Histogram histogram = new Histogram(binnedDataSet.getTotalNumBins(), partition.isSecondOrder());
+        int numFeatures = binnedDataSet.getNumFeatures();
+        // units below numFeatures are features, the rest are bundles
+        Arrays.stream(units(binnedDataSet, features)).parallel()
+                .forEach(unit -> {
+                    if (unit>=numFeatures){
+                        binnedDataSet.getBundle(unit-numFeatures)
+                                .fillHistogram(binnedDataSet, partition, node, labels, histogram, globalStats);
+                    } else {
+                        binnedDataSet.getColumn(unit).fillHistogram(partition, node, labels, histogram,
+                                binnedDataSet.getBinOffset(unit), globalStats);
+                    }
+                });
+        return histogram;
+    }
+
+    /**
+     *
+     * @return unbundled features, and numFeatures + bundle index for bundles with at least one of the features
+     */
+    private static int[] units(BinnedDataSet binnedDataSet, int[] features){
+        int numFeatures = binnedDataSet.getNumFeatures();
+        boolean[] bundleUsed = new boolean[binnedDataSet.getNumBundles()];
+        int[] units = new int[features.length];
+        int numUnits = 0;
+        for (int featureIndex: features){
+            int bundleIndex = binnedDataSet.getBundleIndex(featureIndex);
+            if (bundleIndex==-1){
+                units[numUnits] = featureIndex;
+                numUnits += 1;
+            } else if (!bundleUsed[bundleIndex]){
+                bundleUsed[bundleIndex] = true;
+                units[numUnits] = numFeatures+bundleIndex;
+                numUnits += 1;
+            }
+        }
+        return Arrays.copyOf(units, numUnits);
+    }
+
+    /**
+     * level-wise growth: one task per column fills the histograms of all nodes
+     * parallel by unbundled feature and by bundle
+     * @param binnedDataSet
+     * @param features sorted features whose histograms are needed; bundles containing them are filled entirely
+     * @param partition
+     * @param nodes leaves of the same tree
+     * @param numNodeIds all node ids of the tree are below this value
+     * @param labels
+     * @param globalStats statistics of each node
+     * @return histograms of all features at each node
+     */
+    static Histogram[] build(BinnedDataSet binnedDataSet,
+                             int[] features,
+                             DataPartition partition,
+                             Node[] nodes,
+                             int numNodeIds,
+                             double[] labels,
+                             Splitter.GlobalStats[] globalStats){
+        Histogram[] histograms = new Histogram[nodes.length];
+        int[] slots = new int[numNodeIds];
+        Arrays.fill(slots, -1);
+        for (int s=0;s<nodes.length;s++){
+            histograms[s] = new Histogram(binnedDataSet.getTotalNumBins(), partition.isSecondOrder());
+            slots[nodes[s].getId()] = s;
+        }
+        int numFeatures = binnedDataSet.getNumFeatures();
+        Arrays.stream(units(binnedDataSet, features)).parallel()
+                .forEach(unit -> {
+                    if (unit>=numFeatures){
+                        binnedDataSet.getBundle(unit-numFeatures).fillHistograms(binnedDataSet, partition, nodes,
+                                slots, labels, histograms, globalStats);
+                    } else {
+                        binnedDataSet.getColumn(unit).fillHistograms(partition, nodes, slots, labels, histograms,
+                                binnedDataSet.getBinOffset(unit), globalStats);
+                    }
+                });
+        return histograms;
+    }
+
+    /**
+     * after subtraction, data points going to both children are missing from the binary counts
+     * @param binnedDataSet
+     * @param features features whose histograms are needed
+     * @param dataPoints data points going to both children
+     * @param histogram
+     */
+    static void addBinaryCounts(BinnedDataSet binnedDataSet,
+                                int[] features,
+                                int[] dataPoints,
+                                Histogram histogram){
+        if (dataPoints.length==0){
+            return;
+        }
+        Arrays.stream(features).parallel()
+                .forEach(featureIndex -> binnedDataSet.getColumn(featureIndex)
+                        .addBinaryCounts(dataPoints, histogram, binnedDataSet.getBinOffset(featureIndex)));
+    }
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       BinnedDataSet binnedDataSet,
+                                       Histogram histogram,
+                                       int featureIndex,
+                                       Splitter.GlobalStats globalStats){
+        BinnedColumn column = binnedDataSet.getColumn(featureIndex);
+        if (column.getNumBins()<2){
+            return Optional.empty();
+        }
+        return findBest(regTreeConfig, column, histogram, binnedDataSet.getBinOffset(featureIndex),
+                featureIndex, globalStats);
+    }
+
+    /**
+     * first order: reduction of squared error, sum^2/count
+     * second order: regularized newton gain, T(sum)^2/(hessianSum+l2), where T soft-thresholds by l1
+     * missing values are either spread over present bins, or, with {@link MissingValuePolicy#DEFAULT_DIRECTION},
+     * tried on each side of every threshold; then present values can also all go left, and missing values right
+     */
+    static Optional<SplitResult> findBest(RegTreeConfig regTreeConfig,
+                                          BinnedColumn column,
+                                          Histogram histogram,
+                                          int offset,
+                                          int featureIndex,
+                                          Splitter.GlobalStats globalStats){
+        int numBins = column.getNumBins();
+        int nanBin = offset + column.getNanBin();
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        boolean secondOrder = histogram.isSecondOrder();
+        double l1 = secondOrder ? regTreeConfig.getL1Regularization() : 0;
+        double l2 = secondOrder ? regTreeConfig.getL2Regularization() : 0;
+        boolean learnDirection = regTreeConfig.getMissingValuePolicy()==MissingValuePolicy.DEFAULT_DIRECTION;
+        boolean hasMissing = histogram.binaryCounts[nanBin]>0;
+
+        double nanProbCount = histogram.probabilisticCounts[nanBin];
+        double nanWeightedLabelSum = histogram.weightedLabelSums[nanBin];
+        double nanHessianSum = secondOrder ? histogram.weightedHessianSums[nanBin] : 0;
+        // statistics of missing values that go to one side as a whole; zero if they are spread
+        double missingCount = learnDirection ? nanProbCount : 0;
+        double missingSum = learnDirection ? nanWeightedLabelSum : 0;
+        double missingDenominator = learnDirection ? (secondOrder ? nanHessianSum : nanProbCount) : 0;
+
+        // otherwise assign missing values to every present bin probabilistically
+        // conditional probability = percentage of probability mass in the bin
+        double spread = learnDirection ? 0 : 1;
+        double[] counts = new double[numBins];
+        double[] sums = new double[numBins];
+        // counts for first order, hessian sums for second order
+        double[] denominators = secondOrder ? new double[numBins] : counts;
+        double totalCount = missingCount;
+        double totalSum = missingSum;
+        double totalDenominator = missingDenominator;
+        int lastNonEmpty = -1;
+        for (int b=0;b<numBins;b++){
+            if (histogram.binaryCounts[offset+b]>0){
+                double count = histogram.probabilisticCounts[offset+b];
+                double percentage = spread*count/globalStats.getProbabilisticCount();
+                counts[b] = count + percentage*nanProbCount;
+                sums[b] = histogram.weightedLabelSums[offset+b] + percentage*nanWeightedLabelSum;
+                if (secondOrder){
+                    denominators[b] = histogram.weightedHessianSums[offset+b] + percentage*nanHessianSum;
+                }
+                totalCount += counts[b];
+                totalSum += sums[b];
+                totalDenominator += denominators[b];
+                lastNonEmpty = b;
+            }
+        }
+
+        int[] directions;
+        int lastThreshold = lastNonEmpty-1;
+        if (!learnDirection){
+            directions = new int[]{DataPartition.BOTH};
+        } else if (hasMissing){
+            directions = new int[]{DataPartition.LEFT, DataPartition.RIGHT};
+            lastThreshold = lastNonEmpty;
+        } else {
+            // fixed below
+            directions = new int[]{DataPartition.LEFT};
+        }
+
+        SplitResult best = null;
+        double leftCount = 0;
+        double leftSum = 0;
+        double leftDenominator = 0;
+        double totalScore = score(totalSum, totalDenominator, l1, l2);
+        for (int b=0;b<=lastThreshold;b++){
+            if (histogram.binaryCounts[offset+b]==0){
+                continue;
+            }
+            leftCount += counts[b];
+            leftSum += sums[b];
+            leftDenominator += denominators[b];
+            for (int direction: directions){
+                boolean missingLeft = (direction==DataPartition.LEFT);
+                if (b==lastNonEmpty && missingLeft){
+                    // nothing goes right
+                    continue;
+                }
+                double splitLeftCount = missingLeft ? leftCount + missingCount : leftCount;
+                double splitLeftSum = missingLeft ? leftSum + missingSum : leftSum;
+                double splitLeftDenominator = missingLeft ? leftDenominator + missingDenominator : leftDenominator;
+                double rightCount = totalCount - splitLeftCount;
+                double rightSum = totalSum - splitLeftSum;
+                double rightDenominator = totalDenominator - splitLeftDenominator;
+                if (splitLeftCount<minDataPerLeaf || rightCount<minDataPerLeaf){
+                    continue;
+                }
+                if (splitLeftDenominator+l2<=0 || rightDenominator+l2<=0){
+                    continue;
+                }
+                double reduction = score(splitLeftSum, splitLeftDenominator, l1, l2)
+                        + score(rightSum, rightDenominator, l1, l2)
+                        - totalScore;
+                // with l1 or l2 regularization the gain can be negative; such a split makes the loss worse
+                if (reduction<=0){
+                    continue;
+                }
+                if (best==null || reduction>best.getReduction()){
+                    best = new SplitResult();
+                    best.setFeatureIndex(featureIndex)
+                            .setLeftCount(splitLeftCount)
+                            .setRightCount(rightCount)
+                            .setReduction(reduction)
+                            .setThreshold(column.getThreshold(b))
+                            .setMissingDirection(direction);
+                }
+            }
+        }
+        if (best!=null && learnDirection && !hasMissing){
+            // no missing values seen; send future ones to the larger child
+            best.setMissingDirection(best.getLeftCount()>=best.getRightCount() ? DataPartition.LEFT : DataPartition.RIGHT);
+        }
+        if (logger.isDebugEnabled()){
+            logger.debug("best split of feature "+featureIndex+" = "+best);
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private static double score(double sum, double denominator, double l1, double l2){
+        double shrunk = NewtonOutputCalculator.softThreshold(sum, l1);
+        return shrunk * shrunk / (denominator + l2);
+    }
+}
@@ -0,0 +1,86 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * which training data points fall into which leaves, as recorded by {@link RegTreeTrainer}
+ * predictions on the training set can be read from the leaves directly, without walking the tree again
+ * leaf values are read when predicting, so shrinkage applied after training is respected
+ * data points with zero weights are not recorded
+ * Created by chengli on 5/15/17.
+ */
+public class LeafAssignment {
+    private List<Node> leaves;
+    private double[] weights;
+    /**
+     * data points reaching each leaf with probability 1
+     */
+    private int[][] dataPoints;
+    /**
+     * data points reaching each leaf with probability < 1, due to missing values
+     */
+    private int[][] fractionalDataPoints;
+    private double[][] fractionalProbs;
+
+    LeafAssignment(List<Node> leaves, DataPartition partition) {
+        this.leaves = leaves;
+        this.weights = partition.getWeights();
+        int numLeaves = leaves.size();
+        this.dataPoints = new int[numLeaves][];
+        this.fractionalDataPoints = new int[numLeaves][];
+        this.fractionalProbs = new double[numLeaves][];
+        int[] buffer = partition.getDataPoints();
+        for (int l=0;l<numLeaves;l++){
+            Node leaf = leaves.get(l);
+            int[] full = new int[leaf.getEnd()-leaf.getBegin()];
+            System.arraycopy(buffer, leaf.getBegin(), full, 0, full.length);
+            dataPoints[l] = full;
+            int[] fractional = leaf.getFractionalDataPoints();
+            double[] probs = new double[fractional.length];
+            for (int k=0;k<fractional.length;k++){
+                // node probabilities carry data point weights
+                probs[k] = leaf.getFractionalProbs()[k]/weights[fractional[k]];
+            }
+            fractionalDataPoints[l] = fractional;
+            fractionalProbs[l] = probs;
+        }
+    }
+
+    public int getNumDataPoints(){
+        return weights.length;
+    }
+
+    /**
+     *
+     * @param dataPoint
+     * @return whether the data point is recorded
+     */
+    public boolean isAssigned(int dataPoint){
+        return weights[dataPoint]>0;
+    }
+
+    /**
+     * parallel by leaf for data points with full probabilities
+     * @return predictions of all training data points; 0 for data points not recorded
+     */
+    public double[] predict(){
+        double[] predictions = new double[weights.length];
+        IntStream.range(0, leaves.size()).parallel().forEach(l -> {
+            double value = leaves.get(l).getValue();
+            for (int i: dataPoints[l]){
+                predictions[i] = value;
+            }
+        });
+        // a data point with missing values may reach several leaves
+        for (int l=0;l<leaves.size();l++){
+            double value = leaves.get(l).getValue();
+            int[] fractional = fractionalDataPoints[l];
+            double[] probs = fractionalProbs[l];
+            for (int k=0;k<fractional.length;k++){
+                predictions[fractional[k]] += probs[k]*value;
+            }
+        }
+        return predictions;
+    }
+}
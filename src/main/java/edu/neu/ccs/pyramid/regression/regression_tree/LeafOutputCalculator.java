@@ -14,4 +14,20 @@ public interface LeafOutputCalculator {
      * @return output of the leaf node
      */
     double getLeafOutput(double[] probabilities, double[] labels);
+
+    /**
+     * same as {@link #getLeafOutput(double[], double[])},
+     * but only data points reaching the leaf are given
+     * @param dataPoints indices of data points with non-zero probabilities at the leaf
+     * @param probabilities probabilities of these data points, in the same order
+     * @param labels labels of all data points
+     * @return output of the leaf node
+     */
+    default double getLeafOutput(int[] dataPoints, double[] probabilities, double[] labels){
+        double[] denseProbabilities = new double[labels.length];
+        for (int k=0;k<dataPoints.length;k++){
+            denseProbabilities[dataPoints[k]] = probabilities[k];
+        }
+        return getLeafOutput(denseProbabilities, labels);
+    }
 }
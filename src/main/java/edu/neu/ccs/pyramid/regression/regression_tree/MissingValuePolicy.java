@@ -0,0 +1,14 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * how splits treat data points whose split feature is missing
+ * PROBABILISTIC: go to both children, with probabilities proportional to the present data in each child;
+ * a prediction may reach several leaves
+ * DEFAULT_DIRECTION: go to one child, learned for each split during split search;
+ * a prediction follows a single path from the root to a leaf
+ * DEFAULT_DIRECTION is only used in HISTOGRAM and EXACT split modes
+ * Created by chengli on 5/27/17.
+ */
+public enum MissingValuePolicy {
+    PROBABILISTIC, DEFAULT_DIRECTION
+}
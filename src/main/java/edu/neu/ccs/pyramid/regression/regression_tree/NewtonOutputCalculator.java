@@ -0,0 +1,61 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * leaf output = one regularized newton step, T(sum_i p_i g_i)/(sum_i p_i h_i + l2)
+ * where g are the labels the tree is fit to (negative gradients), h are the hessians,
+ * and T soft-thresholds by l1
+ * used by second order training, see {@link RegTreeTrainer}
+ * Created by chengli on 5/26/17.
+ */
+class NewtonOutputCalculator implements LeafOutputCalculator {
+    private double[] hessians;
+    private double l1;
+    private double l2;
+
+    NewtonOutputCalculator(double[] hessians, double l1, double l2) {
+        this.hessians = hessians;
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    @Override
+    public double getLeafOutput(double[] probabilities, double[] labels) {
+        double sum = 0;
+        double hessianSum = 0;
+        for (int i=0;i<probabilities.length;i++){
+            sum += probabilities[i]*labels[i];
+            hessianSum += probabilities[i]*hessians[i];
+        }
+        return output(sum, hessianSum);
+    }
+
+    @Override
+    public double getLeafOutput(int[] dataPoints, double[] probabilities, double[] labels) {
+        double sum = 0;
+        double hessianSum = 0;
+        for (int k=0;k<dataPoints.length;k++){
+            int i = dataPoints[k];
+            sum += probabilities[k]*labels[i];
+            hessianSum += probabilities[k]*hessians[i];
+        }
+        return output(sum, hessianSum);
+    }
+
+    private double output(double sum, double hessianSum){
+        double denominator = hessianSum + l2;
+        if (denominator<=0){
+            return 0;
+        }
+        return softThreshold(sum, l1)/denominator;
+    }
+
+    static double softThreshold(double value, double threshold){
+        if (value>threshold){
+            return value-threshold;
+        }
+        if (value<-threshold){
+            return value+threshold;
+        }
+        return 0;
+    }
+}
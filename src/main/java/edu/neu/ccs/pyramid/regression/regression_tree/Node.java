@@ -35,6 +35,7 @@ public class Node implements Serializable {
     /**
      * for missing values
      * the probability of falling into the left child
+     * a learned default direction is a probability of 1 for one child and 0 for the other
      */
     private double leftProb;
     /**
@@ -44,8 +45,27 @@ public class Node implements Serializable {
     private double rightProb;
 
 
-    //todo this should be transient? maybe doesn't matter as it is cleaned
-    private double[] probs;
+    /**
+     * only used during training, see {@link DataPartition}
+     * data points with full weights are in [begin, end) of the shared index buffer
+     */
+    private transient int begin;
+    private transient int end;
+    /**
+     * data points reaching the node with fractional probabilities due to missing values
+     */
+    private transient int[] fractionalDataPoints;
+    private transient double[] fractionalProbs;
+
+    /**
+     * only used during training in HISTOGRAM split mode
+     * kept until the node is split or becomes a final leaf
+     */
+    private transient Histogram histogram;
+    /**
+     * only used during training; the root has depth 0
+     */
+    private transient int depth;
 
     boolean isSplitable() {
         return splitable;
@@ -98,12 +118,31 @@ public class Node implements Serializable {
         return this;
     }
 
-    double[] getProbs() {
-        return probs;
+    int getBegin() {
+        return begin;
     }
 
-    Node setProbs(double[] probs) {
-        this.probs = probs;
+    int getEnd() {
+        return end;
+    }
+
+    Node setRange(int begin, int end) {
+        this.begin = begin;
+        this.end = end;
+        return this;
+    }
+
+    int[] getFractionalDataPoints() {
+        return fractionalDataPoints;
+    }
+
+    double[] getFractionalProbs() {
+        return fractionalProbs;
+    }
+
+    Node setFractional(int[] fractionalDataPoints, double[] fractionalProbs) {
+        this.fractionalDataPoints = fractionalDataPoints;
+        this.fractionalProbs = fractionalProbs;
         return this;
     }
 
@@ -145,8 +184,34 @@ public class Node implements Serializable {
     /**
      * after split, free memory
      */
-    void clearProbs(){
-        this.probs=null;
+    void clearFractional(){
+        this.fractionalDataPoints=null;
+        this.fractionalProbs=null;
+    }
+
+    Histogram getHistogram() {
+        return histogram;
+    }
+
+    Node setHistogram(Histogram histogram) {
+        this.histogram = histogram;
+        return this;
+    }
+
+    /**
+     * after split, free memory
+     */
+    void clearHistogram(){
+        this.histogram=null;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    Node setDepth(int depth) {
+        this.depth = depth;
+        return this;
     }
 
     double getLeftProb() {
@@ -165,6 +230,21 @@ public class Node implements Serializable {
         this.rightProb = rightProb;
     }
 
+    /**
+     *
+     * @return where data points with missing values go: {@link DataPartition#LEFT}, {@link DataPartition#RIGHT},
+     * or {@link DataPartition#BOTH} following leftProb and rightProb
+     */
+    int getMissingDirection(){
+        if (rightProb==0){
+            return DataPartition.LEFT;
+        }
+        if (leftProb==0){
+            return DataPartition.RIGHT;
+        }
+        return DataPartition.BOTH;
+    }
+
     int getId() {
         return id;
     }
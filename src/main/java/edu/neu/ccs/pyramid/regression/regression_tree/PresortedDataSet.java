@@ -0,0 +1,126 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * per-feature structures for exact split finding, built once and shared by all trees trained on the same data set
+ * a feature with few distinct values gets one bin per distinct value, and splits are found by counting;
+ * other features keep their rows sorted by value, and splits are found by scanning the sorted rows
+ * both give exact best splits
+ * Created by chengli on 5/19/17.
+ */
+public class PresortedDataSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * features with at most this many distinct values (including zero) are handled by counting
+     */
+    public static final int MAX_COUNTING_CARDINALITY = 1024;
+    private int numDataPoints;
+    private int numFeatures;
+    /**
+     * exactly one of the two is non-null for each feature
+     */
+    private BinnedColumn[] countingColumns;
+    private SortedColumn[] sortedColumns;
+
+    private PresortedDataSet() {
+    }
+
+    /**
+     * parallel by feature
+     * @param dataSet
+     * @return
+     */
+    public static PresortedDataSet build(DataSet dataSet){
+        PresortedDataSet presortedDataSet = new PresortedDataSet();
+        int numDataPoints = dataSet.getNumDataPoints();
+        presortedDataSet.numDataPoints = numDataPoints;
+        presortedDataSet.numFeatures = dataSet.getNumFeatures();
+        presortedDataSet.countingColumns = new BinnedColumn[dataSet.getNumFeatures()];
+        presortedDataSet.sortedColumns = new SortedColumn[dataSet.getNumFeatures()];
+        IntStream.range(0, dataSet.getNumFeatures()).parallel().forEach(j -> {
+            Vector column = dataSet.getColumn(j);
+            if (cardinality(column, numDataPoints)<=MAX_COUNTING_CARDINALITY){
+                presortedDataSet.countingColumns[j] = BinnedColumn.build(column, numDataPoints,
+                        MAX_COUNTING_CARDINALITY);
+            } else {
+                presortedDataSet.sortedColumns[j] = SortedColumn.build(column);
+            }
+        });
+        return presortedDataSet;
+    }
+
+    /**
+     *
+     * @return number of distinct present values, including zero; stops counting after MAX_COUNTING_CARDINALITY
+     */
+    private static int cardinality(Vector column, int numDataPoints){
+        int numEntries = 0;
+        for (Vector.Element element: column.nonZeroes()){
+            numEntries += 1;
+        }
+        double[] values = new double[numEntries];
+        int cursor = 0;
+        for (Vector.Element element: column.nonZeroes()){
+            if (!Double.isNaN(element.get())){
+                values[cursor] = element.get();
+                cursor += 1;
+            }
+        }
+        double[] present = Arrays.copyOf(values, cursor);
+        Arrays.sort(present);
+        int numDistinct = (numEntries<numDataPoints) ? 1 : 0;
+        for (int e=0;e<present.length && numDistinct<=MAX_COUNTING_CARDINALITY;e++){
+            if (e==0 || present[e]!=present[e-1]){
+                numDistinct += 1;
+            }
+        }
+        return numDistinct;
+    }
+
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     *
+     * @param featureIndex
+     * @return whether the feature is handled by counting rather than scanning sorted rows
+     */
+    public boolean isCounting(int featureIndex){
+        return countingColumns[featureIndex]!=null;
+    }
+
+    BinnedColumn getCountingColumn(int featureIndex){
+        return countingColumns[featureIndex];
+    }
+
+    SortedColumn getSortedColumn(int featureIndex){
+        return sortedColumns[featureIndex];
+    }
+
+    @Override
+    public String toString() {
+        int numCounting = 0;
+        for (BinnedColumn column: countingColumns){
+            if (column!=null){
+                numCounting += 1;
+            }
+        }
+        final StringBuilder sb = new StringBuilder("PresortedDataSet{");
+        sb.append("numDataPoints=").append(numDataPoints);
+        sb.append(", numFeatures=").append(numFeatures);
+        sb.append(", numCountingFeatures=").append(numCounting);
+        sb.append('}');
+        return sb.toString();
+    }
+}
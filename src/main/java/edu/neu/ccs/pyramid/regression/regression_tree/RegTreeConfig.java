@@ -8,6 +8,18 @@ public class RegTreeConfig {
     private int maxNumLeaves=2;
     private int minDataPerLeaf=0;
     private int randomLevel=1;
+    private SplitMode splitMode=SplitMode.INTERVAL;
+    private int maxNumBins=BinnedDataSet.DEFAULT_MAX_NUM_BINS;
+    private boolean bundleFeatures=false;
+    private GrowthPolicy growthPolicy=GrowthPolicy.LEAF_WISE;
+    private MissingValuePolicy missingValuePolicy=MissingValuePolicy.PROBABILISTIC;
+    private int maxDepth=Integer.MAX_VALUE;
+    private double featureSamplingRatePerTree=1;
+    private double featureSamplingRatePerLevel=1;
+    private double featureSamplingRatePerNode=1;
+    private long featureSamplingSeed=0;
+    private double l1Regularization=0;
+    private double l2Regularization=1;
 
     public RegTreeConfig setMaxNumLeaves(int maxNumLeaves) {
         this.maxNumLeaves = maxNumLeaves;
@@ -36,6 +48,138 @@ public class RegTreeConfig {
         return this;
     }
 
+    public RegTreeConfig setSplitMode(SplitMode splitMode) {
+        this.splitMode = splitMode;
+        return this;
+    }
+
+    /**
+     * only used in HISTOGRAM split mode
+     * @param maxNumBins
+     * @return
+     */
+    public RegTreeConfig setMaxNumBins(int maxNumBins) {
+        if (maxNumBins<2 || maxNumBins>=0xFFFF){
+            throw new IllegalArgumentException("maxNumBins should be between 2 and 65534");
+        }
+        this.maxNumBins = maxNumBins;
+        return this;
+    }
+
+    /**
+     * only used in HISTOGRAM split mode
+     * @param bundleFeatures whether to bundle mutually exclusive sparse features
+     * @return
+     */
+    public RegTreeConfig setBundleFeatures(boolean bundleFeatures) {
+        this.bundleFeatures = bundleFeatures;
+        return this;
+    }
+
+    public RegTreeConfig setGrowthPolicy(GrowthPolicy growthPolicy) {
+        this.growthPolicy = growthPolicy;
+        return this;
+    }
+
+    /**
+     * only used in HISTOGRAM and EXACT split modes; INTERVAL split mode is always probabilistic
+     * @param missingValuePolicy
+     * @return
+     */
+    public RegTreeConfig setMissingValuePolicy(MissingValuePolicy missingValuePolicy) {
+        this.missingValuePolicy = missingValuePolicy;
+        return this;
+    }
+
+    /**
+     * applies to both growth policies; the root has depth 0
+     * @param maxDepth
+     * @return
+     */
+    public RegTreeConfig setMaxDepth(int maxDepth) {
+        if (maxDepth<1){
+            throw new IllegalArgumentException("max depth should be at least 1");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * fraction of features considered by each tree
+     * in HISTOGRAM split mode, histograms are only built for these features
+     * @param featureSamplingRatePerTree
+     * @return
+     */
+    public RegTreeConfig setFeatureSamplingRatePerTree(double featureSamplingRatePerTree) {
+        checkRate(featureSamplingRatePerTree);
+        this.featureSamplingRatePerTree = featureSamplingRatePerTree;
+        return this;
+    }
+
+    /**
+     * fraction of the features of the tree considered at each depth
+     * @param featureSamplingRatePerLevel
+     * @return
+     */
+    public RegTreeConfig setFeatureSamplingRatePerLevel(double featureSamplingRatePerLevel) {
+        checkRate(featureSamplingRatePerLevel);
+        this.featureSamplingRatePerLevel = featureSamplingRatePerLevel;
+        return this;
+    }
+
+    /**
+     * fraction of the features of the level considered at each node
+     * @param featureSamplingRatePerNode
+     * @return
+     */
+    public RegTreeConfig setFeatureSamplingRatePerNode(double featureSamplingRatePerNode) {
+        checkRate(featureSamplingRatePerNode);
+        this.featureSamplingRatePerNode = featureSamplingRatePerNode;
+        return this;
+    }
+
+    /**
+     * trees trained with the same seed on the same labels and weights get the same features
+     * @param featureSamplingSeed
+     * @return
+     */
+    public RegTreeConfig setFeatureSamplingSeed(long featureSamplingSeed) {
+        this.featureSamplingSeed = featureSamplingSeed;
+        return this;
+    }
+
+    /**
+     * only used by second order training: soft-thresholds gradient sums in split gains and leaf outputs
+     * @param l1Regularization
+     * @return
+     */
+    public RegTreeConfig setL1Regularization(double l1Regularization) {
+        if (l1Regularization<0){
+            throw new IllegalArgumentException("l1 regularization should be non-negative");
+        }
+        this.l1Regularization = l1Regularization;
+        return this;
+    }
+
+    /**
+     * only used by second order training: added to hessian sums in split gains and leaf outputs
+     * @param l2Regularization
+     * @return
+     */
+    public RegTreeConfig setL2Regularization(double l2Regularization) {
+        if (l2Regularization<0){
+            throw new IllegalArgumentException("l2 regularization should be non-negative");
+        }
+        this.l2Regularization = l2Regularization;
+        return this;
+    }
+
+    private static void checkRate(double rate){
+        if (rate<=0 || rate>1){
+            throw new IllegalArgumentException("feature sampling rate should be in (0,1]");
+        }
+    }
+
     int getMaxNumLeaves() {
         return maxNumLeaves;
     }
@@ -55,4 +199,52 @@ public class RegTreeConfig {
         return randomLevel;
     }
 
+    SplitMode getSplitMode() {
+        return splitMode;
+    }
+
+    int getMaxNumBins() {
+        return maxNumBins;
+    }
+
+    boolean isBundleFeatures() {
+        return bundleFeatures;
+    }
+
+    GrowthPolicy getGrowthPolicy() {
+        return growthPolicy;
+    }
+
+    MissingValuePolicy getMissingValuePolicy() {
+        return missingValuePolicy;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    double getFeatureSamplingRatePerTree() {
+        return featureSamplingRatePerTree;
+    }
+
+    double getFeatureSamplingRatePerLevel() {
+        return featureSamplingRatePerLevel;
+    }
+
+    double getFeatureSamplingRatePerNode() {
+        return featureSamplingRatePerNode;
+    }
+
+    long getFeatureSamplingSeed() {
+        return featureSamplingSeed;
+    }
+
+    double getL1Regularization() {
+        return l1Regularization;
+    }
+
+    double getL2Regularization() {
+        return l2Regularization;
+    }
+
 }
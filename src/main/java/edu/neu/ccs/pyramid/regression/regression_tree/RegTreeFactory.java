@@ -4,12 +4,29 @@ import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.RegressorFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by chengli on 7/5/15.
  */
 public class RegTreeFactory implements RegressorFactory {
     private RegTreeConfig regTreeConfig;
     private LeafOutputCalculator leafOutputCalculator;
+    /**
+     * in HISTOGRAM split mode, the binned version of the last data set seen,
+     * so that binning is done only once for all trees trained on the same data set
+     */
+    private DataSet binnedSource;
+    private BinnedDataSet binnedDataSet;
+    /**
+     * in EXACT split mode, the presorted version of the last data set seen
+     */
+    private DataSet presortedSource;
+    private PresortedDataSet presortedDataSet;
+    /**
+     * trees fit without an explicit index take the next value, see {@link #fit(DataSet, double[], double[], boolean, long)}
+     */
+    private AtomicLong numFits = new AtomicLong();
 
     public RegTreeFactory(RegTreeConfig regTreeConfig) {
         this.regTreeConfig = regTreeConfig;
@@ -21,12 +38,95 @@ public class RegTreeFactory implements RegressorFactory {
     }
 
     @Override
-    public Regressor fit(DataSet dataSet, double[] labels) {
-        return RegTreeTrainer.fit(regTreeConfig,dataSet,labels,leafOutputCalculator);
+    public Regressor fit(DataSet dataSet, double[] labels, double[] weights) {
+        return fit(dataSet, labels, weights, false);
     }
 
-    @Override
-    public Regressor fit(DataSet dataSet, double[] labels, double[] weights) {
-        return RegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights, leafOutputCalculator);
+    /**
+     *
+     * @param recordTrainingLeafAssignment whether the tree keeps the leaves of its training data points, see
+     * {@link RegressionTree#getTrainingLeafAssignment()}; the assignment holds one int per data point
+     * until {@link RegressionTree#clearTrainingLeafAssignment()} is called
+     */
+    public RegressionTree fit(DataSet dataSet, double[] labels, double[] weights, boolean recordTrainingLeafAssignment) {
+        return fit(dataSet, labels, weights, recordTrainingLeafAssignment, numFits.getAndIncrement());
+    }
+
+    /**
+     *
+     * @param treeIndex seeds feature sampling together with the seed of the config;
+     *                  callers fitting trees concurrently pass their own index so that the trees are reproducible
+     */
+    public RegressionTree fit(DataSet dataSet, double[] labels, double[] weights, boolean recordTrainingLeafAssignment,
+                              long treeIndex) {
+        if (regTreeConfig.getSplitMode()==SplitMode.HISTOGRAM){
+            return RegTreeTrainer.fit(regTreeConfig,null,getBinnedDataSet(dataSet),null,labels,null,weights,
+                    leafOutputCalculator,recordTrainingLeafAssignment,treeIndex);
+        }
+        if (regTreeConfig.getSplitMode()==SplitMode.EXACT){
+            return RegTreeTrainer.fit(regTreeConfig,dataSet,null,getPresortedDataSet(dataSet),labels,null,weights,
+                    leafOutputCalculator,recordTrainingLeafAssignment,treeIndex);
+        }
+        return RegTreeTrainer.fit(regTreeConfig,dataSet,null,null,labels,null,weights,
+                leafOutputCalculator,recordTrainingLeafAssignment,treeIndex);
+    }
+
+    /**
+     * second order training; leaf outputs are regularized newton steps,
+     * and the leaf output calculator of the factory is not used
+     * @param dataSet
+     * @param negativeGradients
+     * @param hessians
+     * @param weights
+     * @return
+     */
+    public Regressor fit(DataSet dataSet, double[] negativeGradients, double[] hessians, double[] weights) {
+        return fit(dataSet, negativeGradients, hessians, weights, false);
+    }
+
+    /**
+     * second order training
+     * @param recordTrainingLeafAssignment see {@link #fit(DataSet, double[], double[], boolean)}
+     */
+    public RegressionTree fit(DataSet dataSet, double[] negativeGradients, double[] hessians, double[] weights,
+                              boolean recordTrainingLeafAssignment) {
+        return fit(dataSet, negativeGradients, hessians, weights, recordTrainingLeafAssignment,
+                numFits.getAndIncrement());
+    }
+
+    /**
+     * second order training
+     * @param treeIndex see {@link #fit(DataSet, double[], double[], boolean, long)}
+     */
+    public RegressionTree fit(DataSet dataSet, double[] negativeGradients, double[] hessians, double[] weights,
+                              boolean recordTrainingLeafAssignment, long treeIndex) {
+        LeafOutputCalculator newtonCalculator = RegTreeTrainer.newtonCalculator(regTreeConfig, hessians);
+        if (regTreeConfig.getSplitMode()==SplitMode.HISTOGRAM){
+            return RegTreeTrainer.fit(regTreeConfig,null,getBinnedDataSet(dataSet),null,negativeGradients,hessians,
+                    weights,newtonCalculator,recordTrainingLeafAssignment,treeIndex);
+        }
+        if (regTreeConfig.getSplitMode()==SplitMode.EXACT){
+            return RegTreeTrainer.fit(regTreeConfig,dataSet,null,getPresortedDataSet(dataSet),negativeGradients,
+                    hessians,weights,newtonCalculator,recordTrainingLeafAssignment,treeIndex);
+        }
+        return RegTreeTrainer.fit(regTreeConfig,dataSet,null,null,negativeGradients,hessians,weights,
+                newtonCalculator,recordTrainingLeafAssignment,treeIndex);
+    }
+
+    synchronized BinnedDataSet getBinnedDataSet(DataSet dataSet){
+        if (binnedSource!=dataSet){
+            binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getMaxNumBins(),
+                    regTreeConfig.isBundleFeatures());
+            binnedSource = dataSet;
+        }
+        return binnedDataSet;
+    }
+
+    synchronized PresortedDataSet getPresortedDataSet(DataSet dataSet){
+        if (presortedSource!=dataSet){
+            presortedDataSet = PresortedDataSet.build(dataSet);
+            presortedSource = dataSet;
+        }
+        return presortedDataSet;
     }
 }
@@ -2,11 +2,10 @@ package edu.neu.ccs.pyramid.regression.regression_tree;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
-import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.stream.Collectors;
 
 /**
  * Created by chengli on 8/11/14.
@@ -41,22 +40,156 @@ public class RegTreeTrainer {
                                      double[] labels,
                                      double[] weights,
                                      LeafOutputCalculator leafOutputCalculator){
+        if (regTreeConfig.getSplitMode()==SplitMode.HISTOGRAM){
+            // binning is expensive; to train many trees, build the binned data set once and use it directly
+            BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getMaxNumBins(),
+                    regTreeConfig.isBundleFeatures());
+            return fit(regTreeConfig, binnedDataSet, labels, weights, leafOutputCalculator);
+        }
+        if (regTreeConfig.getSplitMode()==SplitMode.EXACT){
+            // sorting is expensive; to train many trees, build the presorted data set once and use it directly
+            PresortedDataSet presortedDataSet = PresortedDataSet.build(dataSet);
+            return fit(regTreeConfig, dataSet, presortedDataSet, labels, weights, leafOutputCalculator);
+        }
+        return fit(regTreeConfig, dataSet, null, null, labels, null, weights, leafOutputCalculator, false, 0);
+    }
+
+    /**
+     * HISTOGRAM split mode
+     * @param regTreeConfig
+     * @param binnedDataSet should be shared by all trees trained on the same data set
+     * @param labels
+     * @param weights
+     * @param leafOutputCalculator
+     * @return
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     BinnedDataSet binnedDataSet,
+                                     double[] labels,
+                                     double[] weights,
+                                     LeafOutputCalculator leafOutputCalculator){
+        return fit(regTreeConfig, null, binnedDataSet, null, labels, null, weights, leafOutputCalculator, false, 0);
+    }
+
+    /**
+     * EXACT split mode
+     * @param regTreeConfig
+     * @param dataSet
+     * @param presortedDataSet built from dataSet; should be shared by all trees trained on the same data set
+     * @param labels
+     * @param weights
+     * @param leafOutputCalculator
+     * @return
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     DataSet dataSet,
+                                     PresortedDataSet presortedDataSet,
+                                     double[] labels,
+                                     double[] weights,
+                                     LeafOutputCalculator leafOutputCalculator){
+        return fit(regTreeConfig, dataSet, null, presortedDataSet, labels, null, weights, leafOutputCalculator,
+                false, 0);
+    }
+
+    /**
+     * second order training
+     * the tree is fit to negative gradients; each leaf outputs one regularized newton step
+     * in HISTOGRAM split mode, splits maximize the regularized newton gain;
+     * INTERVAL and EXACT split modes search splits by squared error
+     * @param regTreeConfig
+     * @param dataSet
+     * @param negativeGradients
+     * @param hessians second derivatives of the loss, non-negative
+     * @param weights
+     * @return
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     DataSet dataSet,
+                                     double[] negativeGradients,
+                                     double[] hessians,
+                                     double[] weights){
+        if (regTreeConfig.getSplitMode()==SplitMode.HISTOGRAM){
+            BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, regTreeConfig.getMaxNumBins(),
+                    regTreeConfig.isBundleFeatures());
+            return fit(regTreeConfig, binnedDataSet, negativeGradients, hessians, weights);
+        }
+        if (regTreeConfig.getSplitMode()==SplitMode.EXACT){
+            PresortedDataSet presortedDataSet = PresortedDataSet.build(dataSet);
+            return fit(regTreeConfig, dataSet, presortedDataSet, negativeGradients, hessians, weights);
+        }
+        return fit(regTreeConfig, dataSet, null, null, negativeGradients, hessians, weights,
+                newtonCalculator(regTreeConfig, hessians), false, 0);
+    }
+
+    /**
+     * second order training, HISTOGRAM split mode
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     BinnedDataSet binnedDataSet,
+                                     double[] negativeGradients,
+                                     double[] hessians,
+                                     double[] weights){
+        return fit(regTreeConfig, null, binnedDataSet, null, negativeGradients, hessians, weights,
+                newtonCalculator(regTreeConfig, hessians), false, 0);
+    }
+
+    /**
+     * second order training, EXACT split mode
+     */
+    public static RegressionTree fit(RegTreeConfig regTreeConfig,
+                                     DataSet dataSet,
+                                     PresortedDataSet presortedDataSet,
+                                     double[] negativeGradients,
+                                     double[] hessians,
+                                     double[] weights){
+        return fit(regTreeConfig, dataSet, null, presortedDataSet, negativeGradients, hessians, weights,
+                newtonCalculator(regTreeConfig, hessians), false, 0);
+    }
+
+    static LeafOutputCalculator newtonCalculator(RegTreeConfig regTreeConfig, double[] hessians){
+        return new NewtonOutputCalculator(hessians, regTreeConfig.getL1Regularization(),
+                regTreeConfig.getL2Regularization());
+    }
+
+    /**
+     * INTERVAL split mode uses dataSet only; HISTOGRAM uses binnedDataSet only;
+     * EXACT uses dataSet and presortedDataSet
+     * @param hessians null for first order training
+     * @param recordLeafAssignment whether the tree keeps the leaves of the training data points,
+     *                             see {@link RegressionTree#getTrainingLeafAssignment()}
+     * @param treeIndex seeds feature sampling together with the config seed, see {@link FeatureSampler}
+     */
+    static RegressionTree fit(RegTreeConfig regTreeConfig,
+                              DataSet dataSet,
+                              BinnedDataSet binnedDataSet,
+                              PresortedDataSet presortedDataSet,
+                              double[] labels,
+                              double[] hessians,
+                              double[] weights,
+                              LeafOutputCalculator leafOutputCalculator,
+                              boolean recordLeafAssignment,
+                              long treeIndex){
+        int numDataPoints = labels.length;
         RegressionTree tree = new RegressionTree();
-        tree.setFeatureList(dataSet.getFeatureList());
+        if (binnedDataSet!=null){
+            tree.setFeatureList(binnedDataSet.getFeatureList());
+        } else {
+            tree.setFeatureList(dataSet.getFeatureList());
+        }
 
         tree.leaves = new ArrayList<>();
         tree.root = new Node();
         tree.root.setId(tree.numNodes);
+        tree.root.setDepth(0);
         tree.numNodes += 1;
 
         //root gets all active data points
-        double[] rootProbs = new double[dataSet.getNumDataPoints()];
-        for (int dataPoint=0; dataPoint<dataSet.getNumDataPoints();dataPoint++){
-            rootProbs[dataPoint]=weights[dataPoint];
-        }
-        tree.root.setProbs(rootProbs);
+        DataPartition partition = new DataPartition(weights, hessians);
+        partition.assignRoot(tree.root);
+        int numFeatures = (binnedDataSet!=null) ? binnedDataSet.getNumFeatures() : dataSet.getNumFeatures();
+        FeatureSampler sampler = new FeatureSampler(regTreeConfig,numFeatures,treeIndex);
         //parallel
-        updateNode(tree.root, regTreeConfig,dataSet,labels);
+        updateNode(tree.root, regTreeConfig,dataSet,binnedDataSet,presortedDataSet,partition,sampler,labels);
         tree.leaves.add(tree.root);
         tree.root.setLeaf(true);
 
@@ -64,24 +197,31 @@ public class RegTreeTrainer {
         /**
          * grow the tree
          */
-        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
-        while (tree.leaves.size()<maxNumLeaves) {
-            /**
-             *find the splitable node which gives the max reduction once split
-             */
-            Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
-            if (leafToSplitOptional.isPresent()){
-                Node leafToSplit = leafToSplitOptional.get();
-                splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels);
-            } else {
-                break;
+        if (regTreeConfig.getGrowthPolicy()==GrowthPolicy.LEVEL_WISE){
+            growLevelWise(tree,regTreeConfig,dataSet,binnedDataSet,presortedDataSet,partition,sampler,labels);
+        } else {
+            int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+            while (tree.leaves.size()<maxNumLeaves) {
+                /**
+                 *find the splitable node which gives the max reduction once split
+                 */
+                Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
+                if (leafToSplitOptional.isPresent()){
+                    Node leafToSplit = leafToSplitOptional.get();
+                    splitNode(tree, leafToSplit,regTreeConfig,dataSet,binnedDataSet,presortedDataSet,partition,sampler,labels);
+                } else {
+                    break;
+                }
             }
         }
 
         //parallel
-        setLeavesOutputs(tree.leaves,leafOutputCalculator, labels);
+        setLeavesOutputs(tree.leaves,leafOutputCalculator,partition,labels);
+        if (recordLeafAssignment){
+            tree.setTrainingLeafAssignment(new LeafAssignment(tree.leaves,partition));
+        }
         cleanLeaves(tree.leaves);
-        normalizeReductions(tree,dataSet);
+        normalizeReductions(tree,numDataPoints);
         return tree;
     }
 
@@ -101,65 +241,131 @@ public class RegTreeTrainer {
      * @param dataSet
      */
     private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
-                                  DataSet dataSet, double[] labels) {
-        int numDataPoints = dataSet.getNumDataPoints();
-
-        /**
-         * split this leaf node
-         */
-        int featureIndex = leafToSplit.getFeatureIndex();
-        double threshold = leafToSplit.getThreshold();
-        Vector inputVector = dataSet.getColumn(featureIndex);
-        Vector columnVector;
-        if (inputVector.isDense()){
-            columnVector = inputVector;
-        } else {
-            columnVector = new DenseVector(inputVector);
-        }
+                                  DataSet dataSet, BinnedDataSet binnedDataSet,
+                                  PresortedDataSet presortedDataSet, DataPartition partition,
+                                  FeatureSampler sampler, double[] labels) {
         /**
          * create children
          */
-        Node leftChild = new Node();
-        leftChild.setId(tree.numNodes);
-        tree.numNodes += 1;
-        Node rightChild = new Node();
-        rightChild.setId(tree.numNodes);
-        tree.numNodes += 1;
-
-        double[] parentProbs = leafToSplit.getProbs();
-        double[] leftProbs = new double[numDataPoints];
-        double[] rightProbs = new double[numDataPoints];
-        IntStream.range(0,numDataPoints).parallel().forEach(i->{
-            double featureValue = columnVector.get(i);
-            if (Double.isNaN(featureValue)){
-                // go to both branches probabilistically
-                leftProbs[i] = parentProbs[i]*leafToSplit.getLeftProb();
-                rightProbs[i] = parentProbs[i]*leafToSplit.getRightProb();
-            } else {
-                //<= go left, > go right
-                if (featureValue<=threshold){
-                    leftProbs[i] = parentProbs[i];
-                    rightProbs[i] = 0;
-                } else {
-                    leftProbs[i] = 0;
-                    rightProbs[i] = parentProbs[i];
-                }
-            }
-        });
+        Node leftChild = createChild(tree, leafToSplit);
+        Node rightChild = createChild(tree, leafToSplit);
 
-        leftChild.setProbs(leftProbs);
-        rightChild.setProbs(rightProbs);
+        int[] shared = partitionNode(leafToSplit, leftChild, rightChild, dataSet, binnedDataSet, partition);
 
 
         //the last two leaves need not to be updated completely
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
-        if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels);
-            updateNode(rightChild,regTreeConfig,dataSet,labels);
+        if (tree.leaves.size()!=maxNumLeaves-1 && leafToSplit.getDepth()+1<regTreeConfig.getMaxDepth()){
+            if (binnedDataSet!=null){
+                subtractHistograms(leafToSplit,leftChild,rightChild,shared,binnedDataSet,partition,
+                        sampler.getTreeFeatures(),labels);
+            }
+            updateNode(leftChild,regTreeConfig,dataSet,binnedDataSet,presortedDataSet,partition,sampler,labels);
+            updateNode(rightChild,regTreeConfig,dataSet,binnedDataSet,presortedDataSet,partition,sampler,labels);
+        }
+
+        replaceLeaf(tree, leafToSplit, leftChild, rightChild);
+    }
+
+    /**
+     * LEVEL_WISE growth policy
+     * split all splitable leaves of a level, those with larger reductions first, until running out of leaves;
+     * then update all children of the level together
+     */
+    private static void growLevelWise(RegressionTree tree, RegTreeConfig regTreeConfig,
+                                      DataSet dataSet, BinnedDataSet binnedDataSet,
+                                      PresortedDataSet presortedDataSet, DataPartition partition,
+                                      FeatureSampler sampler, double[] labels){
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        int maxDepth = regTreeConfig.getMaxDepth();
+        List<Node> level = new ArrayList<>();
+        level.add(tree.root);
+        while (tree.leaves.size()<maxNumLeaves){
+            // each split adds one leaf
+            List<Node> parents = level.stream().filter(Node::isSplitable)
+                    .sorted(Comparator.comparing(Node::getReduction).reversed())
+                    .limit(maxNumLeaves-tree.leaves.size())
+                    .collect(Collectors.toList());
+            if (parents.isEmpty()){
+                break;
+            }
+            List<Node> children = new ArrayList<>(2*parents.size());
+            List<int[]> shareds = new ArrayList<>(parents.size());
+            for (Node parent: parents){
+                Node leftChild = createChild(tree, parent);
+                Node rightChild = createChild(tree, parent);
+                shareds.add(partitionNode(parent, leftChild, rightChild, dataSet, binnedDataSet, partition));
+                children.add(leftChild);
+                children.add(rightChild);
+            }
+
+            // children of the last level need not to be updated
+            boolean growMore = tree.leaves.size()+parents.size()<maxNumLeaves
+                    && parents.get(0).getDepth()+1<maxDepth;
+            if (growMore){
+                if (binnedDataSet!=null){
+                    subtractHistograms(tree,parents,children,shareds,binnedDataSet,partition,
+                            sampler.getTreeFeatures(),labels);
+                }
+                //parallel by node, and by feature within each node
+                children.parallelStream().forEach(child -> updateNode(child,regTreeConfig,dataSet,binnedDataSet,
+                        presortedDataSet,partition,sampler,labels));
+            }
+
+            for (int p=0;p<parents.size();p++){
+                replaceLeaf(tree, parents.get(p), children.get(2*p), children.get(2*p+1));
+            }
+            level = children;
         }
+    }
+
+    private static Node createChild(RegressionTree tree, Node parent){
+        Node child = new Node();
+        child.setId(tree.numNodes);
+        child.setDepth(parent.getDepth()+1);
+        tree.numNodes += 1;
+        return child;
+    }
 
+    /**
+     * move data points of the node to its children according to its split
+     * @return data points that go to both children
+     */
+    private static int[] partitionNode(Node leafToSplit, Node leftChild, Node rightChild,
+                                       DataSet dataSet, BinnedDataSet binnedDataSet, DataPartition partition){
+        int featureIndex = leafToSplit.getFeatureIndex();
+        double threshold = leafToSplit.getThreshold();
+        // BOTH unless the split learned a default direction
+        int missingDirection = leafToSplit.getMissingDirection();
+        DataPartition.Router router;
+        if (binnedDataSet!=null){
+            BinnedColumn column = binnedDataSet.getColumn(featureIndex);
+            int nanBin = column.getNanBin();
+            int thresholdBin = column.findBin(threshold);
+            router = i -> {
+                int bin = column.getBin(i);
+                if (bin==nanBin){
+                    return missingDirection;
+                }
+                return bin<=thresholdBin ? DataPartition.LEFT : DataPartition.RIGHT;
+            };
+        } else {
+            Vector column = dataSet.getColumn(featureIndex);
+            router = i -> {
+                double featureValue = column.get(i);
+                if (Double.isNaN(featureValue)){
+                    // go to both branches probabilistically, or to the default branch
+                    return missingDirection;
+                }
+                //<= go left, > go right
+                return featureValue<=threshold ? DataPartition.LEFT : DataPartition.RIGHT;
+            };
+        }
+        return partition.split(leafToSplit, leftChild, rightChild, router);
+    }
 
+    private static void replaceLeaf(RegressionTree tree, Node leafToSplit, Node leftChild, Node rightChild){
         /**
          * link left and right child to the parent
          */
@@ -170,7 +376,8 @@ public class RegTreeTrainer {
          * update leaves, remove the parent, and add children
          */
         leafToSplit.setLeaf(false);
-        leafToSplit.clearProbs();
+        leafToSplit.clearFractional();
+        leafToSplit.clearHistogram();
         tree.leaves.remove(leafToSplit);
         leftChild.setLeaf(true);
         rightChild.setLeaf(true);
@@ -180,34 +387,133 @@ public class RegTreeTrainer {
 
     /**
      * parallel
-     * given probs, fill other information
+     * given the data points of the node, fill other information
      * @param node
      */
     private static void updateNode(Node node,
                                    RegTreeConfig regTreeConfig,
                                    DataSet dataSet,
+                                   BinnedDataSet binnedDataSet,
+                                   PresortedDataSet presortedDataSet,
+                                   DataPartition partition,
+                                   FeatureSampler sampler,
                                    double[] labels) {
-        Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,
-                dataSet,labels,node.getProbs());
+        if (node.getDepth()>=regTreeConfig.getMaxDepth()){
+            node.setSplitable(false);
+            node.clearHistogram();
+            return;
+        }
+        Optional<SplitResult> splitResultOptional;
+        int[] features = sampler.getNodeFeatures(node);
+        if (binnedDataSet!=null){
+            Splitter.GlobalStats globalStats = new Splitter.GlobalStats(partition,node,labels);
+            if (node.getHistogram()==null){
+                node.setHistogram(HistogramSplitter.build(binnedDataSet,sampler.getTreeFeatures(),partition,node,
+                        labels,globalStats));
+            }
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    binnedDataSet,node.getHistogram(),globalStats,features);
+        } else if (presortedDataSet!=null){
+            Splitter.GlobalStats globalStats = new Splitter.GlobalStats(partition,node,labels);
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    dataSet,presortedDataSet,partition,node,labels,globalStats,features);
+        } else {
+            // interval splitters work on full-length probabilities; they are not kept by the node
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    dataSet,labels,partition.getDenseProbs(node),features);
+        }
         if (splitResultOptional.isPresent()){
             SplitResult splitResult = splitResultOptional.get();
             node.setFeatureIndex(splitResult.getFeatureIndex());
             node.setThreshold(splitResult.getThreshold());
             node.setReduction(splitResult.getReduction());
-            double leftCount = splitResult.getLeftCount();
-            double rightCount = splitResult.getRightCount();
-            double totalCount = leftCount + rightCount;
-            node.setLeftProb(leftCount/totalCount);
-            node.setRightProb(rightCount/totalCount);
+            if (splitResult.getMissingDirection()==DataPartition.LEFT){
+                node.setLeftProb(1);
+                node.setRightProb(0);
+            } else if (splitResult.getMissingDirection()==DataPartition.RIGHT){
+                node.setLeftProb(0);
+                node.setRightProb(1);
+            } else {
+                double leftCount = splitResult.getLeftCount();
+                double rightCount = splitResult.getRightCount();
+                double totalCount = leftCount + rightCount;
+                node.setLeftProb(leftCount/totalCount);
+                node.setRightProb(rightCount/totalCount);
+            }
             node.setSplitable(true);
         } else{
             node.setSplitable(false);
+            node.clearHistogram();
+        }
+    }
+
+    /**
+     * HISTOGRAM split mode
+     * build the histogram only for the child with fewer data points,
+     * and derive the histogram of the other child as parent minus the smaller child
+     * the parent histogram is reused
+     */
+    private static void subtractHistograms(Node parent, Node leftChild, Node rightChild, int[] shared,
+                                           BinnedDataSet binnedDataSet, DataPartition partition,
+                                           int[] features, double[] labels){
+        Node smaller = smallerChild(leftChild,rightChild,partition);
+        Node larger = (smaller==leftChild) ? rightChild : leftChild;
+        Splitter.GlobalStats smallerStats = new Splitter.GlobalStats(partition,smaller,labels);
+        Histogram smallerHistogram = HistogramSplitter.build(binnedDataSet,features,partition,smaller,labels,
+                smallerStats);
+        deriveHistograms(parent,smaller,larger,smallerHistogram,shared,binnedDataSet,features);
+    }
+
+    /**
+     * HISTOGRAM split mode, LEVEL_WISE growth policy
+     * histograms of the smaller children of all parents are built in one task per column
+     * @param children left and right children of each parent, in order
+     * @param shareds data points going to both children of each parent
+     */
+    private static void subtractHistograms(RegressionTree tree, List<Node> parents, List<Node> children,
+                                           List<int[]> shareds, BinnedDataSet binnedDataSet,
+                                           DataPartition partition, int[] features, double[] labels){
+        int numParents = parents.size();
+        Node[] smallers = new Node[numParents];
+        Splitter.GlobalStats[] smallerStats = new Splitter.GlobalStats[numParents];
+        for (int p=0;p<numParents;p++){
+            smallers[p] = smallerChild(children.get(2*p),children.get(2*p+1),partition);
+            smallerStats[p] = new Splitter.GlobalStats(partition,smallers[p],labels);
         }
+        Histogram[] smallerHistograms = HistogramSplitter.build(binnedDataSet,features,partition,smallers,
+                tree.numNodes,labels,smallerStats);
+        for (int p=0;p<numParents;p++){
+            Node larger = (smallers[p]==children.get(2*p)) ? children.get(2*p+1) : children.get(2*p);
+            deriveHistograms(parents.get(p),smallers[p],larger,smallerHistograms[p],shareds.get(p),binnedDataSet,
+                    features);
+        }
+    }
+
+    private static Node smallerChild(Node leftChild, Node rightChild, DataPartition partition){
+        if (partition.getBinaryCount(leftChild)<=partition.getBinaryCount(rightChild)){
+            return leftChild;
+        }
+        return rightChild;
+    }
+
+    /**
+     * the parent histogram is reused for the larger child
+     */
+    private static void deriveHistograms(Node parent, Node smaller, Node larger, Histogram smallerHistogram,
+                                         int[] shared, BinnedDataSet binnedDataSet, int[] features){
+        Histogram largerHistogram = parent.getHistogram();
+        parent.clearHistogram();
+        largerHistogram.subtract(smallerHistogram);
+        // data points with missing values go to both children
+        HistogramSplitter.addBinaryCounts(binnedDataSet,features,shared,largerHistogram);
+        smaller.setHistogram(smallerHistogram);
+        larger.setHistogram(largerHistogram);
     }
 
     private static void cleanLeaves(List<Node> leaves){
         for (Node leaf: leaves){
-            leaf.clearProbs();
+            leaf.clearFractional();
+            leaf.clearHistogram();
         }
     }
 
@@ -215,14 +521,15 @@ public class RegTreeTrainer {
     /**
      * parallel
      */
-    private static void setLeavesOutputs(List<Node> leaves, LeafOutputCalculator calculator, double[] labels){
+    private static void setLeavesOutputs(List<Node> leaves, LeafOutputCalculator calculator,
+                                         DataPartition partition, double[] labels){
         leaves.parallelStream()
-                .forEach(leaf -> setLeafOutput(leaf, calculator, labels));
+                .forEach(leaf -> setLeafOutput(leaf, calculator, partition, labels));
     }
 
-    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator, double[] labels){
-        double[] probs = leaf.getProbs();
-        double output = calculator.getLeafOutput(probs, labels);
+    private static void setLeafOutput(Node leaf, LeafOutputCalculator calculator,
+                                      DataPartition partition, double[] labels){
+        double output = calculator.getLeafOutput(partition.getDataPoints(leaf), partition.getProbs(leaf), labels);
         leaf.setValue(output);
     }
 
@@ -237,8 +544,7 @@ public class RegTreeTrainer {
      * and make trees trained with different number of data comparable
      * @param tree
      */
-    private static void normalizeReductions(RegressionTree tree, DataSet dataSet){
-        int numDataPoints = dataSet.getNumDataPoints();
+    private static void normalizeReductions(RegressionTree tree, int numDataPoints){
         List<Node> nodes = tree.traverse();
         for (Node node: nodes){
             double oldReduction = node.getReduction();
@@ -30,6 +30,11 @@ public class RegressionTree implements Regressor, Serializable {
 
     private FeatureList featureList;
 
+    /**
+     * set by the trainer; not serialized
+     */
+    private transient LeafAssignment trainingLeafAssignment;
+
     protected RegressionTree() {
         this.numNodes = 0;
         this.leaves = new ArrayList<>();
@@ -80,12 +85,56 @@ public class RegressionTree implements Regressor, Serializable {
     }
 
 
+    /**
+     *
+     * only recorded when asked for, see {@link RegTreeFactory#fit(edu.neu.ccs.pyramid.dataset.DataSet, double[], double[], boolean)}
+     * @return leaves of training data points, or null if not available
+     */
+    public LeafAssignment getTrainingLeafAssignment() {
+        return trainingLeafAssignment;
+    }
+
+    void setTrainingLeafAssignment(LeafAssignment trainingLeafAssignment) {
+        this.trainingLeafAssignment = trainingLeafAssignment;
+    }
+
+    /**
+     * release memory once the training leaf assignment is consumed
+     */
+    public void clearTrainingLeafAssignment() {
+        this.trainingLeafAssignment = null;
+    }
+
     public Node getRoot() {
         return root;
     }
 
+    /**
+     * follows a single path from the root while feature values are present,
+     * or missing at splits with a default direction;
+     * only a missing value at a probabilistic split makes the prediction visit every leaf
+     * @param vector
+     * @return
+     */
     @Override
     public double predict(Vector vector){
+        Node node = root;
+        while (!node.isLeaf()){
+            double featureValue = vector.get(node.getFeatureIndex());
+            if (Double.isNaN(featureValue)){
+                int direction = node.getMissingDirection();
+                if (direction==DataPartition.BOTH){
+                    return predictProbabilistically(vector);
+                }
+                node = (direction==DataPartition.LEFT) ? node.getLeftChild() : node.getRightChild();
+            } else {
+                node = (featureValue<=node.getThreshold()) ? node.getLeftChild() : node.getRightChild();
+            }
+        }
+        return node.getValue();
+    }
+
+    private double predictProbabilistically(Vector vector){
         // use as a simple cache
         int numNodes = this.numNodes;
         boolean[] calculated = new boolean[numNodes];
@@ -0,0 +1,79 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * one feature column with non-zero present values sorted in increasing order
+ * zeros are not stored; missing values are kept separately
+ * Created by chengli on 5/19/17.
+ */
+class SortedColumn implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * data points with non-zero present values, sorted by value
+     */
+    private int[] sortedRows;
+    private double[] sortedValues;
+    /**
+     * data points with missing values
+     */
+    private int[] nanRows;
+
+    int[] getSortedRows() {
+        return sortedRows;
+    }
+
+    double[] getSortedValues() {
+        return sortedValues;
+    }
+
+    int[] getNanRows() {
+        return nanRows;
+    }
+
+    static SortedColumn build(Vector featureValues){
+        int numEntries = 0;
+        int numNans = 0;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            if (Double.isNaN(element.get())){
+                numNans += 1;
+            } else {
+                numEntries += 1;
+            }
+        }
+        int[] rows = new int[numEntries];
+        double[] values = new double[numEntries];
+        int[] nanRows = new int[numNans];
+        int cursor = 0;
+        int nanCursor = 0;
+        for (Vector.Element element: featureValues.nonZeroes()){
+            double value = element.get();
+            if (Double.isNaN(value)){
+                nanRows[nanCursor] = element.index();
+                nanCursor += 1;
+            } else {
+                rows[cursor] = element.index();
+                values[cursor] = value;
+                cursor += 1;
+            }
+        }
+        Integer[] order = new Integer[numEntries];
+        for (int e=0;e<numEntries;e++){
+            order[e] = e;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        SortedColumn column = new SortedColumn();
+        column.sortedRows = new int[numEntries];
+        column.sortedValues = new double[numEntries];
+        for (int e=0;e<numEntries;e++){
+            column.sortedRows[e] = rows[order[e]];
+            column.sortedValues[e] = values[order[e]];
+        }
+        Arrays.sort(nanRows);
+        column.nanRows = nanRows;
+        return column;
+    }
+}
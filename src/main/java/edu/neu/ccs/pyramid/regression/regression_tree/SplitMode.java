@@ -0,0 +1,12 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+/**
+ * how candidate splits are generated at each node
+ * INTERVAL: equal-width intervals between the min and max feature values at the node
+ * HISTOGRAM: quantile bins computed once per data set, see {@link BinnedDataSet}
+ * EXACT: all mid points between adjacent distinct values, see {@link PresortedDataSet}
+ * Created by chengli on 5/8/17.
+ */
+public enum SplitMode {
+    INTERVAL, HISTOGRAM, EXACT
+}
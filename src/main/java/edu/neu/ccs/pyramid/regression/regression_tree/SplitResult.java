@@ -9,6 +9,11 @@ public class SplitResult {
     private double reduction;
     private double leftCount;
     private double rightCount;
+    /**
+     * where data points with missing values go: {@link DataPartition#LEFT}, {@link DataPartition#RIGHT},
+     * or {@link DataPartition#BOTH} with probabilities proportional to leftCount and rightCount
+     */
+    private int missingDirection = DataPartition.BOTH;
 
     SplitResult() {
     }
@@ -48,6 +53,14 @@ public class SplitResult {
         return this;
     }
 
+    int getMissingDirection() {
+        return missingDirection;
+    }
+
+    SplitResult setMissingDirection(int missingDirection) {
+        this.missingDirection = missingDirection;
+        return this;
+    }
 
     public int getFeatureIndex() {
         return featureIndex;
@@ -69,6 +82,7 @@ public class SplitResult {
                 ", reduction=" + reduction +
                 ", leftCount=" + leftCount +
                 ", rightCount=" + rightCount +
+                ", missingDirection=" + missingDirection +
                 '}';
     }
 }
@@ -28,6 +28,21 @@ public class Splitter {
                                        DataSet dataSet,
                                        double[] labels,
                                        double[] probs){
+        return split(regTreeConfig, dataSet, labels, probs, IntStream.range(0, dataSet.getNumFeatures()).toArray());
+    }
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param probs
+     * @param features features to search
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[] labels,
+                                       double[] probs,
+                                       int[] features){
         GlobalStats globalStats = new GlobalStats(labels,probs);
         if (logger.isDebugEnabled()){
             logger.debug("global statistics = "+globalStats);
@@ -37,7 +52,7 @@ public class Splitter {
 
 
         // the list might be empty
-        List<SplitResult> splitResults = IntStream.range(0, dataSet.getNumFeatures())
+        List<SplitResult> splitResults = Arrays.stream(features)
                 .parallel()
                 .mapToObj(featureIndex -> split(regTreeConfig, dataSet, labels,
                         probs, featureIndex, globalStats))
@@ -58,6 +73,78 @@ public class Splitter {
     }
 
 
+    /**
+     * HISTOGRAM split mode
+     * @param regTreeConfig
+     * @param binnedDataSet
+     * @param histogram histogram of the node
+     * @param globalStats statistics of the node
+     * @param features features to search
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       BinnedDataSet binnedDataSet,
+                                       Histogram histogram,
+                                       GlobalStats globalStats,
+                                       int[] features){
+        if (logger.isDebugEnabled()){
+            logger.debug("global statistics = "+globalStats);
+        }
+
+        int randomLevel = regTreeConfig.getRandomLevel();
+
+        List<SplitResult> splitResults = Arrays.stream(features)
+                .parallel()
+                .mapToObj(featureIndex -> HistogramSplitter.split(regTreeConfig, binnedDataSet, histogram,
+                        featureIndex, globalStats))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .sorted(Comparator.comparing(SplitResult::getReduction).reversed())
+                .limit(randomLevel)
+                .collect(Collectors.toList());
+        return sample(splitResults);
+    }
+
+
+    /**
+     * EXACT split mode
+     * @param regTreeConfig
+     * @param dataSet
+     * @param presortedDataSet
+     * @param partition
+     * @param node
+     * @param labels
+     * @param globalStats statistics of the node
+     * @param features features to search
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       PresortedDataSet presortedDataSet,
+                                       DataPartition partition,
+                                       Node node,
+                                       double[] labels,
+                                       GlobalStats globalStats,
+                                       int[] features){
+        if (logger.isDebugEnabled()){
+            logger.debug("global statistics = "+globalStats);
+        }
+
+        int randomLevel = regTreeConfig.getRandomLevel();
+
+        List<SplitResult> splitResults = Arrays.stream(features)
+                .parallel()
+                .mapToObj(featureIndex -> ExactSplitter.split(regTreeConfig, presortedDataSet,
+                        dataSet.getColumn(featureIndex), partition, node, labels, featureIndex, globalStats))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .sorted(Comparator.comparing(SplitResult::getReduction).reversed())
+                .limit(randomLevel)
+                .collect(Collectors.toList());
+        return sample(splitResults);
+    }
+
+
 //    /**
 //     *
 //     * @param regTreeConfig
@@ -144,15 +231,17 @@ public class Splitter {
         return splitResult;
     }
 
-    static Optional<SplitResult> sample(List<SplitResult> splitResults){
+    /**
+     * sample a split with probability proportional to its reduction;
+     * splits that do not reduce the loss are never chosen
+     */
+    static Optional<SplitResult> sample(List<SplitResult> candidates){
+        List<SplitResult> splitResults = candidates.stream().filter(splitResult -> splitResult.getReduction()>0)
+                .collect(Collectors.toList());
         if (splitResults.size()==0){
             return Optional.empty();
         }
 
-        if (splitResults.get(0).getReduction()==0){
-            return Optional.empty();
-        }
-
         double total = splitResults.stream().mapToDouble(SplitResult::getReduction).sum();
         double[] probs = splitResults.stream().mapToDouble(splitResult -> splitResult.getReduction()/total)
                 .toArray();
@@ -169,6 +258,8 @@ public class Splitter {
         private double probabilisticCount;
         // number of elements with non-zero probabilities
         private int binaryCount;
+        // \sum _i p_i * h_i; only for second order training
+        private double weightedHessianSum;
 
         GlobalStats(double[] labels,
                     double[] probs) {
@@ -183,6 +274,37 @@ public class Splitter {
             }
         }
 
+        /**
+         * only visits data points reaching the node
+         */
+        GlobalStats(DataPartition partition,
+                    Node node,
+                    double[] labels) {
+            int[] dataPoints = partition.getDataPoints();
+            double[] weights = partition.getWeights();
+            double[] hessians = partition.getHessians();
+            for (int k=node.getBegin();k<node.getEnd();k++){
+                int i = dataPoints[k];
+                double prob = weights[i];
+                WeightedLabelSum += labels[i]*prob;
+                probabilisticCount += prob;
+                if (hessians!=null){
+                    weightedHessianSum += hessians[i]*prob;
+                }
+            }
+            int[] fractionalDataPoints = node.getFractionalDataPoints();
+            double[] fractionalProbs = node.getFractionalProbs();
+            for (int k=0;k<fractionalDataPoints.length;k++){
+                double prob = fractionalProbs[k];
+                WeightedLabelSum += labels[fractionalDataPoints[k]]*prob;
+                probabilisticCount += prob;
+                if (hessians!=null){
+                    weightedHessianSum += hessians[fractionalDataPoints[k]]*prob;
+                }
+            }
+            binaryCount = partition.getBinaryCount(node);
+        }
+
         public double getWeightedLabelSum() {
             return WeightedLabelSum;
         }
@@ -195,12 +317,17 @@ public class Splitter {
             return binaryCount;
         }
 
+        public double getWeightedHessianSum() {
+            return weightedHessianSum;
+        }
+
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder("GlobalStats{");
             sb.append("WeightedLabelSum=").append(WeightedLabelSum);
             sb.append(", probabilisticCount=").append(probabilisticCount);
             sb.append(", binaryCount=").append(binaryCount);
+            sb.append(", weightedHessianSum=").append(weightedHessianSum);
             sb.append('}');
             return sb.toString();
         }
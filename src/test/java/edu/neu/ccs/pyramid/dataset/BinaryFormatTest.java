@@ -0,0 +1,171 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.File;
+import java.util.Random;
+
+public class BinaryFormatTest {
+    private static final File TMP = new File(System.getProperty("java.io.tmpdir"));
+
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * round trip of each label type, with float and double values
+     */
+    static void test1() throws Exception{
+        Random random = new Random(1);
+        MultiLabelClfDataSet multiLabelClfDataSet = new SparseMLClfDataSet(1000, 20000, false, 10);
+        ClfDataSet clfDataSet = new SparseClfDataSet(1000, 20000, true, 5);
+        RegDataSet regDataSet = new DenseRegDataSet(200, 30, false);
+        for (int i=0;i<1000;i++){
+            for (int k=0;k<30;k++){
+                int feature = random.nextInt(20000);
+                multiLabelClfDataSet.setFeatureValue(i, feature, 1+random.nextInt(3));
+                clfDataSet.setFeatureValue(i, feature, random.nextDouble()<0.01 ? Double.NaN : random.nextGaussian());
+            }
+            multiLabelClfDataSet.addLabel(i, random.nextInt(10));
+            multiLabelClfDataSet.addLabel(i, random.nextInt(10));
+            clfDataSet.setLabel(i, random.nextInt(5));
+        }
+        for (int i=0;i<200;i++){
+            for (int j=0;j<30;j++){
+                regDataSet.setFeatureValue(i, j, random.nextGaussian());
+            }
+            regDataSet.setLabel(i, random.nextGaussian());
+        }
+        clfDataSet.setLabelTranslator(new LabelTranslator(new String[]{"a", "b", "c", "d", "e"}));
+
+        File file = new File(TMP, "binary_format_test.bin");
+        for (ColumnIndex columnIndex: ColumnIndex.values()){
+            BinaryFormat.save(multiLabelClfDataSet, file);
+            MultiLabelClfDataSet multiLabelLoaded = BinaryFormat.loadMultiLabelClfDataSet(file, columnIndex);
+            int numDifferences = countDifferences(multiLabelClfDataSet, multiLabelLoaded, columnIndex);
+            for (int i=0;i<multiLabelClfDataSet.getNumDataPoints();i++){
+                if (!multiLabelClfDataSet.getMultiLabels()[i].equals(multiLabelLoaded.getMultiLabels()[i])){
+                    numDifferences += 1;
+                }
+            }
+            System.out.println(columnIndex+" multi-label: number of differences = "+numDifferences);
+
+            BinaryFormat.save(clfDataSet, file);
+            ClfDataSet clfLoaded = BinaryFormat.loadClfDataSet(file, columnIndex);
+            numDifferences = countDifferences(clfDataSet, clfLoaded, columnIndex);
+            for (int i=0;i<clfDataSet.getNumDataPoints();i++){
+                if (clfDataSet.getLabels()[i]!=clfLoaded.getLabels()[i]){
+                    numDifferences += 1;
+                }
+            }
+            System.out.println(columnIndex+" classification: number of differences = "+numDifferences
+                    +", label translator = "+clfLoaded.getLabelTranslator());
+
+            BinaryFormat.save(regDataSet, file);
+            RegDataSet regLoaded = BinaryFormat.loadRegDataSet(file, columnIndex);
+            numDifferences = countDifferences(regDataSet, regLoaded, columnIndex);
+            for (int i=0;i<regDataSet.getNumDataPoints();i++){
+                if (regDataSet.getLabels()[i]!=regLoaded.getLabels()[i]){
+                    numDifferences += 1;
+                }
+            }
+            System.out.println(columnIndex+" regression: number of differences = "+numDifferences);
+        }
+        System.out.println(BinaryFormat.load(file.getAbsolutePath()).getMetaInfo());
+        file.delete();
+    }
+
+    /**
+     * a loaded data set saves to the same file
+     */
+    static void test2() throws Exception{
+        MultiLabelClfDataSet dataSet = ngrams(2000, 50000, 40, 2);
+        File file1 = new File(TMP, "binary_format_test1.bin");
+        File file2 = new File(TMP, "binary_format_test2.bin");
+        BinaryFormat.save(dataSet, file1);
+        BinaryFormat.save(BinaryFormat.loadMultiLabelClfDataSet(file1, ColumnIndex.LAZY), file2);
+        byte[] bytes1 = java.nio.file.Files.readAllBytes(file1.toPath());
+        byte[] bytes2 = java.nio.file.Files.readAllBytes(file2.toPath());
+        System.out.println("file size = "+bytes1.length+", same bytes = "+java.util.Arrays.equals(bytes1, bytes2));
+        file1.delete();
+        file2.delete();
+    }
+
+    /**
+     * TREC conversion and load time
+     */
+    static void test3() throws Exception{
+        MultiLabelClfDataSet dataSet = ngrams(20000, 200000, 60, 3);
+        File trecFile = new File(TMP, "binary_format_test.trec");
+        File binaryFile = new File(TMP, "binary_format_test.bin");
+        TRECFormat.save(dataSet, trecFile);
+        BinaryFormat.convertTREC(trecFile, DataSetType.ML_CLF_SPARSE, binaryFile);
+        for (int repeat=0;repeat<3;repeat++){
+            long start = System.currentTimeMillis();
+            MultiLabelClfDataSet trec = TRECFormat.loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_SPARSE, true);
+            long trecTime = System.currentTimeMillis()-start;
+            start = System.currentTimeMillis();
+            MultiLabelClfDataSet binary = BinaryFormat.loadMultiLabelClfDataSet(binaryFile, ColumnIndex.EAGER);
+            long binaryTime = System.currentTimeMillis()-start;
+            System.out.println("TREC load: "+trecTime+"ms, binary load: "+binaryTime
+                    +"ms, number of differences = "+countDifferences(trec, binary, ColumnIndex.EAGER));
+        }
+        binaryFile.delete();
+        for (File file: trecFile.listFiles()){
+            file.delete();
+        }
+        trecFile.delete();
+    }
+
+    private static MultiLabelClfDataSet ngrams(int numDataPoints, int numFeatures, int numNgrams, long seed){
+        Random random = new Random(seed);
+        MultiLabelClfDataSet dataSet = new SparseMLClfDataSet(numDataPoints, numFeatures, false, 10);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<numNgrams;k++){
+                int feature = (int)(numFeatures*Math.pow(random.nextDouble(), 3));
+                dataSet.setFeatureValue(i, feature, 1+random.nextInt(3));
+            }
+            dataSet.addLabel(i, random.nextInt(10));
+        }
+        return dataSet;
+    }
+
+    private static int countDifferences(DataSet expected, DataSet actual, ColumnIndex columnIndex){
+        int numDifferences = 0;
+        if (expected.getNumDataPoints()!=actual.getNumDataPoints() || expected.getNumFeatures()!=actual.getNumFeatures()
+                || expected.hasMissingValue()!=actual.hasMissingValue()){
+            return Integer.MAX_VALUE;
+        }
+        for (int i=0;i<expected.getNumDataPoints();i++){
+            numDifferences += countDifferences(expected.getRow(i), actual.getRow(i));
+        }
+        if (columnIndex!=ColumnIndex.NONE){
+            for (int j=0;j<expected.getNumFeatures();j++){
+                numDifferences += countDifferences(expected.getColumn(j), actual.getColumn(j));
+            }
+        }
+        if (!expected.getIdTranslator().toString().equals(actual.getIdTranslator().toString())){
+            numDifferences += 1;
+        }
+        if (expected.getFeatureList().size()!=actual.getFeatureList().size()){
+            numDifferences += 1;
+        }
+        return numDifferences;
+    }
+
+    private static int countDifferences(Vector expected, Vector actual){
+        int numDifferences = 0;
+        if (expected.getNumNonZeroElements()!=actual.getNumNonZeroElements()){
+            numDifferences += 1;
+        }
+        for (Vector.Element element: expected.nonZeroes()){
+            double value = actual.get(element.index());
+            if (value!=element.get() && !(Double.isNaN(value) && Double.isNaN(element.get()))){
+                numDifferences += 1;
+            }
+        }
+        return numDifferences;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class CompressedSparseDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * duplicates, zeros and updates
+     */
+    static void test1(){
+        int[] dataPoints = {1, 7, 1, 1, 3, 3};
+        int[] features = {4, 4, 3, 4, 0, 0};
+        double[] values = {-0.9, 18, -0.9, -60.9, 5, 0};
+        CompressedSparseDataSet dataSet = new CompressedSparseDataSet(10, 5, false, ColumnIndex.EAGER,
+                dataPoints, features, values, 6);
+        System.out.println(dataSet);
+        System.out.println(dataSet.getMetaInfo());
+        dataSet.setFeatureValue(7, 4, 0.5);
+        dataSet.setFeatureValue(2, 2, 0);
+        System.out.println("after update: row 7 = "+dataSet.getRow(7)+", column 4 = "+dataSet.getColumn(4));
+    }
+
+    /**
+     * same rows and columns as the sparse data set it is built from
+     */
+    static void test2(){
+        MultiLabelClfDataSet sparse = ngrams(2000, 50000, 40, 1);
+        CompressedSparseMLClfDataSet compressed = new CompressedSparseMLClfDataSet(sparse);
+        int numDifferences = 0;
+        for (int i=0;i<sparse.getNumDataPoints();i++){
+            numDifferences += countDifferences(sparse.getRow(i), compressed.getRow(i));
+            if (!sparse.getMultiLabels()[i].equals(compressed.getMultiLabels()[i])){
+                numDifferences += 1;
+            }
+        }
+        for (int j=0;j<sparse.getNumFeatures();j++){
+            numDifferences += countDifferences(sparse.getColumn(j), compressed.getColumn(j));
+        }
+        System.out.println("number of differences = "+numDifferences);
+        System.out.println(compressed.getMetaInfo());
+    }
+
+    /**
+     * memory and scan time
+     */
+    static void test3(){
+        int numDataPoints = 20000;
+        int numFeatures = 500000;
+        long before = usedMemory();
+        MultiLabelClfDataSet sparse = ngrams(numDataPoints, numFeatures, 60, 2);
+        long sparseMemory = usedMemory()-before;
+        before = usedMemory();
+        CompressedSparseMLClfDataSet compressed = new CompressedSparseMLClfDataSet(sparse);
+        long compressedMemory = usedMemory()-before;
+        System.out.println("sparse data set: "+sparseMemory/(1<<20)+"MB, compressed data set: "
+                +compressedMemory/(1<<20)+"MB");
+        for (int repeat=0;repeat<3;repeat++){
+            System.out.println("sparse scan: "+scan(sparse)+"ms, compressed scan: "+scan(compressed)+"ms");
+        }
+    }
+
+    private static MultiLabelClfDataSet ngrams(int numDataPoints, int numFeatures, int numNgrams, long seed){
+        Random random = new Random(seed);
+        MultiLabelClfDataSet dataSet = new SparseMLClfDataSet(numDataPoints, numFeatures, false, 10);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<numNgrams;k++){
+                // zipf-like feature frequencies, term counts as values
+                int feature = (int)(numFeatures*Math.pow(random.nextDouble(), 3));
+                dataSet.setFeatureValue(i, feature, 1+random.nextInt(3));
+            }
+            dataSet.addLabel(i, random.nextInt(10));
+        }
+        return dataSet;
+    }
+
+    private static int countDifferences(Vector expected, Vector actual){
+        int numDifferences = 0;
+        if (expected.getNumNonZeroElements()!=actual.getNumNonZeroElements()){
+            numDifferences += 1;
+        }
+        for (Vector.Element element: expected.nonZeroes()){
+            if (actual.get(element.index())!=element.get()){
+                numDifferences += 1;
+            }
+        }
+        return numDifferences;
+    }
+
+    private static long scan(DataSet dataSet){
+        long start = System.currentTimeMillis();
+        double sum = 0;
+        for (int j=0;j<dataSet.getNumFeatures();j++){
+            for (Vector.Element element: dataSet.getColumn(j).nonZeroes()){
+                sum += element.get();
+            }
+        }
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                sum += element.get();
+            }
+        }
+        if (sum<0){
+            System.out.println(sum);
+        }
+        return System.currentTimeMillis()-start;
+    }
+
+    private static long usedMemory(){
+        Runtime runtime = Runtime.getRuntime();
+        for (int k=0;k<3;k++){
+            System.gc();
+        }
+        return runtime.totalMemory()-runtime.freeMemory();
+    }
+}
@@ -0,0 +1,71 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class FeatureValueBufferTest {
+    public static void main(String[] args) {
+        test1();
+    }
+
+    /**
+     * loading features in parallel through the buffer gives the same data set as synchronized setFeatureValue
+     * the first rounds warm up the JIT; garbage is collected before each timing, so pauses are not charged to either
+     * a filled buffer is empty
+     */
+    static void test1(){
+        int numDataPoints = 20000;
+        int numFeatures = 50000;
+        for (Density density: new Density[]{Density.SPARSE_RANDOM, Density.SPARSE_SEQUENTIAL}){
+            for (int repeat=0;repeat<5;repeat++){
+                DataSet locked = DataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(numFeatures)
+                        .density(density).build();
+                System.gc();
+                long start = System.currentTimeMillis();
+                IntStream.range(0, numFeatures).parallel()
+                        .forEach(j -> loadFeature(j, numDataPoints, locked::setFeatureValue));
+                long lockedTime = System.currentTimeMillis()-start;
+
+                DataSet buffered = DataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(numFeatures)
+                        .density(density).build();
+                System.gc();
+                start = System.currentTimeMillis();
+                FeatureValueBuffer buffer = new FeatureValueBuffer(numDataPoints, numFeatures);
+                IntStream.range(0, numFeatures).parallel()
+                        .forEach(j -> loadFeature(j, numDataPoints, buffer::setFeatureValue));
+                buffer.fill(buffered);
+                long bufferedTime = System.currentTimeMillis()-start;
+
+                int numDifferences = 0;
+                for (int i=0;i<numDataPoints;i++){
+                    if (!locked.getRow(i).equals(buffered.getRow(i))){
+                        numDifferences += 1;
+                    }
+                }
+                for (int j=0;j<numFeatures;j++){
+                    if (!locked.getColumn(j).equals(buffered.getColumn(j))){
+                        numDifferences += 1;
+                    }
+                }
+                System.out.println(density+": synchronized "+lockedTime+"ms, buffered "+bufferedTime
+                        +"ms, number of differences = "+numDifferences+", values left in buffer = "+buffer.size());
+            }
+        }
+    }
+
+    /**
+     * zipf-like document frequencies; a few documents are set twice, the second value wins
+     */
+    private static void loadFeature(int feature, int numDataPoints, Setter setter){
+        Random random = new Random(feature);
+        int numMatches = (int)(numDataPoints*0.01/Math.sqrt(feature+1))+1;
+        for (int k=0;k<numMatches;k++){
+            int dataPoint = random.nextInt(numDataPoints);
+            setter.set(dataPoint, feature, 1+random.nextInt(5));
+        }
+    }
+
+    private interface Setter{
+        void set(int dataPointIndex, int featureIndex, double featureValue);
+    }
+}
@@ -5,17 +5,20 @@ import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.SparseColumnMatrix;
 import org.apache.mahout.math.Vector;
 
+import java.io.*;
+import java.util.Random;
 import java.util.stream.IntStream;
 
 public class SparseDataSetTest {
-    public static void main(String[] args) {
-        test5();
+    public static void main(String[] args) throws Exception {
+        test8();
 //        test2();
 //        test3();
 //        test4();
 //        test5();
 //        test6();
 //        test7();
+//        test5();
     }
 
     static void test1(){
@@ -90,4 +93,74 @@ public class SparseDataSetTest {
 
 
     }
-}
\ No newline at end of file
+
+    /**
+     * lazily built columns match eagerly maintained ones; memory and loading time of each column index
+     */
+    static void test8() throws Exception{
+        int numDataPoints = 20000;
+        int numFeatures = 200000;
+        for (ColumnIndex columnIndex: ColumnIndex.values()){
+            Runtime runtime = Runtime.getRuntime();
+            for (int k=0;k<3;k++){
+                System.gc();
+            }
+            long before = runtime.totalMemory()-runtime.freeMemory();
+            long start = System.currentTimeMillis();
+            SparseMLClfDataSet dataSet = ngrams(numDataPoints, numFeatures, columnIndex);
+            long loadTime = System.currentTimeMillis()-start;
+            for (int k=0;k<3;k++){
+                System.gc();
+            }
+            long memory = runtime.totalMemory()-runtime.freeMemory()-before;
+            System.out.println(columnIndex+": load "+loadTime+"ms, "+memory/(1<<20)+"MB");
+            if (columnIndex==ColumnIndex.NONE){
+                try {
+                    dataSet.getColumn(0);
+                    System.out.println("getColumn should fail");
+                } catch (UnsupportedOperationException e){
+                    System.out.println("getColumn fails as expected");
+                }
+                continue;
+            }
+            // serialized before columns are built, then columns are built from the deserialized rows
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)){
+                out.writeObject(dataSet);
+            }
+            SparseMLClfDataSet copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+                copy = (SparseMLClfDataSet) in.readObject();
+            }
+            start = System.currentTimeMillis();
+            dataSet.getColumn(0);
+            long indexTime = System.currentTimeMillis()-start;
+            SparseMLClfDataSet eager = ngrams(numDataPoints, numFeatures, ColumnIndex.EAGER);
+            int numDifferences = 0;
+            for (int j=0;j<numFeatures;j++){
+                if (!eager.getColumn(j).equals(dataSet.getColumn(j))){
+                    numDifferences += 1;
+                }
+                if (!eager.getColumn(j).equals(copy.getColumn(j))){
+                    numDifferences += 1;
+                }
+            }
+            dataSet.setFeatureValue(3, 7, 2.5);
+            if (dataSet.getColumn(7).get(3)!=2.5){
+                numDifferences += 1;
+            }
+            System.out.println("building columns: "+indexTime+"ms, number of different columns = "+numDifferences);
+        }
+    }
+
+    private static SparseMLClfDataSet ngrams(int numDataPoints, int numFeatures, ColumnIndex columnIndex){
+        Random random = new Random(1);
+        SparseMLClfDataSet dataSet = new SparseMLClfDataSet(numDataPoints, numFeatures, false, 5, columnIndex);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<50;k++){
+                dataSet.setFeatureValue(i, (int)(numFeatures*Math.pow(random.nextDouble(), 3)), 1+random.nextInt(3));
+            }
+        }
+        return dataSet;
+    }
+}
@@ -0,0 +1,224 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class TextMatrixParserTest {
+    private static final File TMP = new File(System.getProperty("java.io.tmpdir"));
+
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    /**
+     * fast double parsing gives the same bits as Double.parseDouble
+     */
+    static void test1(){
+        Random random = new Random(1);
+        int numDifferences = 0;
+        String[] special = {"0", "-0", "1.", ".5", "-.5e3", "1e22", "1e23", "9007199254740993", "123456789012345678901234",
+                "4.9E-324", "1.7976931348623157E308", "NaN", "-Infinity", "1.0d", "2.5f", "0x1p3", "1e-400", "+7"};
+        for (String text: special){
+            numDifferences += compare(text);
+        }
+        for (int k=0;k<1000000;k++){
+            String text;
+            switch (k%5){
+                case 0:
+                    text = Double.toString(random.nextGaussian());
+                    break;
+                case 1:
+                    text = Float.toString((float) random.nextGaussian());
+                    break;
+                case 2:
+                    text = Integer.toString(random.nextInt(1000)-500);
+                    break;
+                case 3:
+                    text = Double.toString(Double.longBitsToDouble(random.nextLong()));
+                    break;
+                default:
+                    text = String.format("%.6f", random.nextDouble()*1000);
+                    break;
+            }
+            numDifferences += compare(text);
+        }
+        System.out.println("parseDouble: number of differences = "+numDifferences);
+    }
+
+    /**
+     * TREC loaders give the same data sets as line-by-line parsing, including comments, empty lines,
+     * unlabeled rows, repeated spaces and a last line without line break
+     */
+    static void test2() throws Exception{
+        MultiLabelClfDataSet dataSet = ngrams(20000, 100000, 60, 2);
+        // saved with a leading space and no labels
+        dataSet.setLabels(1, new MultiLabel());
+        File trecFile = new File(TMP, "text_matrix_parser_test.trec");
+        TRECFormat.save(dataSet, trecFile);
+        for (int repeat=0;repeat<3;repeat++){
+            long start = System.currentTimeMillis();
+            MultiLabelClfDataSet reference = readLineByLine(new File(trecFile, "feature_matrix.txt"),
+                    dataSet.getNumDataPoints(), dataSet.getNumFeatures());
+            long referenceTime = System.currentTimeMillis()-start;
+            start = System.currentTimeMillis();
+            MultiLabelClfDataSet loaded = TRECFormat.loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_SPARSE, true);
+            long loadTime = System.currentTimeMillis()-start;
+            System.out.println("line by line: "+referenceTime+"ms, chunked: "+loadTime
+                    +"ms, number of differences = "+countDifferences(reference, loaded));
+        }
+        for (File file: trecFile.listFiles()){
+            file.delete();
+        }
+        trecFile.delete();
+
+        File libSvmFile = new File(TMP, "text_matrix_parser_test.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(libSvmFile))){
+            writer.write("2,3 1:0.5  4:-1.25e-3 # comment 7:1\n");
+            writer.write("\n");
+            writer.write(" 3:2\n");
+            writer.write("1\t2:3\r\n");
+            writer.write("3 5:1e400 3:7");
+        }
+        MultiLabelClfDataSet libSvm = LibSvmFormat.loadMultiLabelClfDataSet(libSvmFile.getAbsolutePath(), false, 5, 3);
+        System.out.println(libSvm);
+        libSvmFile.delete();
+    }
+
+    /**
+     * errors report the line; labels that should be integers are not truncated
+     */
+    static void test3() throws Exception{
+        File libSvmFile = new File(TMP, "text_matrix_parser_test.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(libSvmFile))){
+            writer.write("1 1:0.5\n");
+            writer.write("2 2:x\n");
+        }
+        try {
+            LibSvmFormat.loadRegDataSet(libSvmFile.getAbsolutePath(), 5, false);
+        } catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(libSvmFile))){
+            writer.write("1 1:0.5\n");
+            writer.write("1.7 2:1\n");
+        }
+        try {
+            LibSvmFormat.loadMultiLabelClfDataSet(libSvmFile.getAbsolutePath(), false, 5, 3);
+            System.out.println("label 1.7 should be rejected");
+        } catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+        libSvmFile.delete();
+    }
+
+    /**
+     * a file with \r\n line breaks gives the same data set as with \n line breaks
+     */
+    static void test4() throws Exception{
+        String[] lines = {"2,3 1:0.5  4:-1.25e-3 # comment 7:1", "", " 3:2", "1 # only a comment", "2",
+                "1\t2:3", "3 5:2 3:7"};
+        File lfFile = new File(TMP, "text_matrix_parser_test_lf.txt");
+        File crlfFile = new File(TMP, "text_matrix_parser_test_crlf.txt");
+        try (BufferedWriter lfWriter = new BufferedWriter(new FileWriter(lfFile));
+             BufferedWriter crlfWriter = new BufferedWriter(new FileWriter(crlfFile))){
+            for (int l=0;l<lines.length;l++){
+                lfWriter.write(lines[l]);
+                crlfWriter.write(lines[l]);
+                // no line break after the last line
+                if (l<lines.length-1){
+                    lfWriter.write("\n");
+                    crlfWriter.write("\r\n");
+                }
+            }
+        }
+        MultiLabelClfDataSet lf = LibSvmFormat.loadMultiLabelClfDataSet(lfFile.getAbsolutePath(), false, 5, 3);
+        MultiLabelClfDataSet crlf = LibSvmFormat.loadMultiLabelClfDataSet(crlfFile.getAbsolutePath(), false, 5, 3);
+        System.out.println("number of data points: \\n "+lf.getNumDataPoints()+", \\r\\n "+crlf.getNumDataPoints()
+                +", number of differences = "+countDifferences(lf, crlf));
+        lfFile.delete();
+        crlfFile.delete();
+    }
+
+    private static int compare(String text){
+        ByteBuffer bytes = ByteBuffer.wrap(("  "+text+"  ").getBytes(StandardCharsets.UTF_8));
+        double expected = Double.parseDouble(text);
+        double actual = TextMatrixParser.parseDouble(bytes, 2, 2+text.length());
+        if (Double.doubleToRawLongBits(expected)!=Double.doubleToRawLongBits(actual)){
+            System.out.println(text+": expected "+expected+", actual "+actual);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static MultiLabelClfDataSet ngrams(int numDataPoints, int numFeatures, int numNgrams, long seed){
+        Random random = new Random(seed);
+        MultiLabelClfDataSet dataSet = new SparseMLClfDataSet(numDataPoints, numFeatures, false, 10);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<numNgrams;k++){
+                int feature = (int)(numFeatures*Math.pow(random.nextDouble(), 3));
+                dataSet.setFeatureValue(i, feature, random.nextGaussian());
+            }
+            dataSet.addLabel(i, random.nextInt(10));
+            dataSet.addLabel(i, random.nextInt(10));
+        }
+        return dataSet;
+    }
+
+    private static MultiLabelClfDataSet readLineByLine(File matrixFile, int numDataPoints, int numFeatures) throws Exception{
+        MultiLabelClfDataSet dataSet = new SparseMLClfDataSet(numDataPoints, numFeatures, false, 10);
+        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile))){
+            String line;
+            int dataIndex = 0;
+            while ((line=br.readLine())!=null){
+                String[] lineSplit = line.split("\\s+");
+                for (String label: lineSplit[0].split(",")){
+                    if (!label.isEmpty()){
+                        dataSet.addLabel(dataIndex, Integer.parseInt(label));
+                    }
+                }
+                for (int i=1;i<lineSplit.length;i++){
+                    String[] pairSplit = lineSplit[i].split(":");
+                    dataSet.setFeatureValue(dataIndex, Integer.parseInt(pairSplit[0]), Double.parseDouble(pairSplit[1]));
+                }
+                dataIndex += 1;
+            }
+        }
+        return dataSet;
+    }
+
+    private static int countDifferences(MultiLabelClfDataSet expected, MultiLabelClfDataSet actual){
+        int numDifferences = 0;
+        for (int i=0;i<expected.getNumDataPoints();i++){
+            Vector expectedRow = expected.getRow(i);
+            Vector actualRow = actual.getRow(i);
+            if (expectedRow.getNumNonZeroElements()!=actualRow.getNumNonZeroElements()){
+                numDifferences += 1;
+            }
+            for (Vector.Element element: expectedRow.nonZeroes()){
+                if (actualRow.get(element.index())!=element.get()){
+                    numDifferences += 1;
+                }
+            }
+            if (!expected.getMultiLabels()[i].equals(actual.getMultiLabels()[i])){
+                numDifferences += 1;
+            }
+        }
+        for (int j=0;j<expected.getNumFeatures();j++){
+            if (expected.getColumn(j).getNumNonZeroElements()!=actual.getColumn(j).getNumNonZeroElements()){
+                numDifferences += 1;
+            }
+        }
+        return numDifferences;
+    }
+}
@@ -0,0 +1,371 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import edu.neu.ccs.pyramid.classification.l2boost.L2Boost;
+import edu.neu.ccs.pyramid.classification.l2boost.L2BoostOptimizer;
+import edu.neu.ccs.pyramid.classification.lkboost.LKBOutputCalculator;
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoostOptimizer;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.dataset.ClfDataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.DataSetUtil;
+import edu.neu.ccs.pyramid.eval.Accuracy;
+import edu.neu.ccs.pyramid.optimization.EarlyStopper;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.regression.regression_tree.SplitMode;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.util.Serialization;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.io.File;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class GBOptimizerTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+        test4();
+        test5();
+        test6();
+        test7();
+        test8();
+    }
+
+    /**
+     * many classes, few features
+     * fitting ensembles in parallel should give the same accuracy in less time
+     * the first two runs warm up the JIT; compare the last two
+     */
+    private static void test1(){
+        int numClasses = 100;
+        ClfDataSet dataSet = manyClasses(20000, 5, numClasses);
+        for (int parallelism: new int[]{1, 4, 1, 4}){
+            LKBoost lkBoost = new LKBoost(numClasses);
+            RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(5).setSplitMode(SplitMode.HISTOGRAM);
+            RegTreeFactory regTreeFactory = new RegTreeFactory(regTreeConfig);
+            regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+            LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, regTreeFactory);
+            optimizer.setEnsembleParallelism(parallelism);
+            optimizer.initialize();
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            optimizer.iterate(10);
+            System.out.println("parallelism = "+parallelism+", time = "+stopWatch
+                    +", accuracy = "+ Accuracy.accuracy(lkBoost, dataSet));
+        }
+    }
+
+    /**
+     * staged scores read from training leaf assignments should match predictions of the model,
+     * with missing values and zero weights
+     */
+    private static void test2(){
+        int numClasses = 3;
+        int numDataPoints = 5000;
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(4).numClasses(numClasses).dense(true).missingValue(true).build();
+        Random random = new Random(1);
+        double[] weights = new double[numDataPoints];
+        for (int i=0;i<numDataPoints;i++){
+            int label = random.nextInt(numClasses);
+            dataSet.setLabel(i, label);
+            for (int j=0;j<4;j++){
+                double value = (random.nextDouble()<0.2) ? Double.NaN : label+random.nextGaussian();
+                dataSet.setFeatureValue(i, j, value);
+            }
+            weights[i] = (random.nextDouble()<0.1) ? 0 : 1;
+        }
+        for (SplitMode splitMode: SplitMode.values()){
+            LKBoost lkBoost = new LKBoost(numClasses);
+            RegTreeFactory regTreeFactory = new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(6)
+                    .setSplitMode(splitMode));
+            regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+            LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, regTreeFactory, weights);
+            optimizer.setShrinkage(0.1);
+            optimizer.initialize();
+            optimizer.iterate(10);
+            double maxDiff = 0;
+            for (int i=0;i<numDataPoints;i++){
+                double[] scores = lkBoost.predictClassScores(dataSet.getRow(i));
+                for (int k=0;k<numClasses;k++){
+                    maxDiff = Math.max(maxDiff, Math.abs(scores[k]-optimizer.scoreMatrix.getScore(i,k)));
+                }
+            }
+            System.out.println(splitMode+": max difference between staged scores and predictions = "+maxDiff);
+            // only boosting asks for leaf assignments; the factory it was given is left unchanged
+            RegressionTree tree = (RegressionTree) regTreeFactory.fit(dataSet, new double[numDataPoints], weights);
+            System.out.println(splitMode+": leaf assignment kept outside boosting = "
+                    +(tree.getTrainingLeafAssignment()!=null));
+        }
+    }
+
+    /**
+     * compiled ensembles should give the same scores, faster, and batch scoring faster still;
+     * a deserialized model is compiled, and batch scoring keeps the compiled form
+     * each timing is repeated, and the first rounds warm up the JIT
+     */
+    private static void test3() throws Exception{
+        int numClasses = 5;
+        ClfDataSet dataSet = manyClasses(20000, 20, numClasses);
+        for (int i=0;i<dataSet.getNumDataPoints();i+=10){
+            dataSet.setFeatureValue(i, 0, Double.NaN);
+        }
+        LKBoost lkBoost = new LKBoost(numClasses);
+        RegTreeFactory regTreeFactory = new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(10)
+                .setSplitMode(SplitMode.HISTOGRAM));
+        regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, regTreeFactory);
+        optimizer.setShrinkage(0.1);
+        optimizer.initialize();
+        optimizer.iterate(100);
+        LKBoost deserialized = (LKBoost) Serialization.deepCopy(lkBoost);
+        System.out.println("deserialized model compiled = "+deserialized.getEnsemble(0).isCompiled()
+                +", original compiled = "+lkBoost.getEnsemble(0).isCompiled());
+
+        int numDataPoints = dataSet.getNumDataPoints();
+        double[][] scores = new double[numDataPoints][];
+        double[][] compiledScores = new double[numDataPoints][];
+        for (int round=0;round<5;round++){
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            for (int i=0;i<numDataPoints;i++){
+                scores[i] = lkBoost.predictClassScores(dataSet.getRow(i));
+            }
+            String treeTime = stopWatch.toString();
+            stopWatch.reset();
+            stopWatch.start();
+            for (int i=0;i<numDataPoints;i++){
+                compiledScores[i] = deserialized.predictClassScores(dataSet.getRow(i));
+            }
+            stopWatch.stop();
+            double maxDiff = 0;
+            for (int i=0;i<numDataPoints;i++){
+                for (int k=0;k<numClasses;k++){
+                    maxDiff = Math.max(maxDiff, Math.abs(compiledScores[i][k]-scores[i][k]));
+                }
+            }
+            String compiledTime = stopWatch.toString();
+            stopWatch.reset();
+            stopWatch.start();
+            double[][] batchScores = deserialized.scores(dataSet);
+            stopWatch.stop();
+            for (int i=0;i<numDataPoints;i++){
+                for (int k=0;k<numClasses;k++){
+                    maxDiff = Math.max(maxDiff, Math.abs(batchScores[i][k]-scores[i][k]));
+                }
+            }
+            System.out.println("round "+round+": tree scoring = "+treeTime+", compiled scoring = "+compiledTime
+                    +", batch scoring = "+stopWatch+", max difference = "+maxDiff);
+        }
+        lkBoost.scores(dataSet);
+        System.out.println("compiled after batch scoring = "+lkBoost.getEnsemble(0).isCompiled());
+        // priors are folded into leaf outputs, so the bias should be 0
+        System.out.println("compiled ensemble = "+deserialized.getEnsemble(0).getCompiled());
+    }
+
+    /**
+     * training on a gradient-based sample should be faster with similar accuracy
+     */
+    private static void test4(){
+        double[] values = {5, 1, 4, 1, 3, 9, 2, 6};
+        System.out.println("3rd largest = "+GOSS.kthLargest(values, 3)+", expected 5.0");
+        // with tied gradients, the top set should still be exactly topRate of the data points
+        double[] gradients = new double[1000];
+        Arrays.fill(gradients, 0, 500, -1);
+        Arrays.fill(gradients, 500, 1000, 0.5);
+        double[] ones = new double[1000];
+        Arrays.fill(ones, 1);
+        // sampled small gradients get weight (1-0.2)/0.1 = 8
+        long numTop = Arrays.stream(new GOSS(0.2, 0.1, 0).sample(gradients, ones, 0, 0)).filter(w -> w==1).count();
+        System.out.println("top data points with ties = "+numTop+", expected 200");
+
+        int numClasses = 5;
+        ClfDataSet dataSet = manyClasses(100000, 20, numClasses);
+        for (GOSS goss: new GOSS[]{null, new GOSS(0.2, 0.1, 0)}){
+            LKBoost lkBoost = new LKBoost(numClasses);
+            RegTreeFactory regTreeFactory = new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(10)
+                    .setSplitMode(SplitMode.HISTOGRAM));
+            regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+            LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, regTreeFactory);
+            optimizer.setShrinkage(0.1);
+            optimizer.setGoss(goss);
+            optimizer.initialize();
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            optimizer.iterate(50);
+            System.out.println("goss = "+goss+", time = "+stopWatch
+                    +", accuracy = "+ Accuracy.accuracy(lkBoost, dataSet));
+        }
+    }
+
+    /**
+     * newton boosting should reach a lower log loss in the same number of iterations
+     */
+    private static void test5(){
+        int numClasses = 5;
+        ClfDataSet dataSet = manyClasses(20000, 20, numClasses);
+        for (SplitMode splitMode: new SplitMode[]{SplitMode.HISTOGRAM, SplitMode.INTERVAL}){
+            for (boolean secondOrder: new boolean[]{false, true}){
+                LKBoost lkBoost = new LKBoost(numClasses);
+                RegTreeFactory regTreeFactory = new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(10)
+                        .setSplitMode(splitMode).setL2Regularization(1));
+                regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+                LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, regTreeFactory);
+                optimizer.setShrinkage(0.1);
+                optimizer.setSecondOrder(secondOrder);
+                optimizer.initialize();
+                StopWatch stopWatch = new StopWatch();
+                stopWatch.start();
+                for (int round=1;round<=3;round++){
+                    optimizer.iterate(10);
+                    System.out.println(splitMode+", second order = "+secondOrder+", iterations = "+round*10
+                            +", time = "+stopWatch+", log loss = "+logLoss(lkBoost, dataSet)
+                            +", accuracy = "+Accuracy.accuracy(lkBoost, dataSet));
+                }
+            }
+        }
+    }
+
+    /**
+     * resuming from a checkpoint should continue exactly where training stopped, without re-scoring
+     */
+    private static void test6(){
+        int numClasses = 5;
+        ClfDataSet dataSet = manyClasses(20000, 20, numClasses);
+        File checkpoint = new File(System.getProperty("java.io.tmpdir"), "gb_optimizer_test/checkpoint");
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(10).setSplitMode(SplitMode.HISTOGRAM);
+
+        LKBoost lkBoost = new LKBoost(numClasses);
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, dataSet, lkbFactory(regTreeConfig, numClasses));
+        optimizer.setShrinkage(0.1);
+        optimizer.setCheckpoint(checkpoint, 10);
+        optimizer.initialize();
+        optimizer.iterate(50);
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        LKBoost scored = new LKBoost(numClasses);
+        for (int k=0;k<numClasses;k++){
+            for (Regressor regressor: lkBoost.getEnsemble(k).getRegressors()){
+                scored.getEnsemble(k).add(regressor);
+            }
+        }
+        new LKBoostOptimizer(scored, dataSet, lkbFactory(regTreeConfig, numClasses)).initialize();
+        System.out.println("initialize by scoring: "+stopWatch);
+
+        stopWatch.reset();
+        stopWatch.start();
+        LKBoost resumed = new LKBoost(numClasses);
+        LKBoostOptimizer resumedOptimizer = new LKBoostOptimizer(resumed, dataSet, lkbFactory(regTreeConfig, numClasses));
+        resumedOptimizer.setShrinkage(0.1);
+        try {
+            resumedOptimizer.initialize(checkpoint);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        System.out.println("initialize from checkpoint: "+stopWatch+", iterations = "+resumedOptimizer.getNumIterations());
+
+        optimizer.iterate(10);
+        resumedOptimizer.iterate(10);
+        double maxDiff = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            double[] scores = lkBoost.predictClassScores(dataSet.getRow(i));
+            double[] resumedScores = resumed.predictClassScores(dataSet.getRow(i));
+            for (int k=0;k<numClasses;k++){
+                maxDiff = Math.max(maxDiff, Math.abs(scores[k]-resumedScores[k]));
+            }
+        }
+        System.out.println("max difference between continued and resumed training = "+maxDiff);
+    }
+
+    /**
+     * early stopping on cached validation scores should stop an overfitting run,
+     * and the truncated model should give the best validation loss
+     */
+    private static void test7(){
+        int numClasses = 5;
+        ClfDataSet dataSet = manyClasses(4000, 20, numClasses);
+        ClfDataSet trainSet = DataSetUtil.sampleData(dataSet, IntStream.range(0, 2000).boxed().collect(Collectors.toList()));
+        ClfDataSet validSet = DataSetUtil.sampleData(dataSet, IntStream.range(2000, 4000).boxed().collect(Collectors.toList()));
+        LKBoost lkBoost = new LKBoost(numClasses);
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(lkBoost, trainSet,
+                lkbFactory(new RegTreeConfig().setMaxNumLeaves(30).setSplitMode(SplitMode.HISTOGRAM), numClasses));
+        optimizer.setShrinkage(0.5);
+        EarlyStopper earlyStopper = new EarlyStopper(EarlyStopper.Goal.MINIMIZE, 5);
+        optimizer.initialize();
+        optimizer.setValidation(validSet, earlyStopper);
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        optimizer.iterate(500);
+        System.out.println("stopped after "+optimizer.getNumIterations()+" iterations, time = "+stopWatch);
+        System.out.println("history: "+earlyStopper.history());
+        System.out.println("cached validation loss = "+optimizer.getValidationLoss()
+                +", by prediction = "+logLoss(lkBoost, validSet));
+        optimizer.truncateToBestIteration();
+        System.out.println("best iteration = "+earlyStopper.getBestIteration()+", best loss = "+earlyStopper.getBestValue()
+                +", regressors = "+lkBoost.getEnsemble(0).getRegressors().size());
+        System.out.println("after truncation, cached validation loss = "+optimizer.getValidationLoss()
+                +", by prediction = "+logLoss(lkBoost, validSet));
+    }
+
+    /**
+     * validation and second order training are rejected when configured on optimizers without them,
+     * not at the first iteration
+     */
+    private static void test8(){
+        ClfDataSet dataSet = manyClasses(1000, 5, 2);
+        L2BoostOptimizer optimizer = new L2BoostOptimizer(new L2Boost(), dataSet,
+                new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(4)));
+        try {
+            optimizer.setValidation(dataSet, null);
+            System.out.println("validation should be rejected");
+        } catch (UnsupportedOperationException e){
+            System.out.println("rejected: "+e.getMessage());
+        }
+        try {
+            optimizer.setSecondOrder(true);
+            System.out.println("second order training should be rejected");
+        } catch (UnsupportedOperationException e){
+            System.out.println("rejected: "+e.getMessage());
+        }
+        optimizer.initialize();
+        optimizer.iterate(2);
+        System.out.println("unsupported options left unset, iterations = "+optimizer.getNumIterations());
+    }
+
+    private static RegTreeFactory lkbFactory(RegTreeConfig regTreeConfig, int numClasses){
+        RegTreeFactory regTreeFactory = new RegTreeFactory(regTreeConfig);
+        regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(numClasses));
+        return regTreeFactory;
+    }
+
+    private static double logLoss(LKBoost lkBoost, ClfDataSet dataSet){
+        double sum = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            double prob = lkBoost.predictClassProbs(dataSet.getRow(i))[dataSet.getLabels()[i]];
+            sum -= Math.log(prob);
+        }
+        return sum/dataSet.getNumDataPoints();
+    }
+
+    static ClfDataSet manyClasses(int numDataPoints, int numFeatures, int numClasses){
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).numClasses(numClasses).dense(true).missingValue(true).build();
+        Random random = new Random(0);
+        for (int i=0;i<numDataPoints;i++){
+            int label = random.nextInt(numClasses);
+            dataSet.setLabel(i, label);
+            for (int j=0;j<numFeatures;j++){
+                double center = (j==0) ? label : (label*(j+1))%numClasses;
+                dataSet.setFeatureValue(i, j, center+3*random.nextGaussian());
+            }
+        }
+        return dataSet;
+    }
+}
@@ -0,0 +1,96 @@
+package edu.neu.ccs.pyramid.regression.random_forest;
+
+import edu.neu.ccs.pyramid.classification.random_forest.RFClassifier;
+import edu.neu.ccs.pyramid.classification.random_forest.RFClassifierTrainer;
+import edu.neu.ccs.pyramid.dataset.*;
+import edu.neu.ccs.pyramid.eval.Accuracy;
+import edu.neu.ccs.pyramid.eval.MSE;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.regression.regression_tree.SplitMode;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class RFTrainerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * a forest should have lower test error than a single deep tree;
+     * more threads should give the same forest in less time
+     */
+    private static void test1(){
+        RegDataSet trainSet = friedman(2000, 1);
+        RegDataSet testSet = friedman(2000, 2);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(200).setMinDataPerLeaf(3)
+                .setSplitMode(SplitMode.HISTOGRAM);
+        RegressionTree tree = (RegressionTree) new RegTreeFactory(regTreeConfig).fit(trainSet);
+        System.out.println("single tree, test mse = "+MSE.mse(testSet.getLabels(), tree.predict(testSet)));
+        regTreeConfig.setFeatureSamplingRatePerNode(0.5);
+        for (int numThreads: new int[]{1, 4}){
+            RFConfig config = new RFConfig(regTreeConfig).setNumTrees(50).setNumThreads(numThreads);
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            RandomForest forest = RFTrainer.fit(config, trainSet);
+            System.out.println("threads = "+numThreads+", time = "+stopWatch+", trees = "+forest.getNumTrees()
+                    +", test mse = "+MSE.mse(forest, testSet));
+        }
+    }
+
+    /**
+     * probabilities are averaged leaf class frequencies
+     */
+    private static void test2(){
+        int numClasses = 5;
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder().numDataPoints(4000)
+                .numFeatures(20).numClasses(numClasses).dense(true).missingValue(true).build();
+        Random random = new Random(0);
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            int label = random.nextInt(numClasses);
+            dataSet.setLabel(i, label);
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                double center = (j==0) ? label : (label*(j+1))%numClasses;
+                double value = (random.nextDouble()<0.1) ? Double.NaN : center+3*random.nextGaussian();
+                dataSet.setFeatureValue(i, j, value);
+            }
+        }
+        ClfDataSet trainSet = DataSetUtil.sampleData(dataSet, IntStream.range(0, 2000).boxed().collect(Collectors.toList()));
+        ClfDataSet testSet = DataSetUtil.sampleData(dataSet, IntStream.range(2000, 4000).boxed().collect(Collectors.toList()));
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(100).setMinDataPerLeaf(3)
+                .setSplitMode(SplitMode.HISTOGRAM).setFeatureSamplingRatePerNode(Math.sqrt(20)/20);
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        RFClassifier classifier = RFClassifierTrainer.fit(new RFConfig(regTreeConfig).setNumTrees(50), trainSet);
+        System.out.println("time = "+stopWatch+", train accuracy = "+Accuracy.accuracy(classifier, trainSet)
+                +", test accuracy = "+Accuracy.accuracy(classifier, testSet));
+        double[] probs = classifier.predictClassProbs(testSet.getRow(0));
+        System.out.println("probabilities of first test point = "+java.util.Arrays.toString(probs)
+                +", label = "+testSet.getLabels()[0]);
+    }
+
+    /**
+     * Friedman #1 with noise
+     */
+    private static RegDataSet friedman(int numDataPoints, long seed){
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(10)
+                .dense(true).missingValue(false).build();
+        Random random = new Random(seed);
+        for (int i=0;i<numDataPoints;i++){
+            double[] x = new double[10];
+            for (int j=0;j<10;j++){
+                x[j] = random.nextDouble();
+                dataSet.setFeatureValue(i, j, x[j]);
+            }
+            double y = 10*Math.sin(Math.PI*x[0]*x[1]) + 20*(x[2]-0.5)*(x[2]-0.5) + 10*x[3] + 5*x[4]
+                    + random.nextGaussian();
+            dataSet.setLabel(i, y);
+        }
+        return dataSet;
+    }
+}
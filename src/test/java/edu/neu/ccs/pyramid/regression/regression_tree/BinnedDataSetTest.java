@@ -0,0 +1,205 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.dataset.RegDataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+import edu.neu.ccs.pyramid.eval.MSE;
+import edu.neu.ccs.pyramid.simulation.RegressionSynthesizer;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BinnedDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+        test5();
+        test6();
+    }
+
+    /**
+     * bins of a small sparse column with zeros and missing values
+     */
+    private static void test1(){
+        SparseDataSet dataSet = new SparseDataSet(6,1,true);
+        dataSet.setFeatureValue(0,0,-1);
+        dataSet.setFeatureValue(1,0,2);
+        dataSet.setFeatureValue(2,0,2);
+        dataSet.setFeatureValue(3,0,Double.NaN);
+        dataSet.setFeatureValue(4,0,5);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, 10);
+        BinnedColumn column = binnedDataSet.getColumn(0);
+        System.out.println("num bins = "+column.getNumBins()+", expected 4");
+        for (int i=0;i<6;i++){
+            System.out.print(column.getBin(i)+" ");
+        }
+        System.out.println(", expected 0 2 2 4 3 1");
+        System.out.println(Arrays.toString(BinnedColumn.computeUpperBounds(new double[]{1,2,3,4,5,6,7,8}, 0, 4)));
+    }
+
+    /**
+     * histogram mode should give almost the same training error as interval mode
+     */
+    private static void test2(){
+        RegressionSynthesizer synthesizer = RegressionSynthesizer.getBuilder().setNumDataPoints(10000).build();
+        RegDataSet dataSet = synthesizer.univarSine();
+        RegTreeConfig intervalConfig = new RegTreeConfig().setMaxNumLeaves(10);
+        RegressionTree intervalTree = RegTreeTrainer.fit(intervalConfig, dataSet);
+        RegTreeConfig histogramConfig = new RegTreeConfig().setMaxNumLeaves(10)
+                .setSplitMode(SplitMode.HISTOGRAM);
+        RegressionTree histogramTree = RegTreeTrainer.fit(histogramConfig, dataSet);
+        System.out.println("interval mse = "+ MSE.mse(intervalTree, dataSet));
+        System.out.println("histogram mse = "+ MSE.mse(histogramTree, dataSet));
+    }
+
+    /**
+     * speed on a larger random data set
+     */
+    private static void test3(){
+        int numDataPoints = 200000;
+        int numFeatures = 50;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(true).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(0);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                dataSet.setFeatureValue(i,j,random.nextGaussian());
+            }
+            labels[i] = dataSet.getRow(i).get(0)+Math.sin(dataSet.getRow(i).get(1))+0.1*random.nextGaussian();
+        }
+        RegTreeConfig intervalConfig = new RegTreeConfig().setMaxNumLeaves(20);
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        RegressionTree intervalTree = RegTreeTrainer.fit(intervalConfig, dataSet, labels);
+        System.out.println("interval mode: "+stopWatch);
+
+        RegTreeConfig histogramConfig = new RegTreeConfig().setMaxNumLeaves(20).setSplitMode(SplitMode.HISTOGRAM);
+        stopWatch.reset();
+        stopWatch.start();
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, 255);
+        System.out.println("binning: "+stopWatch);
+        double[] weights = new double[numDataPoints];
+        Arrays.fill(weights,1);
+        stopWatch.reset();
+        stopWatch.start();
+        RegressionTree histogramTree = RegTreeTrainer.fit(histogramConfig, binnedDataSet, labels, weights,
+                new AverageOutputCalculator());
+        System.out.println("histogram mode: "+stopWatch);
+        System.out.println("interval mse = "+ MSE.mse(labels, intervalTree.predict(dataSet)));
+        System.out.println("histogram mse = "+ MSE.mse(labels, histogramTree.predict(dataSet)));
+    }
+
+    /**
+     * with missing values, data points go to both children
+     */
+    private static void test4(){
+        int numDataPoints = 50000;
+        int numFeatures = 10;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(true).missingValue(true).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(1);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.2){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else {
+                    dataSet.setFeatureValue(i,j,random.nextInt(20));
+                }
+            }
+            double x = dataSet.getRow(i).get(0);
+            labels[i] = (Double.isNaN(x)?0:x)+0.1*random.nextGaussian();
+        }
+        RegressionTree intervalTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(20), dataSet, labels);
+        RegressionTree histogramTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(20)
+                .setSplitMode(SplitMode.HISTOGRAM), dataSet, labels);
+        System.out.println("interval mse = "+ MSE.mse(labels, intervalTree.predict(dataSet)));
+        System.out.println("histogram mse = "+ MSE.mse(labels, histogramTree.predict(dataSet)));
+    }
+
+    /**
+     * sparse columns, both small nodes (look up) and large nodes (scan) are visited
+     */
+    private static void test5(){
+        int numDataPoints = 50000;
+        int numFeatures = 20;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(false).missingValue(true).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(2);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                double r = random.nextDouble();
+                if (r<0.01){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else if (r<0.06){
+                    dataSet.setFeatureValue(i,j,1+random.nextInt(5));
+                }
+            }
+            labels[i] = dataSet.getRow(i).get(0)+dataSet.getRow(i).get(1)+0.1*random.nextGaussian();
+            if (Double.isNaN(labels[i])){
+                labels[i] = 0;
+            }
+        }
+        RegressionTree intervalTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(30), dataSet, labels);
+        RegressionTree histogramTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(30)
+                .setSplitMode(SplitMode.HISTOGRAM), dataSet, labels);
+        System.out.println("interval mse = "+ MSE.mse(labels, intervalTree.predict(dataSet)));
+        System.out.println("histogram mse = "+ MSE.mse(labels, histogramTree.predict(dataSet)));
+    }
+
+    /**
+     * one-hot encoded categorical variables are mutually exclusive within each variable
+     * bundling should give the same trees, faster
+     */
+    private static void test6(){
+        int numDataPoints = 50000;
+        int numVariables = 20;
+        int numLevels = 50;
+        int numFeatures = numVariables*numLevels;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(false).missingValue(true).build();
+        double[] labels = new double[numDataPoints];
+        double[] weights = new double[numDataPoints];
+        Arrays.fill(weights, 1);
+        Random random = new Random(3);
+        for (int i=0;i<numDataPoints;i++){
+            for (int v=0;v<numVariables;v++){
+                int level = random.nextInt(numLevels);
+                // some variables are missing
+                double value = random.nextDouble()<0.02 ? Double.NaN : 1;
+                dataSet.setFeatureValue(i, v*numLevels+level, value);
+                if (v<3 && level<numLevels/2){
+                    labels[i] += 1;
+                }
+            }
+            labels[i] += 0.1*random.nextGaussian();
+        }
+        RegTreeConfig config = new RegTreeConfig().setMaxNumLeaves(30).setSplitMode(SplitMode.HISTOGRAM);
+        BinnedDataSet plain = BinnedDataSet.build(dataSet, BinnedDataSet.DEFAULT_MAX_NUM_BINS);
+        BinnedDataSet bundled = BinnedDataSet.build(dataSet, BinnedDataSet.DEFAULT_MAX_NUM_BINS, true);
+        System.out.println(bundled);
+        System.out.println("features in bundle 0 = "+Arrays.toString(bundled.getBundleFeatures(0)));
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        RegressionTree plainTree = null;
+        for (int t=0;t<5;t++){
+            plainTree = RegTreeTrainer.fit(config, plain, labels, weights, new AverageOutputCalculator());
+        }
+        System.out.println("time without bundling = "+stopWatch);
+        stopWatch.reset();
+        stopWatch.start();
+        RegressionTree bundledTree = null;
+        for (int t=0;t<5;t++){
+            bundledTree = RegTreeTrainer.fit(config, bundled, labels, weights, new AverageOutputCalculator());
+        }
+        System.out.println("time with bundling = "+stopWatch);
+        System.out.println("mse without bundling = "+ MSE.mse(labels, plainTree.predict(dataSet)));
+        System.out.println("mse with bundling = "+ MSE.mse(labels, bundledTree.predict(dataSet)));
+    }
+}
@@ -0,0 +1,58 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.dataset.RegDataSetBuilder;
+import edu.neu.ccs.pyramid.eval.MSE;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.util.Random;
+
+public class PresortedDataSetTest {
+    public static void main(String[] args) {
+        test1(true);
+        test1(false);
+    }
+
+    /**
+     * a heavy-tailed high-cardinality feature (scanned), and low-cardinality features (counted), with missing values
+     * histogram mode with more bins than distinct values is also exact, so both should give the same tree
+     */
+    private static void test1(boolean dense){
+        int numDataPoints = 20000;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(3).dense(dense).missingValue(true).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(0);
+        for (int i=0;i<numDataPoints;i++){
+            double heavy = Math.round(Math.exp(3*random.nextGaussian())*1000)/1000.0;
+            if (random.nextDouble()<0.3){
+                heavy = 0;
+            }
+            if (random.nextDouble()<0.1){
+                heavy = -heavy;
+            }
+            if (random.nextDouble()<0.05){
+                heavy = Double.NaN;
+            }
+            dataSet.setFeatureValue(i,0,heavy);
+            dataSet.setFeatureValue(i,1,random.nextInt(4));
+            dataSet.setFeatureValue(i,2,(random.nextDouble()<0.1)?Double.NaN:random.nextInt(30));
+            double x = Double.isNaN(heavy)?0:heavy;
+            labels[i] = Math.log1p(Math.abs(x))*Math.signum(x) + dataSet.getRow(i).get(1) + random.nextGaussian();
+        }
+        PresortedDataSet presortedDataSet = PresortedDataSet.build(dataSet);
+        System.out.println(presortedDataSet+", feature 0 counting = "+presortedDataSet.isCounting(0));
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        RegressionTree exactTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(20)
+                .setSplitMode(SplitMode.EXACT), dataSet, labels);
+        System.out.println("exact mode: "+stopWatch);
+        RegressionTree histogramTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(20)
+                .setSplitMode(SplitMode.HISTOGRAM).setMaxNumBins(60000), dataSet, labels);
+        RegressionTree intervalTree = RegTreeTrainer.fit(new RegTreeConfig().setMaxNumLeaves(20), dataSet, labels);
+        System.out.println("exact mse = "+ MSE.mse(labels, exactTree.predict(dataSet)));
+        System.out.println("fine histogram mse = "+ MSE.mse(labels, histogramTree.predict(dataSet)));
+        System.out.println("interval mse = "+ MSE.mse(labels, intervalTree.predict(dataSet)));
+    }
+}
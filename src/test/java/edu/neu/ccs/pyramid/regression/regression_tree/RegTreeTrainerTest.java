@@ -8,7 +8,9 @@ import org.apache.commons.lang3.time.StopWatch;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.IntStream;
 
 public class RegTreeTrainerTest {
@@ -16,7 +18,9 @@ public class RegTreeTrainerTest {
     private static final String DATASETS = config.getString("input.datasets");
     private static final String TMP = config.getString("output.tmp");
     public static void main(String[] args) throws Exception{
-        test2();
+        test9();
+        test10();
+        test11();
     }
 
 
@@ -328,4 +332,153 @@ public class RegTreeTrainerTest {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * level-wise growth gives the same tree as leaf-wise growth when the tree is full
+     * synthetic sparse data with missing values
+     */
+    static void test9() throws Exception {
+        int numDataPoints = 50000;
+        int numFeatures = 200;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(false).missingValue(true).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(4);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                double r = random.nextDouble();
+                if (r<0.005){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else if (r<0.2){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            for (int j=0;j<5;j++){
+                double value = dataSet.getRow(i).get(j);
+                if (!Double.isNaN(value)){
+                    labels[i] += value;
+                }
+            }
+            labels[i] += 0.1*random.nextGaussian();
+        }
+        double[] weights = new double[numDataPoints];
+        Arrays.fill(weights, 1);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, BinnedDataSet.DEFAULT_MAX_NUM_BINS);
+
+        for (int depth: new int[]{3,5}){
+            RegTreeConfig leafWise = new RegTreeConfig().setSplitMode(SplitMode.HISTOGRAM)
+                    .setMaxNumLeaves(1<<depth).setMaxDepth(depth);
+            RegTreeConfig levelWise = new RegTreeConfig().setSplitMode(SplitMode.HISTOGRAM)
+                    .setMaxNumLeaves(1<<depth).setMaxDepth(depth).setGrowthPolicy(GrowthPolicy.LEVEL_WISE);
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            RegressionTree leafWiseTree = null;
+            for (int t=0;t<10;t++){
+                leafWiseTree = RegTreeTrainer.fit(leafWise, binnedDataSet, labels, weights, new AverageOutputCalculator());
+            }
+            System.out.println("depth "+depth+", leaf-wise time = "+stopWatch);
+            stopWatch.reset();
+            stopWatch.start();
+            RegressionTree levelWiseTree = null;
+            for (int t=0;t<10;t++){
+                levelWiseTree = RegTreeTrainer.fit(levelWise, binnedDataSet, labels, weights, new AverageOutputCalculator());
+            }
+            System.out.println("depth "+depth+", level-wise time = "+stopWatch);
+            System.out.println("leaf-wise mse = "+MSE.mse(labels, leafWiseTree.predict(dataSet))
+                    +", number of leaves = "+leafWiseTree.getNumLeaves());
+            System.out.println("level-wise mse = "+MSE.mse(labels, levelWiseTree.predict(dataSet))
+                    +", number of leaves = "+levelWiseTree.getNumLeaves());
+        }
+
+        RegTreeConfig interval = new RegTreeConfig().setMaxNumLeaves(8).setMaxDepth(3)
+                .setGrowthPolicy(GrowthPolicy.LEVEL_WISE);
+        RegressionTree intervalTree = RegTreeTrainer.fit(interval, dataSet, labels);
+        System.out.println("level-wise interval mse = "+MSE.mse(labels, intervalTree.predict(dataSet)));
+    }
+
+    /**
+     * feature sampling on wide sparse data
+     * the same seed gives the same tree
+     */
+    static void test10() throws Exception {
+        int numDataPoints = 10000;
+        int numFeatures = 20000;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(false).missingValue(false).build();
+        double[] labels = new double[numDataPoints];
+        Random random = new Random(5);
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<100;k++){
+                int j = random.nextInt(numFeatures);
+                dataSet.setFeatureValue(i,j,1+random.nextInt(3));
+                if (j<200){
+                    labels[i] += 1;
+                }
+            }
+            labels[i] += 0.1*random.nextGaussian();
+        }
+        double[] weights = new double[numDataPoints];
+        Arrays.fill(weights, 1);
+        BinnedDataSet binnedDataSet = BinnedDataSet.build(dataSet, BinnedDataSet.DEFAULT_MAX_NUM_BINS);
+
+        RegTreeConfig[] configs = {
+                new RegTreeConfig(),
+                new RegTreeConfig().setFeatureSamplingRatePerTree(0.1),
+                new RegTreeConfig().setFeatureSamplingRatePerTree(0.1),
+                new RegTreeConfig().setFeatureSamplingRatePerTree(0.1).setFeatureSamplingSeed(1),
+                new RegTreeConfig().setFeatureSamplingRatePerLevel(0.3).setFeatureSamplingRatePerNode(0.3)
+                        .setGrowthPolicy(GrowthPolicy.LEVEL_WISE).setMaxDepth(5)
+        };
+        String[] names = {"all features", "0.1 per tree", "0.1 per tree again", "0.1 per tree, another seed",
+                "0.3 per level and 0.3 per node"};
+        for (int c=0;c<configs.length;c++){
+            RegTreeConfig regTreeConfig = configs[c].setSplitMode(SplitMode.HISTOGRAM).setMaxNumLeaves(20);
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            RegressionTree tree = null;
+            for (int t=0;t<5;t++){
+                tree = RegTreeTrainer.fit(regTreeConfig, binnedDataSet, labels, weights, new AverageOutputCalculator());
+            }
+            System.out.println(names[c]+": time = "+stopWatch+", mse = "+MSE.mse(labels, tree.predict(dataSet)));
+        }
+        // trees of one factory are sampled by tree index, so identical targets still give different features
+        RegTreeFactory factory = new RegTreeFactory(new RegTreeConfig().setSplitMode(SplitMode.HISTOGRAM)
+                .setMaxNumLeaves(2).setFeatureSamplingRatePerTree(0.01));
+        for (int t=0;t<5;t++){
+            RegressionTree tree = factory.fit(dataSet, labels, weights, false);
+            System.out.println("tree "+t+" of one factory splits on feature "+tree.getRoot().getFeatureIndex());
+        }
+    }
+
+    /**
+     * with regularization, candidate splits can have negative gain;
+     * they are neither chosen nor sampled, so the tree stays a single leaf
+     */
+    static void test11() throws Exception {
+        int numDataPoints = 5000;
+        int numFeatures = 20;
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(true).missingValue(false).build();
+        double[] labels = new double[numDataPoints];
+        double[] hessians = new double[numDataPoints];
+        double[] weights = new double[numDataPoints];
+        Random random = new Random(11);
+        for (int i=0;i<numDataPoints;i++){
+            for (int j=0;j<numFeatures;j++){
+                dataSet.setFeatureValue(i,j,random.nextGaussian());
+            }
+            // a small common offset: splitting only shrinks the leaf values
+            labels[i] = 0.03+0.001*random.nextGaussian();
+            hessians[i] = 1;
+            weights[i] = 1;
+        }
+        for (double l1: new double[]{0, 100}){
+            RegTreeConfig regTreeConfig = new RegTreeConfig().setSplitMode(SplitMode.HISTOGRAM)
+                    .setMaxNumLeaves(10).setRandomLevel(5).setL1Regularization(l1);
+            RegressionTree tree = RegTreeTrainer.fit(regTreeConfig, dataSet, labels, hessians, weights);
+            long numBadSplits = tree.traverse().stream().filter(node -> !node.isLeaf())
+                    .filter(node -> node.getReduction()<=0).count();
+            System.out.println("l1 = "+l1+", number of leaves = "+tree.getNumLeaves()
+                    +", splits without positive gain = "+numBadSplits);
+        }
+    }
+}
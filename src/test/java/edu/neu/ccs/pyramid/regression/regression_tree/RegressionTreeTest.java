@@ -1,8 +1,16 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
+import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.dataset.RegDataSetBuilder;
+import edu.neu.ccs.pyramid.eval.MSE;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
 public class RegressionTreeTest {
 
     public static void main(String[] args) {
@@ -11,6 +19,7 @@ public class RegressionTreeTest {
 //        test3();
 //        test4();
         test5();
+        test6();
     }
 
     private static void test1(){
@@ -280,4 +289,81 @@ public class RegressionTreeTest {
         vector.set(10,0.6);
         System.out.println(tree.predict(vector));
     }
-}
\ No newline at end of file
+
+    /**
+     * missing values that carry information: a learned default direction should fit them at least as well,
+     * and predictions should follow one path per tree
+     */
+    private static void test6(){
+        int numDataPoints = 50000;
+        int numFeatures = 10;
+        RegDataSet trainSet = missingData(numDataPoints, numFeatures, 1);
+        RegDataSet testSet = missingData(numDataPoints, numFeatures, 2);
+        double[] weights = new double[numDataPoints];
+        Arrays.fill(weights, 1);
+        for (SplitMode splitMode: new SplitMode[]{SplitMode.HISTOGRAM, SplitMode.EXACT}){
+            for (MissingValuePolicy policy: MissingValuePolicy.values()){
+                RegTreeConfig config = new RegTreeConfig().setMaxNumLeaves(200).setSplitMode(splitMode)
+                        .setMissingValuePolicy(policy);
+                RegressionTree tree = (RegressionTree) new RegTreeFactory(config).fit(trainSet, trainSet.getLabels(),
+                        weights);
+                CompiledTreeEnsemble compiled = CompiledTreeEnsemble.compile(Collections.singletonList(tree));
+                double[] predictions = new double[numDataPoints];
+                double[] compiledPredictions = new double[numDataPoints];
+                // the first rounds warm up the JIT
+                for (int round=0;round<3;round++){
+                    StopWatch stopWatch = new StopWatch();
+                    stopWatch.start();
+                    for (int r=0;r<5;r++){
+                        for (int i=0;i<numDataPoints;i++){
+                            predictions[i] = tree.predict(testSet.getRow(i));
+                        }
+                    }
+                    String treeTime = stopWatch.toString();
+                    stopWatch.reset();
+                    stopWatch.start();
+                    for (int r=0;r<5;r++){
+                        for (int i=0;i<numDataPoints;i++){
+                            compiledPredictions[i] = compiled.predict(testSet.getRow(i));
+                        }
+                    }
+                    stopWatch.stop();
+                    double maxDifference = 0;
+                    for (int i=0;i<numDataPoints;i++){
+                        maxDifference = Math.max(maxDifference, Math.abs(compiledPredictions[i]-predictions[i]));
+                    }
+                    System.out.println(splitMode+", "+policy+", round "+round+": tree prediction time = "+treeTime
+                            +", compiled = "+stopWatch+", max difference = "+maxDifference);
+                }
+                System.out.println(splitMode+", "+policy+": train mse = "+MSE.mse(trainSet.getLabels(),
+                        tree.predict(trainSet))+", test mse = "+MSE.mse(testSet.getLabels(), predictions));
+            }
+        }
+    }
+
+    /**
+     * the label depends on feature 0, and on whether feature 1 is missing
+     */
+    private static RegDataSet missingData(int numDataPoints, int numFeatures, long seed){
+        RegDataSet dataSet = RegDataSetBuilder.getBuilder().numDataPoints(numDataPoints)
+                .numFeatures(numFeatures).dense(true).missingValue(true).build();
+        Random random = new Random(seed);
+        for (int i=0;i<numDataPoints;i++){
+            double label = 0;
+            for (int j=0;j<numFeatures;j++){
+                double value = random.nextGaussian();
+                if (random.nextDouble()<0.3){
+                    value = Double.NaN;
+                    if (j==1){
+                        label += 2;
+                    }
+                } else if (j==0){
+                    label += value;
+                }
+                dataSet.setFeatureValue(i, j, value);
+            }
+            dataSet.setLabel(i, label+0.1*random.nextGaussian());
+        }
+        return dataSet;
+    }
+}